@@ -0,0 +1,115 @@
+package com.goalias.common.chat.cache;
+
+import com.goalias.common.chat.entity.chat.BaseMessage;
+import com.goalias.common.chat.entity.chat.ChatChoice;
+import com.goalias.common.chat.entity.chat.ChatCompletionResponse;
+import com.goalias.common.chat.entity.chat.Message;
+import com.goalias.common.chat.openai.http.OpenAiJson;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+
+/**
+ *  将缓存的响应按 chat.completion.chunk 格式逐段回放给监听器，事件顺序与真实sse一致：
+ *  onOpen -> 首个带role的delta -> 内容delta -> 带finish_reason的delta -> [DONE] -> onClosed
+ *
+ * @author goalias
+ */
+public class CacheReplayEventSource implements EventSource, Runnable {
+
+    private static final MediaType EVENT_STREAM = MediaType.get("text/event-stream");
+
+    private static final String DONE_SIGNAL = "[DONE]";
+
+    private final Request request;
+
+    private final ChatCompletionResponse response;
+
+    private final EventSourceListener listener;
+
+    private final int chunkSize;
+
+    private volatile boolean canceled;
+
+    public CacheReplayEventSource(Request request, ChatCompletionResponse response, EventSourceListener listener, int chunkSize) {
+        this.request = request;
+        this.response = response;
+        this.listener = listener;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    @Override
+    public void run() {
+        Response httpResponse = new Response.Builder()
+            .request(request)
+            .protocol(Protocol.HTTP_1_1)
+            .code(200)
+            .message("OK")
+            .header("Content-Type", EVENT_STREAM.toString())
+            .header("X-Cache", "HIT")
+            .body(ResponseBody.create("", EVENT_STREAM))
+            .build();
+        try {
+            listener.onOpen(this, httpResponse);
+            String content = (String) response.getChoices().get(0).getMessage().getContent();
+            emit(chunk(Message.builder().role(BaseMessage.Role.ASSISTANT).content("").build(), null));
+            int start = 0;
+            while (start < content.length() && !canceled) {
+                int end = Math.min(content.length(), start + chunkSize);
+                //不拆分代理对
+                if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+                    end++;
+                }
+                emit(chunk(Message.builder().content(content.substring(start, end)).build(), null));
+                start = end;
+            }
+            emit(chunk(new Message(), "stop"));
+            emit(DONE_SIGNAL);
+            if (!canceled) {
+                listener.onClosed(this);
+            }
+        } catch (Exception e) {
+            if (!canceled) {
+                listener.onFailure(this, e, httpResponse);
+            }
+        }
+    }
+
+    private void emit(String data) {
+        if (!canceled) {
+            listener.onEvent(this, null, null, data);
+        }
+    }
+
+    private String chunk(Message delta, String finishReason) throws JsonProcessingException {
+        ChatChoice choice = new ChatChoice();
+        choice.setDelta(delta);
+        choice.setFinishReason(finishReason);
+        ChatCompletionResponse chunk = new ChatCompletionResponse();
+        chunk.setId(response.getId());
+        chunk.setObject("chat.completion.chunk");
+        chunk.setCreated(response.getCreated());
+        chunk.setModel(response.getModel());
+        chunk.setChoices(Collections.singletonList(choice));
+        return OpenAiJson.mapper().writeValueAsString(chunk);
+    }
+
+    @NotNull
+    @Override
+    public Request request() {
+        return request;
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+    }
+}
@@ -0,0 +1,94 @@
+package com.goalias.common.chat.cache;
+
+import com.goalias.common.chat.entity.chat.BaseMessage;
+import com.goalias.common.chat.entity.chat.ChatChoice;
+import com.goalias.common.chat.entity.chat.ChatCompletionResponse;
+import com.goalias.common.chat.entity.chat.Message;
+import com.goalias.common.chat.sse.StreamDeltaParser;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ *  转发sse事件的同时收集回答内容，收到[DONE]、连接正常关闭且上游结束原因为stop时写入缓存
+ *  因长度截断(length)、内容过滤等原因结束的回答不缓存
+ *
+ * @author goalias
+ */
+public class CachingEventSourceListener extends EventSourceListener {
+
+    private static final String DONE_SIGNAL = "[DONE]";
+
+    private static final String FINISH_STOP = "stop";
+
+    private final ChatResponseCache cache;
+
+    private final ChatResponseCache.Lookup lookup;
+
+    private final EventSourceListener delegate;
+
+    private final StreamDeltaParser parser = new StreamDeltaParser();
+
+    private boolean done;
+
+    private boolean broken;
+
+    public CachingEventSourceListener(ChatResponseCache cache, ChatResponseCache.Lookup lookup, EventSourceListener delegate) {
+        this.cache = cache;
+        this.lookup = lookup;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+        delegate.onOpen(eventSource, response);
+    }
+
+    @Override
+    public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+        if (DONE_SIGNAL.equals(data)) {
+            done = true;
+        } else if (!broken && !done) {
+            try {
+                parser.append(data);
+            } catch (IOException e) {
+                broken = true;
+            }
+        }
+        delegate.onEvent(eventSource, id, type, data);
+    }
+
+    @Override
+    public void onClosed(@NotNull EventSource eventSource) {
+        try {
+            if (done && !broken && FINISH_STOP.equals(parser.getFinishReason())
+                && parser.getToolCalls().isEmpty() && parser.getFunctionName().isEmpty()) {
+                cache.put(lookup, response());
+            }
+        } finally {
+            delegate.onClosed(eventSource);
+        }
+    }
+
+    @Override
+    public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+        delegate.onFailure(eventSource, t, response);
+    }
+
+    private ChatCompletionResponse response() {
+        ChatChoice choice = new ChatChoice();
+        choice.setMessage(Message.builder().role(BaseMessage.Role.ASSISTANT).content(parser.getContent()).build());
+        choice.setFinishReason(parser.getFinishReason());
+        ChatCompletionResponse response = new ChatCompletionResponse();
+        response.setId("chatcmpl-" + lookup.getKey().substring(lookup.getKey().length() - 24));
+        response.setObject("chat.completion");
+        response.setCreated(System.currentTimeMillis() / 1000);
+        response.setModel(lookup.getModel());
+        response.setChoices(Collections.singletonList(choice));
+        return response;
+    }
+}
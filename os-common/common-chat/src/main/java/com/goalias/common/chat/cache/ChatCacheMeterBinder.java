@@ -0,0 +1,39 @@
+package com.goalias.common.chat.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * 对话响应缓存指标，指标名 openai.cache.*
+ *
+ * @author goalias
+ */
+public class ChatCacheMeterBinder implements MeterBinder {
+
+    private final ChatResponseCache cache;
+
+    public ChatCacheMeterBinder(ChatResponseCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("openai.cache.requests", cache, ChatResponseCache::exactHits)
+            .tag("result", "exact")
+            .register(registry);
+        FunctionCounter.builder("openai.cache.requests", cache, ChatResponseCache::semanticHits)
+            .tag("result", "semantic")
+            .register(registry);
+        FunctionCounter.builder("openai.cache.requests", cache, ChatResponseCache::misses)
+            .tag("result", "miss")
+            .register(registry);
+        Gauge.builder("openai.cache.hit.ratio", cache, ChatResponseCache::hitRatio)
+            .description("对话缓存命中率")
+            .register(registry);
+        Gauge.builder("openai.cache.semantic.contexts", cache, ChatResponseCache::semanticContexts)
+            .description("语义索引中的上下文数")
+            .register(registry);
+    }
+}
@@ -0,0 +1,380 @@
+package com.goalias.common.chat.cache;
+
+import cn.hutool.core.collection.CollectionUtil;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.core.util.StrUtil;
+import com.goalias.common.chat.config.properties.ChatCacheProperties;
+import com.goalias.common.chat.entity.chat.BaseMessage;
+import com.goalias.common.chat.entity.chat.ChatChoice;
+import com.goalias.common.chat.entity.chat.ChatCompletion;
+import com.goalias.common.chat.entity.chat.ChatCompletionResponse;
+import com.goalias.common.chat.entity.chat.Content;
+import com.goalias.common.chat.entity.chat.Message;
+import com.goalias.common.chat.entity.embeddings.Embedding;
+import com.goalias.common.chat.entity.embeddings.EmbeddingResponse;
+import com.goalias.common.chat.openai.OpenAiClient;
+import com.goalias.common.chat.openai.http.OpenAiHttpClientFactory;
+import com.goalias.common.chat.openai.http.OpenAiJson;
+import com.goalias.common.redis.service.RedisService;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.sse.EventSourceListener;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  对话响应缓存，分两级：
+ *  1. 精确匹配：模型+采样参数+规范化后的消息计算摘要，响应存入Redis
+ *  2. 语义匹配：上下文(模型、采样参数与之前的消息)相同时，用最后一个问题的向量在进程内索引中查找相近问题，命中后复用其Redis中的响应
+ *  语义匹配需要传入计算向量的OpenAiClient，向量异步计算，上下文已有索引时查询最多等待embeddingTimeoutMillis
+ *  流式请求命中时回放为sse，调用方无需区分；缓存读写失败只记录日志，按未命中处理
+ *
+ * @author goalias
+ */
+@Slf4j
+public class ChatResponseCache {
+
+    private static final String KEY_PREFIX = "chat_cache:";
+
+    private final RedisService redisService;
+
+    /**
+     * 计算向量的客户端，为null时只做精确匹配
+     */
+    private final OpenAiClient embeddingClient;
+
+    private final ChatCacheProperties properties;
+
+    private final SemanticIndex semanticIndex;
+
+    private final LongAdder exactHits = new LongAdder();
+
+    private final LongAdder semanticHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public ChatResponseCache(RedisService redisService, ChatCacheProperties properties) {
+        this(redisService, null, properties);
+    }
+
+    public ChatResponseCache(RedisService redisService, OpenAiClient embeddingClient, ChatCacheProperties properties) {
+        this.redisService = redisService;
+        this.embeddingClient = embeddingClient;
+        this.properties = properties;
+        this.semanticIndex = embeddingClient != null && properties.isSemanticEnabled()
+            ? new SemanticIndex(properties.getSemanticMaxContexts(), properties.getSemanticMaxEntries(), properties.getTtlSeconds() * 1000)
+            : null;
+        if (embeddingClient == null && properties.isSemanticEnabled()) {
+            log.info("未提供计算向量的OpenAiClient，对话缓存只做精确匹配");
+        }
+    }
+
+    /**
+     * 查询缓存
+     *
+     * @param chatCompletion 问答参数
+     * @return 查询结果，请求不适合缓存时返回null
+     */
+    public Lookup lookup(ChatCompletion chatCompletion) {
+        if (!cacheable(chatCompletion)) {
+            return null;
+        }
+        String model = chatCompletion.getModel();
+        List<Message> messages = chatCompletion.getMessages();
+        String key = KEY_PREFIX + digest(chatCompletion, messages.size());
+        ChatCompletionResponse response = read(key);
+        if (response != null) {
+            exactHits.increment();
+            return new Lookup(model, key, null, null, response);
+        }
+        Message last = messages.get(messages.size() - 1);
+        String question = text(last);
+        if (semanticIndex == null || !BaseMessage.Role.USER.getName().equals(last.getRole()) || StrUtil.isBlank(question)) {
+            misses.increment();
+            return new Lookup(model, key, null, null, null);
+        }
+        String context = digest(chatCompletion, messages.size() - 1);
+        CompletableFuture<float[]> vector = embed(question);
+        //该上下文下还没有索引过问题时不会语义命中，不等待向量；向量仍在后台计算，供put写入索引
+        float[] ready = semanticIndex.contains(context) ? await(vector) : null;
+        if (ready != null) {
+            String similar = semanticIndex.search(context, ready, properties.getSimilarityThreshold());
+            response = similar == null ? null : read(similar);
+            if (response != null) {
+                semanticHits.increment();
+                return new Lookup(model, key, context, vector, response);
+            }
+        }
+        misses.increment();
+        return new Lookup(model, key, context, vector, null);
+    }
+
+    /**
+     * 写入未命中请求的响应，带工具调用或未正常结束的响应不缓存
+     */
+    public void put(Lookup lookup, ChatCompletionResponse response) {
+        if (lookup == null || lookup.isHit() || !cacheable(response)) {
+            return;
+        }
+        try {
+            redisService.set(lookup.key, OpenAiJson.mapper().writeValueAsString(response), properties.getTtlSeconds());
+        } catch (Exception e) {
+            log.warn("对话缓存写入失败：{}", e.getMessage());
+            return;
+        }
+        if (semanticIndex != null && lookup.vector != null) {
+            //查询时向量可能尚未就绪，就绪后再加入索引
+            lookup.vector.thenAccept(vector -> {
+                if (vector != null) {
+                    semanticIndex.add(lookup.context, vector, lookup.key, properties.getTtlSeconds() * 1000);
+                }
+            });
+        }
+    }
+
+    /**
+     * 将命中的响应回放给sse监听器，在流式调度器的线程上执行
+     */
+    public void replay(Lookup lookup, Request request, EventSourceListener eventSourceListener) {
+        CacheReplayEventSource eventSource = new CacheReplayEventSource(request, lookup.getResponse(),
+            eventSourceListener, properties.getReplayChunkSize());
+        OpenAiHttpClientFactory.streamClient().dispatcher().executorService().execute(eventSource);
+    }
+
+    /**
+     * 包装sse监听器，流式响应正常结束后写入缓存
+     */
+    public EventSourceListener record(Lookup lookup, EventSourceListener eventSourceListener) {
+        return new CachingEventSourceListener(this, lookup, eventSourceListener);
+    }
+
+    public long exactHits() {
+        return exactHits.sum();
+    }
+
+    public long semanticHits() {
+        return semanticHits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * 命中率
+     */
+    public double hitRatio() {
+        long hits = exactHits.sum() + semanticHits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 语义索引中的上下文数
+     */
+    public int semanticContexts() {
+        return semanticIndex == null ? 0 : semanticIndex.size();
+    }
+
+    private boolean cacheable(ChatCompletion chatCompletion) {
+        return chatCompletion != null
+            && CollectionUtil.isNotEmpty(chatCompletion.getMessages())
+            && !properties.getExcludedModels().contains(chatCompletion.getModel())
+            && CollectionUtil.isEmpty(chatCompletion.getFunctions())
+            && CollectionUtil.isEmpty(chatCompletion.getTools())
+            && (chatCompletion.getN() == null || chatCompletion.getN() == 1);
+    }
+
+    private static boolean cacheable(ChatCompletionResponse response) {
+        if (response == null || CollectionUtil.isEmpty(response.getChoices())) {
+            return false;
+        }
+        ChatChoice choice = response.getChoices().get(0);
+        Message message = choice.getMessage();
+        return message != null
+            && message.getContent() instanceof String
+            && StrUtil.isNotBlank((String) message.getContent())
+            && CollectionUtil.isEmpty(message.getToolCalls())
+            && message.getFunctionCall() == null
+            && "stop".equals(choice.getFinishReason());
+    }
+
+    private ChatCompletionResponse read(String key) {
+        try {
+            Object value = redisService.get(key);
+            return value instanceof String ? OpenAiJson.mapper().readValue((String) value, ChatCompletionResponse.class) : null;
+        } catch (Exception e) {
+            log.warn("对话缓存读取失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 异步计算向量，失败时结果为null
+     */
+    private CompletableFuture<float[]> embed(String question) {
+        Embedding embedding = Embedding.builder()
+            .model(properties.getEmbeddingModel())
+            .input(Collections.singletonList(question))
+            .build();
+        CompletableFuture<EmbeddingResponse> future;
+        try {
+            future = embeddingClient.embeddingsAsync(embedding);
+        } catch (Exception e) {
+            log.warn("对话缓存计算向量失败：{}", e.getMessage());
+            return CompletableFuture.completedFuture(null);
+        }
+        return future.handle((response, e) -> {
+            if (e != null) {
+                log.warn("对话缓存计算向量失败：{}", e.getMessage());
+                return null;
+            }
+            if (response == null || CollectionUtil.isEmpty(response.getData())) {
+                return null;
+            }
+            List<BigDecimal> values = response.getData().get(0).getEmbedding();
+            float[] vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = values.get(i).floatValue();
+            }
+            return SemanticIndex.normalize(vector);
+        });
+    }
+
+    /**
+     * 最多等待embeddingTimeoutMillis，超时按未命中处理
+     */
+    private float[] await(CompletableFuture<float[]> vector) {
+        try {
+            return vector.get(properties.getEmbeddingTimeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("对话缓存计算向量超时，按未命中处理");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 模型、采样参数与前count条消息的摘要，消息内容去除首尾空白并合并连续空白
+     */
+    private static String digest(ChatCompletion chatCompletion, int count) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, chatCompletion.getModel());
+        update(digest, String.valueOf(chatCompletion.getTemperature()));
+        update(digest, String.valueOf(chatCompletion.getTopP()));
+        update(digest, String.valueOf(chatCompletion.getMaxTokens()));
+        update(digest, String.valueOf(chatCompletion.getStop()));
+        update(digest, String.valueOf(chatCompletion.getSeed()));
+        update(digest, chatCompletion.getResponseFormat() == null ? null : chatCompletion.getResponseFormat().getType());
+        update(digest, String.valueOf(chatCompletion.getPresencePenalty()));
+        update(digest, String.valueOf(chatCompletion.getFrequencyPenalty()));
+        update(digest, chatCompletion.getLogitBias() == null ? null : chatCompletion.getLogitBias().toString());
+        List<Message> messages = chatCompletion.getMessages();
+        for (int i = 0; i < count; i++) {
+            Message message = messages.get(i);
+            update(digest, message.getRole());
+            update(digest, message.getName());
+            update(digest, normalize(text(message)));
+        }
+        return HexUtil.encodeHexStr(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static String text(Message message) {
+        Object content = message.getContent();
+        if (content instanceof String) {
+            return (String) content;
+        }
+        if (!(content instanceof List)) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Object part : (List<?>) content) {
+            if (part instanceof Content) {
+                Content item = (Content) part;
+                if (item.getText() != null) {
+                    text.append(item.getText()).append('\n');
+                }
+                if (item.getImageUrl() != null) {
+                    text.append(item.getImageUrl().getUrl()).append('\n');
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * 一次查询的结果，未命中时携带写入所需的key与向量
+     */
+    @AllArgsConstructor
+    public static final class Lookup {
+
+        @Getter
+        private final String model;
+
+        @Getter
+        private final String key;
+
+        private final String context;
+
+        /**
+         * 最后一个问题的向量，可能尚未计算完成
+         */
+        private final CompletableFuture<float[]> vector;
+
+        @Getter
+        private final ChatCompletionResponse response;
+
+        public boolean isHit() {
+            return response != null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.goalias.common.chat.cache;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+
+/**
+ *  进程内的语义索引
+ *  按上下文(模型+除最后一个问题外的消息)分组，组内保存问题的单位向量，查询时计算点积即余弦相似度
+ *  组内为定长环形数组，写满后覆盖最早的问题；分组按最近使用淘汰，并与缓存使用相同的有效期
+ *
+ * @author goalias
+ */
+public class SemanticIndex {
+
+    private final LRUCache<String, Bucket> buckets;
+
+    private final int bucketSize;
+
+    public SemanticIndex(int maxContexts, int bucketSize, long ttlMillis) {
+        this.buckets = CacheUtil.newLRUCache(maxContexts, ttlMillis);
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * 查找相似度不低于阈值的最相近问题
+     *
+     * @param context   上下文
+     * @param vector    单位向量
+     * @param threshold 相似度阈值
+     * @return 对应的精确匹配key，未找到时返回null
+     */
+    public String search(String context, float[] vector, double threshold) {
+        Bucket bucket = buckets.get(context);
+        return bucket == null ? null : bucket.search(vector, threshold, System.currentTimeMillis());
+    }
+
+    /**
+     * 上下文下是否有已索引的问题(分组未过期)
+     */
+    public boolean contains(String context) {
+        return buckets.containsKey(context);
+    }
+
+    public void add(String context, float[] vector, String key, long ttlMillis) {
+        Bucket bucket = buckets.get(context);
+        if (bucket == null) {
+            synchronized (buckets) {
+                bucket = buckets.get(context);
+                if (bucket == null) {
+                    bucket = new Bucket(bucketSize);
+                    buckets.put(context, bucket);
+                }
+            }
+        }
+        bucket.add(vector, key, System.currentTimeMillis() + ttlMillis);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    /**
+     * 原地转为单位向量并返回入参，后续相似度只需计算点积
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static final class Bucket {
+
+        private final float[][] vectors;
+
+        private final String[] keys;
+
+        private final long[] expireAt;
+
+        private int next;
+
+        private Bucket(int size) {
+            this.vectors = new float[size][];
+            this.keys = new String[size];
+            this.expireAt = new long[size];
+        }
+
+        private synchronized void add(float[] vector, String key, long expireAt) {
+            int slot = next;
+            this.vectors[slot] = vector;
+            this.keys[slot] = key;
+            this.expireAt[slot] = expireAt;
+            next = (slot + 1) % vectors.length;
+        }
+
+        private synchronized String search(float[] vector, double threshold, long now) {
+            String best = null;
+            double bestScore = threshold;
+            for (int i = 0; i < vectors.length; i++) {
+                float[] candidate = vectors[i];
+                if (candidate == null || candidate.length != vector.length || expireAt[i] < now) {
+                    continue;
+                }
+                double score = 0;
+                for (int j = 0; j < vector.length; j++) {
+                    score += candidate[j] * vector[j];
+                }
+                if (score >= bestScore) {
+                    bestScore = score;
+                    best = keys[i];
+                }
+            }
+            return best;
+        }
+    }
+}
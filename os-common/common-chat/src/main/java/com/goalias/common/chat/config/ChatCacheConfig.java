@@ -0,0 +1,53 @@
+package com.goalias.common.chat.config;
+
+import com.goalias.common.chat.cache.ChatCacheMeterBinder;
+import com.goalias.common.chat.cache.ChatResponseCache;
+import com.goalias.common.chat.config.properties.ChatCacheProperties;
+import com.goalias.common.chat.openai.OpenAiClient;
+import com.goalias.common.redis.service.RedisService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 对话响应缓存配置，需引入common-cache并设置 openai.cache.enabled=true
+ * 创建客户端时通过 Builder.responseCache 传入
+ *
+ * @author goalias
+ */
+@AutoConfiguration(afterName = "com.goalias.common.redis.service.impl.RedisServiceImpl")
+@ConditionalOnClass(name = "com.goalias.common.redis.service.RedisService")
+@ConditionalOnProperty(prefix = "openai.cache", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(ChatCacheProperties.class)
+public class ChatCacheConfig {
+
+    /**
+     * 容器中存在OpenAiClient时启用语义匹配
+     * 本模块不注册OpenAiClient，未自行注册时语义匹配不生效，只做精确匹配
+     */
+    @Bean
+    @ConditionalOnBean(RedisService.class)
+    public ChatResponseCache chatResponseCache(RedisService redisService, ObjectProvider<OpenAiClient> openAiClient,
+                                               ChatCacheProperties chatCacheProperties) {
+        return new ChatResponseCache(redisService, openAiClient.getIfAvailable(), chatCacheProperties);
+    }
+
+    /**
+     * 命中率指标
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class ChatCacheMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnBean(ChatResponseCache.class)
+        public ChatCacheMeterBinder chatCacheMeterBinder(ChatResponseCache chatResponseCache) {
+            return new ChatCacheMeterBinder(chatResponseCache);
+        }
+    }
+}
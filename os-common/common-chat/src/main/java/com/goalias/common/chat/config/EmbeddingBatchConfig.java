@@ -0,0 +1,27 @@
+package com.goalias.common.chat.config;
+
+import com.goalias.common.chat.config.properties.EmbeddingBatchProperties;
+import com.goalias.common.chat.embedding.EmbeddingBatcher;
+import com.goalias.common.chat.openai.OpenAiClient;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * 向量计算合批配置，容器中存在OpenAiClient时生效
+ *
+ * @author goalias
+ */
+@AutoConfiguration
+@EnableConfigurationProperties(EmbeddingBatchProperties.class)
+public class EmbeddingBatchConfig {
+
+    @Bean
+    @ConditionalOnBean(OpenAiClient.class)
+    @ConditionalOnMissingBean
+    public EmbeddingBatcher embeddingBatcher(OpenAiClient openAiClient, EmbeddingBatchProperties embeddingBatchProperties) {
+        return new EmbeddingBatcher(openAiClient, embeddingBatchProperties);
+    }
+}
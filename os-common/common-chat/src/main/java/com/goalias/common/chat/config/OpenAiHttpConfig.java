@@ -0,0 +1,37 @@
+package com.goalias.common.chat.config;
+
+import com.goalias.common.chat.config.properties.OpenAiHttpProperties;
+import com.goalias.common.chat.openai.http.OpenAiHttpClientFactory;
+import com.goalias.common.chat.openai.http.OpenAiHttpMeterBinder;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * OpenAi 客户端共享连接池配置
+ *
+ * @author goalias
+ */
+@AutoConfiguration
+@EnableConfigurationProperties(OpenAiHttpProperties.class)
+public class OpenAiHttpConfig {
+
+    public OpenAiHttpConfig(OpenAiHttpProperties openAiHttpProperties) {
+        OpenAiHttpClientFactory.configure(openAiHttpProperties);
+    }
+
+    /**
+     * 连接池与调度器指标
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class OpenAiHttpMetricsConfiguration {
+
+        @Bean
+        public OpenAiHttpMeterBinder openAiHttpMeterBinder() {
+            return new OpenAiHttpMeterBinder();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.goalias.common.chat.config;
+
+import com.goalias.common.chat.vector.LocalVectorStore;
+import com.goalias.common.chat.vector.VectorStore;
+import com.goalias.common.core.config.VectorStoreProperties;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * 本地向量库配置，vector-store.type=local 时生效
+ *
+ * @author goalias
+ */
+@AutoConfiguration
+@ConditionalOnProperty(prefix = "vector-store", name = "type", havingValue = "local")
+public class VectorStoreConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean(VectorStore.class)
+    public LocalVectorStore localVectorStore(VectorStoreProperties vectorStoreProperties) {
+        return new LocalVectorStore(vectorStoreProperties.getLocal());
+    }
+}
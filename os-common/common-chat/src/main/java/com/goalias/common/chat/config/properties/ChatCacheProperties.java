@@ -0,0 +1,67 @@
+package com.goalias.common.chat.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 对话响应缓存配置项
+ *
+ * @author goalias
+ */
+@ConfigurationProperties("openai.cache")
+@Data
+public class ChatCacheProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enabled = false;
+
+    /**
+     * 缓存有效期(秒)
+     */
+    private long ttlSeconds = 3600;
+
+    /**
+     * 不缓存的模型
+     */
+    private Set<String> excludedModels = new HashSet<>();
+
+    /**
+     * 是否启用语义匹配，需要容器中存在用于计算向量的OpenAiClient，否则只做精确匹配
+     */
+    private boolean semanticEnabled = true;
+
+    /**
+     * 语义匹配的余弦相似度阈值
+     */
+    private double similarityThreshold = 0.95;
+
+    /**
+     * 计算向量使用的模型
+     */
+    private String embeddingModel = "text-embedding-ada-002";
+
+    /**
+     * 查询时等待向量计算的最长时间(毫秒)，超时按未命中处理，向量就绪后仍会在写入响应时加入语义索引
+     */
+    private long embeddingTimeoutMillis = 300;
+
+    /**
+     * 语义索引最多保留的上下文数，按最近使用淘汰
+     */
+    private int semanticMaxContexts = 4096;
+
+    /**
+     * 每个上下文最多保留的问题数
+     */
+    private int semanticMaxEntries = 64;
+
+    /**
+     * 命中后回放为sse时每个事件的字符数
+     */
+    private int replayChunkSize = 16;
+}
@@ -0,0 +1,44 @@
+package com.goalias.common.chat.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 向量计算合批配置项
+ *
+ * @author goalias
+ */
+@ConfigurationProperties("openai.embedding")
+@Data
+public class EmbeddingBatchProperties {
+
+    /**
+     * 向量模型
+     */
+    private String model = "text-embedding-ada-002";
+
+    /**
+     * 首个请求入队后最多等待的时间(毫秒)，到时即发出
+     */
+    private long maxWaitMillis = 10;
+
+    /**
+     * 单次请求最多的文本数
+     */
+    private int maxBatchSize = 256;
+
+    /**
+     * 单次请求的token上限
+     */
+    private int maxBatchTokens = 100000;
+
+    /**
+     * 单条文本的token上限，超过时直接拒绝，不进入合批
+     */
+    private int maxInputTokens = 8191;
+
+    /**
+     * 已计算向量的本地缓存条数，0为不缓存
+     */
+    private int cacheSize = 10000;
+}
@@ -0,0 +1,49 @@
+package com.goalias.common.chat.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * OpenAi 客户端共享连接池与调度器配置项
+ *
+ * @author goalias
+ */
+@ConfigurationProperties("openai.http")
+@Data
+public class OpenAiHttpProperties {
+
+    /**
+     * 普通请求最大并发数
+     */
+    private int maxRequests = 128;
+
+    /**
+     * 普通请求单个host最大并发数
+     */
+    private int maxRequestsPerHost = 64;
+
+    /**
+     * 流式(SSE)请求最大并发数，SSE连接持续时间长，需与普通请求分开计数
+     */
+    private int streamMaxRequests = 512;
+
+    /**
+     * 流式(SSE)请求单个host最大并发数
+     */
+    private int streamMaxRequestsPerHost = 256;
+
+    /**
+     * 连接池最大空闲连接数
+     */
+    private int maxIdleConnections = 32;
+
+    /**
+     * 空闲连接保活时间(秒)
+     */
+    private long keepAliveSeconds = 300;
+
+    /**
+     * 是否启用HTTP/2，TLS协商成功时同一连接可复用多个请求
+     */
+    private boolean http2 = true;
+}
@@ -0,0 +1,283 @@
+package com.goalias.common.chat.embedding;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import cn.hutool.core.util.HexUtil;
+import com.goalias.common.chat.config.properties.EmbeddingBatchProperties;
+import com.goalias.common.chat.entity.embeddings.Embedding;
+import com.goalias.common.chat.entity.embeddings.EmbeddingResponse;
+import com.goalias.common.chat.entity.embeddings.Item;
+import com.goalias.common.chat.openai.OpenAiClient;
+import com.goalias.common.chat.token.BpeTokenizer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  向量计算合批
+ *  并发的单条请求先入队，达到条数或token上限、或等待超过maxWaitMillis时合并为一次embeddings请求发出，结果按index分发回各自的future
+ *  相同文本共用进行中的请求，已计算的向量按内容摘要缓存在本地LRU中
+ *  超过单条token上限的文本直接拒绝，避免一条文本导致整批失败；返回给调用方的向量均为副本，可以原地修改
+ *
+ * @author goalias
+ */
+@Slf4j
+public class EmbeddingBatcher {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+        ThreadFactoryBuilder.create().setNamePrefix("openai-embedding-batch-").setDaemon(true).build());
+
+    private final OpenAiClient openAiClient;
+
+    private final EmbeddingBatchProperties properties;
+
+    private final BpeTokenizer tokenizer;
+
+    /**
+     * 已计算的向量，为null时不缓存
+     */
+    private final LRUCache<String, float[]> cache;
+
+    /**
+     * 进行中(排队或已发出)的请求
+     */
+    private final Map<String, CompletableFuture<float[]>> inflight = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+
+    private List<Pending> queue = new ArrayList<>();
+
+    private int queuedTokens;
+
+    private ScheduledFuture<?> scheduledFlush;
+
+    public EmbeddingBatcher(OpenAiClient openAiClient, EmbeddingBatchProperties properties) {
+        this.openAiClient = openAiClient;
+        this.properties = properties;
+        this.tokenizer = BpeTokenizer.forModel(properties.getModel());
+        this.cache = properties.getCacheSize() > 0 ? CacheUtil.newLRUCache(properties.getCacheSize()) : null;
+    }
+
+    /**
+     * 计算单条文本的向量
+     *
+     * @param text 文本
+     * @return 向量，每次调用返回独立的副本；文本超过maxInputTokens时以IllegalArgumentException失败
+     */
+    public CompletableFuture<float[]> embed(String text) {
+        String key = digest(text);
+        if (cache != null) {
+            float[] cached = cache.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached.clone());
+            }
+        }
+        CompletableFuture<float[]> shared = inflight.get(key);
+        if (shared == null) {
+            int tokens = tokenizer.count(text);
+            if (tokens > properties.getMaxInputTokens()) {
+                CompletableFuture<float[]> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(new IllegalArgumentException(
+                    "文本token数" + tokens + "超过单条上限" + properties.getMaxInputTokens()));
+                return rejected;
+            }
+            CompletableFuture<float[]> future = new CompletableFuture<>();
+            shared = inflight.putIfAbsent(key, future);
+            if (shared == null) {
+                shared = future;
+                enqueue(new Pending(key, text, tokens, future));
+            }
+        }
+        //共用的请求结果与缓存中的数组不直接交给调用方
+        return shared.thenApply(float[]::clone);
+    }
+
+    /**
+     * 计算多条文本的向量，结果与入参顺序一致
+     *
+     * @param texts 文本集合
+     * @return 向量集合
+     */
+    public CompletableFuture<List<float[]>> embedAll(List<String> texts) {
+        List<CompletableFuture<float[]>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            futures.add(embed(text));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<float[]> vectors = new ArrayList<>(futures.size());
+            for (CompletableFuture<float[]> future : futures) {
+                vectors.add(future.join());
+            }
+            return vectors;
+        });
+    }
+
+    /**
+     * 排队中的文本数
+     */
+    public int queued() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    private void enqueue(Pending pending) {
+        boolean full;
+        synchronized (lock) {
+            queue.add(pending);
+            queuedTokens += pending.tokens;
+            full = queue.size() >= properties.getMaxBatchSize() || queuedTokens >= properties.getMaxBatchTokens();
+            if (!full && scheduledFlush == null) {
+                scheduledFlush = SCHEDULER.schedule(this::flush, properties.getMaxWaitMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            SCHEDULER.execute(this::flush);
+        }
+    }
+
+    /**
+     * 取出队列中的全部文本，按条数与token上限切分后各发出一次请求
+     */
+    private void flush() {
+        List<Pending> drained;
+        synchronized (lock) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            if (queue.isEmpty()) {
+                return;
+            }
+            drained = queue;
+            queue = new ArrayList<>();
+            queuedTokens = 0;
+        }
+        List<Pending> batch = new ArrayList<>();
+        int batchTokens = 0;
+        for (Pending pending : drained) {
+            if (!batch.isEmpty() && (batch.size() >= properties.getMaxBatchSize()
+                || batchTokens + pending.tokens > properties.getMaxBatchTokens())) {
+                send(batch);
+                batch = new ArrayList<>();
+                batchTokens = 0;
+            }
+            batch.add(pending);
+            batchTokens += pending.tokens;
+        }
+        send(batch);
+    }
+
+    private void send(List<Pending> batch) {
+        List<String> input = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            input.add(pending.text);
+        }
+        Embedding embedding = Embedding.builder().model(properties.getModel()).input(input).build();
+        CompletableFuture<EmbeddingResponse> response;
+        try {
+            response = openAiClient.embeddingsAsync(embedding);
+        } catch (Exception e) {
+            fail(batch, e);
+            return;
+        }
+        response.whenComplete((result, e) -> {
+            if (e != null) {
+                fail(batch, e);
+            } else {
+                complete(batch, result);
+            }
+        });
+    }
+
+    private void complete(List<Pending> batch, EmbeddingResponse response) {
+        float[][] vectors = new float[batch.size()][];
+        if (response != null && response.getData() != null) {
+            for (Item item : response.getData()) {
+                int index = item.getIndex() == null ? -1 : item.getIndex();
+                if (index >= 0 && index < vectors.length && item.getEmbedding() != null) {
+                    vectors[index] = toArray(item.getEmbedding());
+                }
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            if (vectors[i] == null) {
+                inflight.remove(pending.key, pending.future);
+                pending.future.completeExceptionally(new IllegalStateException("embeddings响应缺少第" + i + "条结果"));
+                continue;
+            }
+            //先写缓存再移出inflight，期间到达的相同文本要么共用inflight中的请求，要么命中缓存，不会重复请求
+            if (cache != null) {
+                cache.put(pending.key, vectors[i]);
+            }
+            pending.future.complete(vectors[i]);
+            inflight.remove(pending.key, pending.future);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("向量计算合批完成，条数：{}", batch.size());
+        }
+    }
+
+    private void fail(List<Pending> batch, Throwable e) {
+        log.warn("向量计算合批请求失败，条数：{}，原因：{}", batch.size(), e.getMessage());
+        for (Pending pending : batch) {
+            inflight.remove(pending.key, pending.future);
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private static float[] toArray(List<BigDecimal> values) {
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = values.get(i).floatValue();
+        }
+        return vector;
+    }
+
+    /**
+     * 模型与文本的摘要，作为本地缓存与合并相同请求的key
+     */
+    private String digest(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(properties.getModel().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexUtil.encodeHexStr(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Pending {
+
+        private final String key;
+
+        private final String text;
+
+        private final int tokens;
+
+        private final CompletableFuture<float[]> future;
+
+        private Pending(String key, String text, int tokens, CompletableFuture<float[]> future) {
+            this.key = key;
+            this.text = text;
+            this.tokens = tokens;
+            this.future = future;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
+import com.goalias.common.chat.cache.ChatResponseCache;
 import com.goalias.common.chat.constant.OpenAIConst;
 import com.goalias.common.chat.entity.billing.BillingUsage;
 import com.goalias.common.chat.entity.billing.Subscription;
@@ -38,8 +39,12 @@ import com.goalias.common.chat.entity.moderations.ModerationResponse;
 import com.goalias.common.chat.entity.whisper.Translations;
 import com.goalias.common.chat.entity.whisper.WhisperResponse;
 import com.goalias.common.chat.openai.exception.CommonError;
-import com.goalias.common.chat.openai.function.KeyRandomStrategy;
+import com.goalias.common.chat.openai.function.KeyHealthStrategy;
 import com.goalias.common.chat.openai.function.KeyStrategyFunction;
+import com.goalias.common.chat.openai.http.AsyncCalls;
+import com.goalias.common.chat.openai.http.ErrorMappingCallAdapterFactory;
+import com.goalias.common.chat.openai.http.OpenAiHttpClientFactory;
+import com.goalias.common.chat.openai.http.OpenAiJson;
 import com.goalias.common.chat.openai.interceptor.DefaultOpenAiAuthInterceptor;
 import com.goalias.common.chat.openai.interceptor.DynamicKeyOpenAiAuthInterceptor;
 import com.goalias.common.chat.openai.interceptor.OpenAiAuthInterceptor;
@@ -52,6 +57,7 @@ import retrofit2.converter.jackson.JacksonConverterFactory;
 
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 
@@ -77,6 +83,11 @@ public class OpenAiClient {
     private String apiHost;
     @Getter
     private OpenAiApi openAiApi;
+    /**
+     * 异步接口，请求由OkHttp调度器发出，供*Async方法使用
+     */
+    @Getter
+    private OpenAiApi openAiAsyncApi;
     /**
      * 自定义的okHttpClient
      * 如果不自定义 ，就是用sdk默认的OkHttpClient实例
@@ -100,6 +111,12 @@ public class OpenAiClient {
     @Getter
     private OpenAiAuthInterceptor authInterceptor;
 
+    /**
+     * 对话响应缓存，为null时不缓存
+     */
+    @Getter
+    private ChatResponseCache responseCache;
+
     /**
      * 构造器
      *
@@ -127,7 +144,7 @@ public class OpenAiClient {
         apiHost = builder.apiHost;
 
         if (Objects.isNull(builder.keyStrategy)) {
-            builder.keyStrategy = new KeyRandomStrategy();
+            builder.keyStrategy = new KeyHealthStrategy();
         }
         keyStrategy = builder.keyStrategy;
 
@@ -135,6 +152,7 @@ public class OpenAiClient {
             builder.authInterceptor = new DefaultOpenAiAuthInterceptor();
         }
         authInterceptor = builder.authInterceptor;
+        responseCache = builder.responseCache;
         authInterceptor.setApiKey(this.apiKey);
         authInterceptor.setKeyStrategy(this.keyStrategy);
 
@@ -148,11 +166,19 @@ public class OpenAiClient {
                     .build();
         }
         okHttpClient = builder.okHttpClient;
+        authInterceptor.attach(okHttpClient);
         this.openAiApi = new Retrofit.Builder()
                 .baseUrl(apiHost)
                 .client(okHttpClient)
-                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
-                .addConverterFactory(JacksonConverterFactory.create())
+                .addCallAdapterFactory(ErrorMappingCallAdapterFactory.create(RxJava2CallAdapterFactory.create()))
+                .addConverterFactory(JacksonConverterFactory.create(OpenAiJson.mapper()))
+                .build().create(OpenAiApi.class);
+        //异步接口：Single订阅时通过enqueue发出请求，不阻塞订阅线程
+        this.openAiAsyncApi = new Retrofit.Builder()
+                .baseUrl(apiHost)
+                .client(okHttpClient)
+                .addCallAdapterFactory(ErrorMappingCallAdapterFactory.create(RxJava2CallAdapterFactory.createAsync()))
+                .addConverterFactory(JacksonConverterFactory.create(OpenAiJson.mapper()))
                 .build().create(OpenAiApi.class);
     }
 
@@ -168,8 +194,9 @@ public class OpenAiClient {
         }
         this.authInterceptor.setApiKey(this.apiKey);
         this.authInterceptor.setKeyStrategy(this.keyStrategy);
-        return new OkHttpClient
-                .Builder()
+        //基于共享实例派生，复用连接池和普通请求调度器
+        return OpenAiHttpClientFactory.unaryClient()
+                .newBuilder()
                 .addInterceptor(this.authInterceptor)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
@@ -186,6 +213,15 @@ public class OpenAiClient {
         return models.blockingGet().getData();
     }
 
+    /**
+     * openAi模型列表（异步）
+     *
+     * @return Model  list
+     */
+    public CompletableFuture<List<Model>> modelsAsync() {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.models()).thenApply(ModelResponse::getData);
+    }
+
     /**
      * openAi模型详细信息
      *
@@ -200,6 +236,19 @@ public class OpenAiClient {
         return model.blockingGet();
     }
 
+    /**
+     * openAi模型详细信息（异步）
+     *
+     * @param id 模型主键
+     * @return Model    模型类
+     */
+    public CompletableFuture<Model> modelAsync(String id) {
+        if (Objects.isNull(id) || "".equals(id)) {
+            throw new BaseException(CommonError.PARAM_ERROR.msg());
+        }
+        return AsyncCalls.toFuture(this.openAiAsyncApi.model(id));
+    }
+
 
     /**
      * 问答接口
@@ -212,6 +261,16 @@ public class OpenAiClient {
         return completions.blockingGet();
     }
 
+    /**
+     * 问答接口（异步）
+     *
+     * @param completion 问答参数
+     * @return CompletionResponse
+     */
+    public CompletableFuture<CompletionResponse> completionsAsync(Completion completion) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.completions(completion));
+    }
+
     /**
      * 问答接口-简易版
      *
@@ -237,6 +296,16 @@ public class OpenAiClient {
         return edits.blockingGet();
     }
 
+    /**
+     * 文本修改（异步）
+     *
+     * @param edit 图片对象
+     * @return EditResponse
+     */
+    public CompletableFuture<EditResponse> editAsync(Edit edit) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.edits(edit));
+    }
+
     /**
      * 根据描述生成图片
      *
@@ -259,6 +328,16 @@ public class OpenAiClient {
         return edits.blockingGet();
     }
 
+    /**
+     * 根据描述生成图片（异步）
+     *
+     * @param image 图片参数
+     * @return ImageResponse
+     */
+    public CompletableFuture<ImageResponse> genImagesAsync(Image image) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.genImages(image));
+    }
+
     /**
      * Creates an edited or extended image given an original image and a prompt.
      * 根据描述修改图片
@@ -294,6 +373,22 @@ public class OpenAiClient {
      * @return Item list
      */
     public List<Item> editImages(java.io.File image, java.io.File mask, ImageEdit imageEdit) {
+        return this.editImages(this.openAiApi, image, mask, imageEdit).blockingGet().getData();
+    }
+
+    /**
+     * 根据描述修改图片（异步）
+     *
+     * @param image     png格式的图片，最大4MB
+     * @param mask      png格式的图片，最大4MB
+     * @param imageEdit 图片参数
+     * @return Item list
+     */
+    public CompletableFuture<List<Item>> editImagesAsync(java.io.File image, java.io.File mask, ImageEdit imageEdit) {
+        return AsyncCalls.toFuture(this.editImages(this.openAiAsyncApi, image, mask, imageEdit)).thenApply(ImageResponse::getData);
+    }
+
+    private Single<ImageResponse> editImages(OpenAiApi api, java.io.File image, java.io.File mask, ImageEdit imageEdit) {
         checkImage(image);
         checkImageFormat(image);
         checkImageSize(image);
@@ -317,12 +412,11 @@ public class OpenAiClient {
         if (!(Objects.isNull(imageEdit.getUser()) || "".equals(imageEdit.getUser()))) {
             requestBodyMap.put("user", RequestBody.create(MediaType.parse("multipart/form-data"), imageEdit.getUser()));
         }
-        Single<ImageResponse> imageResponse = this.openAiApi.editImages(
+        return api.editImages(
                 imageMultipartBody,
                 maskMultipartBody,
                 requestBodyMap
         );
-        return imageResponse.blockingGet().getData();
     }
 
     /**
@@ -335,6 +429,21 @@ public class OpenAiClient {
      * @return ImageResponse
      */
     public ImageResponse variationsImages(java.io.File image, ImageVariations imageVariations) {
+        return this.variationsImages(this.openAiApi, image, imageVariations).blockingGet();
+    }
+
+    /**
+     * 变化图片（异步）
+     *
+     * @param image           图片对象
+     * @param imageVariations 图片参数
+     * @return ImageResponse
+     */
+    public CompletableFuture<ImageResponse> variationsImagesAsync(java.io.File image, ImageVariations imageVariations) {
+        return AsyncCalls.toFuture(this.variationsImages(this.openAiAsyncApi, image, imageVariations));
+    }
+
+    private Single<ImageResponse> variationsImages(OpenAiApi api, java.io.File image, ImageVariations imageVariations) {
         checkImage(image);
         checkImageFormat(image);
         checkImageSize(image);
@@ -347,11 +456,10 @@ public class OpenAiClient {
         if (!(Objects.isNull(imageVariations.getUser()) || "".equals(imageVariations.getUser()))) {
             requestBodyMap.put("user", RequestBody.create(MediaType.parse("multipart/form-data"), imageVariations.getUser()));
         }
-        Single<ImageResponse> variationsImages = this.openAiApi.variationsImages(
+        return api.variationsImages(
                 multipartBody,
                 requestBodyMap
         );
-        return variationsImages.blockingGet();
     }
 
     /**
@@ -439,6 +547,16 @@ public class OpenAiClient {
         return embeddings.blockingGet();
     }
 
+    /**
+     * 文本转换向量（异步）
+     *
+     * @param embedding 入参
+     * @return EmbeddingResponse
+     */
+    public CompletableFuture<EmbeddingResponse> embeddingsAsync(Embedding embedding) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.embeddings(embedding));
+    }
+
     /**
      * 获取文件列表
      *
@@ -449,6 +567,15 @@ public class OpenAiClient {
         return files.blockingGet().getData();
     }
 
+    /**
+     * 获取文件列表（异步）
+     *
+     * @return File  list
+     */
+    public CompletableFuture<List<File>> filesAsync() {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.files()).thenApply(OpenAiResponse::getData);
+    }
+
     /**
      * 删除文件
      *
@@ -460,6 +587,16 @@ public class OpenAiClient {
         return deleteFile.blockingGet();
     }
 
+    /**
+     * 删除文件（异步）
+     *
+     * @param fileId 文件id
+     * @return DeleteResponse
+     */
+    public CompletableFuture<DeleteResponse> deleteFileAsync(String fileId) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.deleteFile(fileId));
+    }
+
     /**
      * 上传文件
      *
@@ -468,13 +605,27 @@ public class OpenAiClient {
      * @return UploadFileResponse
      */
     public UploadFileResponse uploadFile(String purpose, java.io.File file) {
+        return this.uploadFile(this.openAiApi, purpose, file).blockingGet();
+    }
+
+    /**
+     * 上传文件（异步）
+     *
+     * @param purpose purpose
+     * @param file    文件对象
+     * @return UploadFileResponse
+     */
+    public CompletableFuture<UploadFileResponse> uploadFileAsync(String purpose, java.io.File file) {
+        return AsyncCalls.toFuture(this.uploadFile(this.openAiAsyncApi, purpose, file));
+    }
+
+    private Single<UploadFileResponse> uploadFile(OpenAiApi api, String purpose, java.io.File file) {
         // 创建 RequestBody，用于封装构建RequestBody
         RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
         MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
 
         RequestBody purposeBody = RequestBody.create(MediaType.parse("multipart/form-data"), purpose);
-        Single<UploadFileResponse> uploadFileResponse = this.openAiApi.uploadFile(multipartBody, purposeBody);
-        return uploadFileResponse.blockingGet();
+        return api.uploadFile(multipartBody, purposeBody);
     }
 
     /**
@@ -499,6 +650,16 @@ public class OpenAiClient {
         return fileContent.blockingGet();
     }
 
+    /**
+     * 检索文件（异步）
+     *
+     * @param fileId 文件id
+     * @return File
+     */
+    public CompletableFuture<File> retrieveFileAsync(String fileId) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.retrieveFile(fileId));
+    }
+
     /**
      * 检索文件内容
      * 免费用户无法使用此接口 #未经过测试
@@ -546,6 +707,16 @@ public class OpenAiClient {
         return moderations.blockingGet();
     }
 
+    /**
+     * 文本审核（异步）
+     *
+     * @param moderation 审核参数
+     * @return ModerationResponse
+     */
+    public CompletableFuture<ModerationResponse> moderationsAsync(Moderation moderation) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.moderations(moderation));
+    }
+
     /**
      * 创建微调模型
      *
@@ -557,6 +728,16 @@ public class OpenAiClient {
         return fineTuneResponse.blockingGet();
     }
 
+    /**
+     * 创建微调模型（异步）
+     *
+     * @param fineTune 微调作业id
+     * @return FineTuneResponse
+     */
+    public CompletableFuture<FineTuneResponse> fineTuneAsync(FineTune fineTune) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.fineTune(fineTune));
+    }
+
     /**
      * 创建微调模型
      *
@@ -578,6 +759,15 @@ public class OpenAiClient {
         return fineTunes.blockingGet().getData();
     }
 
+    /**
+     * 微调模型列表（异步）
+     *
+     * @return FineTuneResponse list
+     */
+    public CompletableFuture<List<FineTuneResponse>> fineTunesAsync() {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.fineTunes()).thenApply(OpenAiResponse::getData);
+    }
+
     /**
      * 检索微调作业
      *
@@ -589,6 +779,16 @@ public class OpenAiClient {
         return fineTune.blockingGet();
     }
 
+    /**
+     * 检索微调作业（异步）
+     *
+     * @param fineTuneId 微调作业id
+     * @return FineTuneResponse
+     */
+    public CompletableFuture<FineTuneResponse> retrieveFineTuneAsync(String fineTuneId) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.retrieveFineTune(fineTuneId));
+    }
+
     /**
      * 取消微调作业
      *
@@ -600,6 +800,16 @@ public class OpenAiClient {
         return fineTune.blockingGet();
     }
 
+    /**
+     * 取消微调作业（异步）
+     *
+     * @param fineTuneId 主键
+     * @return FineTuneResponse
+     */
+    public CompletableFuture<FineTuneResponse> cancelFineTuneAsync(String fineTuneId) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.cancelFineTune(fineTuneId));
+    }
+
     /**
      * 微调作业事件列表
      *
@@ -611,6 +821,16 @@ public class OpenAiClient {
         return events.blockingGet().getData();
     }
 
+    /**
+     * 微调作业事件列表（异步）
+     *
+     * @param fineTuneId 微调作业id
+     * @return Event List
+     */
+    public CompletableFuture<List<Event>> fineTuneEventsAsync(String fineTuneId) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.fineTuneEvents(fineTuneId)).thenApply(OpenAiResponse::getData);
+    }
+
     /**
      * 删除微调作业模型
      * Delete a fine-tuned model. You must have the Owner role in your organization.
@@ -623,6 +843,16 @@ public class OpenAiClient {
         return delete.blockingGet();
     }
 
+    /**
+     * 删除微调作业模型（异步）
+     *
+     * @param model 模型名称
+     * @return FineTuneDeleteResponse
+     */
+    public CompletableFuture<FineTuneDeleteResponse> deleteFineTuneModelAsync(String model) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.deleteFineTuneModel(model));
+    }
+
 
     /**
      * 引擎列表
@@ -654,8 +884,27 @@ public class OpenAiClient {
      * @return 答案
      */
     public ChatCompletionResponse chatCompletion(ChatCompletion chatCompletion) {
+        ChatResponseCache.Lookup lookup = this.responseCache == null ? null : this.responseCache.lookup(chatCompletion);
+        if (lookup != null && lookup.isHit()) {
+            return lookup.getResponse();
+        }
         Single<ChatCompletionResponse> chatCompletionResponse = this.openAiApi.chatCompletion(chatCompletion);
-        return chatCompletionResponse.blockingGet();
+        ChatCompletionResponse response = chatCompletionResponse.blockingGet();
+        if (lookup != null) {
+            this.responseCache.put(lookup, response);
+        }
+        return response;
+    }
+
+    /**
+     * 最新版的GPT-3.5 chat completion（异步）
+     * Controller可直接返回CompletableFuture，等待模型响应期间不占用Web工作线程
+     *
+     * @param chatCompletion 问答参数
+     * @return 答案
+     */
+    public CompletableFuture<ChatCompletionResponse> chatCompletionAsync(ChatCompletion chatCompletion) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.chatCompletion(chatCompletion));
     }
 
     /**
@@ -677,6 +926,21 @@ public class OpenAiClient {
      * @return 翻译后文本
      */
     public WhisperResponse speechToTextTranslations(java.io.File file, Translations translations) {
+        return this.speechToTextTranslations(this.openAiApi, file, translations).blockingGet();
+    }
+
+    /**
+     * 语音翻译（异步）：目前仅支持翻译为英文
+     *
+     * @param translations 参数
+     * @param file         语音文件 最大支持25MB mp3, mp4, mpeg, mpga, m4a, wav, webm
+     * @return 翻译后文本
+     */
+    public CompletableFuture<WhisperResponse> speechToTextTranslationsAsync(java.io.File file, Translations translations) {
+        return AsyncCalls.toFuture(this.speechToTextTranslations(this.openAiAsyncApi, file, translations));
+    }
+
+    private Single<WhisperResponse> speechToTextTranslations(OpenAiApi api, java.io.File file, Translations translations) {
         //文件
         RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
         MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
@@ -693,8 +957,7 @@ public class OpenAiClient {
             requestBodyMap.put(Translations.Fields.responseFormat, RequestBody.create(MediaType.parse("multipart/form-data"), translations.getResponseFormat()));
         }
         requestBodyMap.put(Translations.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(translations.getTemperature())));
-        Single<WhisperResponse> whisperResponse = this.openAiApi.speechToTextTranslations(multipartBody, requestBodyMap);
-        return whisperResponse.blockingGet();
+        return api.speechToTextTranslations(multipartBody, requestBodyMap);
     }
 
     /**
@@ -812,6 +1075,16 @@ public class OpenAiClient {
         Single<Subscription> subscription = this.openAiApi.subscription();
         return subscription.blockingGet();
     }
+
+    /**
+     * 账户信息查询（异步）
+     *
+     * @return 账户信息
+     */
+    public CompletableFuture<Subscription> subscriptionAsync() {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.subscription());
+    }
+
     /**
      * 账户调用接口消耗金额信息查询
      * 最多查询100天
@@ -825,6 +1098,17 @@ public class OpenAiClient {
         return billingUsage.blockingGet();
     }
 
+    /**
+     * 账户调用接口消耗金额信息查询（异步）
+     *
+     * @param starDate 开始时间
+     * @param endDate  结束时间
+     * @return 消耗金额信息
+     */
+    public CompletableFuture<BillingUsage> billingUsageAsync(@NotNull LocalDate starDate, @NotNull LocalDate endDate) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.billingUsage(starDate, endDate));
+    }
+
 
     public static final class Builder {
         /**
@@ -851,6 +1135,11 @@ public class OpenAiClient {
          */
         private OpenAiAuthInterceptor authInterceptor;
 
+        /**
+         * 对话响应缓存
+         */
+        private ChatResponseCache responseCache;
+
         public Builder() {
         }
 
@@ -883,6 +1172,11 @@ public class OpenAiClient {
             return this;
         }
 
+        public Builder responseCache(ChatResponseCache val) {
+            responseCache = val;
+            return this;
+        }
+
         public OpenAiClient build() {
             return new OpenAiClient(this);
         }
@@ -1,10 +1,9 @@
 package com.goalias.common.chat.openai;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.ContentType;
 import cn.hutool.json.JSONUtil;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.reactivex.Single;
 import lombok.Getter;
 import lombok.Setter;
@@ -14,6 +13,7 @@ import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
 import okhttp3.sse.EventSources;
 import org.jetbrains.annotations.NotNull;
+import com.goalias.common.chat.cache.ChatResponseCache;
 import com.goalias.common.chat.constant.OpenAIConst;
 import com.goalias.common.chat.entity.Tts.TextToSpeech;
 import com.goalias.common.chat.entity.billing.BillingUsage;
@@ -30,8 +30,13 @@ import com.goalias.common.chat.entity.models.ModelResponse;
 import com.goalias.common.chat.entity.whisper.Transcriptions;
 import com.goalias.common.chat.entity.whisper.WhisperResponse;
 import com.goalias.common.chat.openai.exception.CommonError;
-import com.goalias.common.chat.openai.function.KeyRandomStrategy;
+import com.goalias.common.chat.openai.function.KeyHealthStrategy;
 import com.goalias.common.chat.openai.function.KeyStrategyFunction;
+import com.goalias.common.chat.openai.http.AsyncCalls;
+import com.goalias.common.chat.openai.http.ErrorMappingCallAdapterFactory;
+import com.goalias.common.chat.openai.http.JsonRequestBody;
+import com.goalias.common.chat.openai.http.OpenAiHttpClientFactory;
+import com.goalias.common.chat.openai.http.OpenAiJson;
 import com.goalias.common.chat.openai.interceptor.DefaultOpenAiAuthInterceptor;
 import com.goalias.common.chat.openai.interceptor.DynamicKeyOpenAiAuthInterceptor;
 import com.goalias.common.chat.openai.interceptor.OpenAiAuthInterceptor;
@@ -39,6 +44,7 @@ import com.goalias.common.chat.openai.plugin.PluginAbstract;
 import com.goalias.common.chat.openai.plugin.PluginParam;
 import com.goalias.common.chat.sse.DefaultPluginListener;
 import com.goalias.common.chat.sse.PluginListener;
+import com.goalias.common.chat.token.TokenBudget;
 import com.goalias.common.core.exception.base.BaseException;
 import retrofit2.Call;
 import retrofit2.Retrofit;
@@ -49,6 +55,7 @@ import java.io.IOException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -88,6 +95,11 @@ public class OpenAiStreamClient {
 
     private OpenAiApi openAiApi;
 
+    /**
+     * 异步接口，请求由OkHttp调度器发出，供*Async方法使用
+     */
+    private OpenAiApi openAiAsyncApi;
+
     /**
      * 自定义鉴权处理拦截器<br/>
      * 可以不设置，默认实现：DefaultOpenAiAuthInterceptor <br/>
@@ -98,6 +110,16 @@ public class OpenAiStreamClient {
      */
     private OpenAiAuthInterceptor authInterceptor;
 
+    /**
+     * 对话历史的token预算，为null时不裁剪
+     */
+    private TokenBudget tokenBudget;
+
+    /**
+     * 对话响应缓存，为null时不缓存
+     */
+    private ChatResponseCache responseCache;
+
     private static final String DONE_SIGNAL = "[DONE]";
 
     /**
@@ -122,9 +144,11 @@ public class OpenAiStreamClient {
         apiUrl = builder.apiUrl;
 
         if (Objects.isNull(builder.keyStrategy)) {
-            builder.keyStrategy = new KeyRandomStrategy();
+            builder.keyStrategy = new KeyHealthStrategy();
         }
         keyStrategy = builder.keyStrategy;
+        tokenBudget = builder.tokenBudget;
+        responseCache = builder.responseCache;
 
         if (Objects.isNull(builder.authInterceptor)) {
             builder.authInterceptor = new DefaultOpenAiAuthInterceptor();
@@ -134,22 +158,34 @@ public class OpenAiStreamClient {
         authInterceptor.setApiKey(this.apiKey);
         authInterceptor.setKeyStrategy(this.keyStrategy);
 
+        OkHttpClient apiClient;
         if (Objects.isNull(builder.okHttpClient)) {
             builder.okHttpClient = this.okHttpClient();
+            //普通接口使用普通请求调度器，不与SSE连接争抢并发额度
+            apiClient = builder.okHttpClient.newBuilder().dispatcher(OpenAiHttpClientFactory.unaryClient().dispatcher()).build();
         } else {
             //自定义的okhttpClient  需要增加api keys
             builder.okHttpClient = builder.okHttpClient
                 .newBuilder()
                 .addInterceptor(authInterceptor)
                 .build();
+            apiClient = builder.okHttpClient;
         }
         okHttpClient = builder.okHttpClient;
+        //对冲只用于非流式请求
+        authInterceptor.attach(apiClient);
         if (apiHost.endsWith("/")) {
             this.openAiApi = new Retrofit.Builder()
                     .baseUrl(apiHost)
-                    .client(okHttpClient)
-                    .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
-                    .addConverterFactory(JacksonConverterFactory.create())
+                    .client(apiClient)
+                    .addCallAdapterFactory(ErrorMappingCallAdapterFactory.create(RxJava2CallAdapterFactory.create()))
+                    .addConverterFactory(JacksonConverterFactory.create(OpenAiJson.mapper()))
+                    .build().create(OpenAiApi.class);
+            this.openAiAsyncApi = new Retrofit.Builder()
+                    .baseUrl(apiHost)
+                    .client(apiClient)
+                    .addCallAdapterFactory(ErrorMappingCallAdapterFactory.create(RxJava2CallAdapterFactory.createAsync()))
+                    .addConverterFactory(JacksonConverterFactory.create(OpenAiJson.mapper()))
                     .build().create(OpenAiApi.class);
         }
 
@@ -164,8 +200,9 @@ public class OpenAiStreamClient {
         }
         this.authInterceptor.setApiKey(this.apiKey);
         this.authInterceptor.setKeyStrategy(this.keyStrategy);
-        OkHttpClient okHttpClient = new OkHttpClient
-            .Builder()
+        //基于共享实例派生，复用连接池和流式请求调度器
+        OkHttpClient okHttpClient = OpenAiHttpClientFactory.streamClient()
+            .newBuilder()
             .addInterceptor(this.authInterceptor)
             .connectTimeout(10, TimeUnit.SECONDS)
             .writeTimeout(50, TimeUnit.SECONDS)
@@ -188,13 +225,17 @@ public class OpenAiStreamClient {
         }
         try {
             EventSource.Factory factory = EventSources.createFactory(this.okHttpClient);
-            ObjectMapper mapper = new ObjectMapper();
-            String requestBody = mapper.writeValueAsString(chatCompletion);
+            T body = applyBudget(chatCompletion);
             Request request = new Request.Builder()
                 .url(this.apiHost)
-                .post(RequestBody.create(MediaType.parse(ContentType.JSON.getValue()), requestBody))
+                .post(new JsonRequestBody(body))
                 .build();
-            factory.newEventSource(request, eventSourceListener);
+            ChatResponseCache.Lookup lookup = cacheLookup(body);
+            if (lookup != null && lookup.isHit()) {
+                this.responseCache.replay(lookup, request, eventSourceListener);
+                return;
+            }
+            factory.newEventSource(request, lookup == null ? eventSourceListener : this.responseCache.record(lookup, eventSourceListener));
         } catch (Exception e) {
             log.error("请求参数解析异常：{}", e.getMessage());
         }
@@ -299,6 +340,16 @@ public class OpenAiStreamClient {
         return edits.blockingGet();
     }
 
+    /**
+     * 根据描述生成图片（异步）
+     *
+     * @param image 图片参数
+     * @return ImageResponse
+     */
+    public CompletableFuture<ImageResponse> genImagesAsync(Image image) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.genImages(image));
+    }
+
     /**
      * 最新版的GPT-3.5 chat completion 更加贴近官方网站的问答模型
      *
@@ -307,13 +358,35 @@ public class OpenAiStreamClient {
      */
     public <T extends BaseChatCompletion> ChatCompletionResponse chatCompletion(T chatCompletion) {
         if (chatCompletion instanceof ChatCompletion) {
-            Single<ChatCompletionResponse> chatCompletionResponse = this.openAiApi.chatCompletion((ChatCompletion) chatCompletion);
-            return chatCompletionResponse.blockingGet();
+            ChatCompletion body = applyBudget((ChatCompletion) chatCompletion);
+            ChatResponseCache.Lookup lookup = cacheLookup(body);
+            if (lookup != null && lookup.isHit()) {
+                return lookup.getResponse();
+            }
+            ChatCompletionResponse response = this.openAiApi.chatCompletion(body).blockingGet();
+            if (lookup != null) {
+                this.responseCache.put(lookup, response);
+            }
+            return response;
         }
         Single<ChatCompletionResponse> chatCompletionResponse = this.openAiApi.chatCompletionWithPicture((ChatCompletionWithPicture) chatCompletion);
         return chatCompletionResponse.blockingGet();
     }
 
+    /**
+     * 最新版的GPT-3.5 chat completion（异步）
+     * Controller可直接返回CompletableFuture，等待模型响应期间不占用Web工作线程
+     *
+     * @param chatCompletion 问答参数
+     * @return 答案
+     */
+    public <T extends BaseChatCompletion> CompletableFuture<ChatCompletionResponse> chatCompletionAsync(T chatCompletion) {
+        if (chatCompletion instanceof ChatCompletion) {
+            return AsyncCalls.toFuture(this.openAiAsyncApi.chatCompletion(applyBudget((ChatCompletion) chatCompletion)));
+        }
+        return AsyncCalls.toFuture(this.openAiAsyncApi.chatCompletionWithPicture((ChatCompletionWithPicture) chatCompletion));
+    }
+
     /**
      * 上传文件
      *
@@ -322,13 +395,27 @@ public class OpenAiStreamClient {
      * @return UploadFileResponse
      */
     public UploadFileResponse uploadFile(String purpose, java.io.File file) {
+        return this.uploadFile(this.openAiApi, purpose, file).blockingGet();
+    }
+
+    /**
+     * 上传文件（异步）
+     *
+     * @param purpose purpose
+     * @param file    文件对象
+     * @return UploadFileResponse
+     */
+    public CompletableFuture<UploadFileResponse> uploadFileAsync(String purpose, java.io.File file) {
+        return AsyncCalls.toFuture(this.uploadFile(this.openAiAsyncApi, purpose, file));
+    }
+
+    private Single<UploadFileResponse> uploadFile(OpenAiApi api, String purpose, java.io.File file) {
         // 创建 RequestBody，用于封装构建RequestBody
         RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
         MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
 
         RequestBody purposeBody = RequestBody.create(MediaType.parse("multipart/form-data"), purpose);
-        Single<UploadFileResponse> uploadFileResponse = this.openAiApi.uploadFile(multipartBody, purposeBody);
-        return uploadFileResponse.blockingGet();
+        return api.uploadFile(multipartBody, purposeBody);
     }
 
     /**
@@ -344,8 +431,29 @@ public class OpenAiStreamClient {
         Date end = new Date(now.getTime() + (long) 24 * 60 * 60 * 1000);
 
         BillingUsage billingUsage = billingUsage(start.toInstant().atZone(ZoneId.systemDefault()).toLocalDate(), end.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+        return keyInfo(key, billingUsage, subscription(), getModelName());
+    }
+
+    /**
+     * 获取openKey账户信息(近90天)（异步），三个查询并行发出
+     *
+     * @param key
+     * @return KeyInfo
+     **/
+    public CompletableFuture<KeyInfo> getKeyInfoAsync(String key) {
+        Date now = new Date();
+        Date start = new Date(now.getTime() - (long) 90 * 24 * 60 * 60 * 1000);
+        Date end = new Date(now.getTime() + (long) 24 * 60 * 60 * 1000);
+
+        CompletableFuture<BillingUsage> billingUsage = billingUsageAsync(start.toInstant().atZone(ZoneId.systemDefault()).toLocalDate(), end.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+        CompletableFuture<Subscription> subscription = subscriptionAsync();
+        CompletableFuture<String> modelName = getModelNameAsync();
+        return CompletableFuture.allOf(billingUsage, subscription, modelName)
+            .thenApply(v -> keyInfo(key, billingUsage.join(), subscription.join(), modelName.join()));
+    }
+
+    private static KeyInfo keyInfo(String key, BillingUsage billingUsage, Subscription subscription, String modelName) {
         double totalUsage = billingUsage.getTotalUsage().doubleValue() / 100;
-        Subscription subscription = subscription();
         KeyInfo keyInfo = new KeyInfo();
         String start_key = key.substring(0, 6);
         String end_key = key.substring(key.length() - 6);
@@ -359,7 +467,7 @@ public class OpenAiStreamClient {
         keyInfo.setLimitDate(new Date(subscription.getAccessUntil() * 1000).toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
         keyInfo.setPlanTitle(subscription.getPlan() != null ? subscription.getPlan().getTitle() : "null");
         keyInfo.setIsHasPaymentMethod(subscription.isHasPaymentMethod());
-        keyInfo.setModel(getModelName());
+        keyInfo.setModel(modelName);
         return keyInfo;
     }
 
@@ -372,7 +480,19 @@ public class OpenAiStreamClient {
      **/
     public String getModelName() {
         Single<ModelResponse> models = this.openAiApi.models();
-        List<Model> modelList = models.blockingGet().getData();
+        return modelName(models.blockingGet().getData());
+    }
+
+    /**
+     * 获取可用模型（异步）
+     *
+     * @return String
+     **/
+    public CompletableFuture<String> getModelNameAsync() {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.models()).thenApply(models -> modelName(models.getData()));
+    }
+
+    private static String modelName(List<Model> modelList) {
         for (Model model : modelList) {
             if (Objects.equals(model.getId(), "gpt-4")) {
                 return "GPT-4.0";
@@ -394,6 +514,17 @@ public class OpenAiStreamClient {
         return billingUsage.blockingGet();
     }
 
+    /**
+     * 账户调用接口消耗金额信息查询（异步）
+     *
+     * @param starDate 开始时间
+     * @param endDate  结束时间
+     * @return 消耗金额信息
+     */
+    public CompletableFuture<BillingUsage> billingUsageAsync(@NotNull LocalDate starDate, @NotNull LocalDate endDate) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.billingUsage(starDate, endDate));
+    }
+
     /**
      * 文本转换向量
      *
@@ -405,6 +536,16 @@ public class OpenAiStreamClient {
         return embeddings.blockingGet();
     }
 
+    /**
+     * 文本转换向量（异步）
+     *
+     * @param embedding 入参
+     * @return EmbeddingResponse
+     */
+    public CompletableFuture<EmbeddingResponse> embeddingsAsync(Embedding embedding) {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.embeddings(embedding));
+    }
+
     /**
      * 账户信息查询：里面包含总金额等信息
      *
@@ -415,6 +556,15 @@ public class OpenAiStreamClient {
         return subscription.blockingGet();
     }
 
+    /**
+     * 账户信息查询（异步）
+     *
+     * @return 账户信息
+     */
+    public CompletableFuture<Subscription> subscriptionAsync() {
+        return AsyncCalls.toFuture(this.openAiAsyncApi.subscription());
+    }
+
     /**
      * 语音转文字
      *
@@ -423,6 +573,21 @@ public class OpenAiStreamClient {
      * @return 语音文本
      */
     public WhisperResponse speechToTextTranscriptions(java.io.File file, Transcriptions transcriptions) {
+        return this.speechToTextTranscriptions(this.openAiApi, file, transcriptions).blockingGet();
+    }
+
+    /**
+     * 语音转文字（异步）
+     *
+     * @param transcriptions 参数
+     * @param file           语音文件 最大支持25MB mp3, mp4, mpeg, mpga, m4a, wav, webm
+     * @return 语音文本
+     */
+    public CompletableFuture<WhisperResponse> speechToTextTranscriptionsAsync(java.io.File file, Transcriptions transcriptions) {
+        return AsyncCalls.toFuture(this.speechToTextTranscriptions(this.openAiAsyncApi, file, transcriptions));
+    }
+
+    private Single<WhisperResponse> speechToTextTranscriptions(OpenAiApi api, java.io.File file, Transcriptions transcriptions) {
         //文件
         RequestBody fileBody = RequestBody.create(MediaType.parse("multipart/form-data"), file);
         MultipartBody.Part multipartBody = MultipartBody.Part.createFormData("file", file.getName(), fileBody);
@@ -443,8 +608,7 @@ public class OpenAiStreamClient {
         if (Objects.nonNull(transcriptions.getTemperature())) {
             requestBodyMap.put(Transcriptions.Fields.temperature, RequestBody.create(MediaType.parse("multipart/form-data"), String.valueOf(transcriptions.getTemperature())));
         }
-        Single<WhisperResponse> whisperResponse = this.openAiApi.speechToTextTranscriptions(multipartBody, requestBodyMap);
-        return whisperResponse.blockingGet();
+        return api.speechToTextTranscriptions(multipartBody, requestBodyMap);
     }
 
     /**
@@ -496,8 +660,8 @@ public class OpenAiStreamClient {
         String text = textToSpeech.getInput();
         String lang = "zh";
 
-        // 创建OkHttpClient实例
-        OkHttpClient client = new OkHttpClient();
+        // 使用共享实例，避免每次调用新建连接池和线程池
+        OkHttpClient client = OpenAiHttpClientFactory.unaryClient();
 
         // 构建请求URL
         HttpUrl.Builder urlBuilder = HttpUrl.parse(baseUrl).newBuilder();
@@ -603,6 +767,35 @@ public class OpenAiStreamClient {
     }
 
 
+    /**
+     * 按token预算裁剪对话历史，需要裁剪时返回替换了messages的浅拷贝，不修改调用方的请求对象
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends BaseChatCompletion> T applyBudget(T chatCompletion) {
+        if (this.tokenBudget == null || !(chatCompletion instanceof ChatCompletion)) {
+            return chatCompletion;
+        }
+        ChatCompletion completion = (ChatCompletion) chatCompletion;
+        List<Message> trimmed = this.tokenBudget.trim(completion.getModel(), completion.getMessages());
+        if (trimmed == completion.getMessages()) {
+            return chatCompletion;
+        }
+        //不修改调用方的请求对象，在浅拷贝上替换消息列表
+        ChatCompletion copy = BeanUtil.copyProperties(completion, (Class<ChatCompletion>) completion.getClass());
+        copy.setMessages(trimmed);
+        return (T) copy;
+    }
+
+    /**
+     * 查询对话缓存，未配置缓存或请求不适合缓存时返回null
+     */
+    private ChatResponseCache.Lookup cacheLookup(BaseChatCompletion chatCompletion) {
+        if (this.responseCache == null || !(chatCompletion instanceof ChatCompletion)) {
+            return null;
+        }
+        return this.responseCache.lookup((ChatCompletion) chatCompletion);
+    }
+
     /**
      * 构造
      *
@@ -639,6 +832,16 @@ public class OpenAiStreamClient {
          */
         private OpenAiAuthInterceptor authInterceptor;
 
+        /**
+         * 对话历史的token预算
+         */
+        private TokenBudget tokenBudget;
+
+        /**
+         * 对话响应缓存
+         */
+        private ChatResponseCache responseCache;
+
         public Builder() {
         }
 
@@ -682,6 +885,16 @@ public class OpenAiStreamClient {
             return this;
         }
 
+        public Builder tokenBudget(TokenBudget val) {
+            tokenBudget = val;
+            return this;
+        }
+
+        public Builder responseCache(ChatResponseCache val) {
+            responseCache = val;
+            return this;
+        }
+
         public OpenAiStreamClient build() {
             return new OpenAiStreamClient(this);
         }
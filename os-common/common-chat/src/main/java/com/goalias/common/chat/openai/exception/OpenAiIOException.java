@@ -0,0 +1,38 @@
+package com.goalias.common.chat.openai.exception;
+
+import com.goalias.common.core.exception.base.BaseException;
+
+import java.io.IOException;
+import java.io.Serial;
+
+/**
+ * 拦截器中抛出的业务异常
+ * 异步请求(enqueue、sse)中拦截器抛出RuntimeException会结束OkHttp调度器线程，拦截器统一抛出本异常，
+ * 原BaseException作为cause，由 ErrorMappingCallAdapterFactory 还原给调用方
+ *
+ * @author goalias
+ */
+public class OpenAiIOException extends IOException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public OpenAiIOException(String message) {
+        this(new BaseException(message));
+    }
+
+    public OpenAiIOException(BaseException error) {
+        super(error.getMessage(), error);
+    }
+
+    public BaseException getError() {
+        return (BaseException) getCause();
+    }
+
+    /**
+     * 还原拦截器中的业务异常，其他异常原样返回
+     */
+    public static Throwable unwrap(Throwable e) {
+        return e instanceof OpenAiIOException ? ((OpenAiIOException) e).getError() : e;
+    }
+}
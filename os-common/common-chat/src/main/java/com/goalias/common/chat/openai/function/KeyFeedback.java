@@ -0,0 +1,45 @@
+package com.goalias.common.chat.openai.function;
+
+import okhttp3.Headers;
+
+/**
+ *  key 的调用结果回调
+ *  KeyStrategyFunction 同时实现此接口时，鉴权拦截器会在每次请求前后回调，供策略统计各个key的负载与健康状况
+ *
+ * @author goalias
+ */
+public interface KeyFeedback {
+
+    /**
+     * 请求发出前
+     *
+     * @param key api key
+     */
+    void onStart(String key);
+
+    /**
+     * 收到响应头后
+     *
+     * @param key          api key
+     * @param code         http状态码
+     * @param latencyNanos 从发出请求到收到响应头的耗时
+     * @param headers      响应头，包含 x-ratelimit-* 与 Retry-After
+     */
+    void onResponse(String key, int code, long latencyNanos, Headers headers);
+
+    /**
+     * 网络异常，没有收到响应
+     *
+     * @param key          api key
+     * @param latencyNanos 耗时
+     */
+    void onError(String key, long latencyNanos);
+
+    /**
+     * 请求被主动取消(如对冲落败)，不反映key的健康状况，只需结束计数
+     *
+     * @param key api key
+     */
+    default void onCancel(String key) {
+    }
+}
@@ -0,0 +1,299 @@
+package com.goalias.common.chat.openai.function;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Headers;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  按负载与健康状况选择key
+ *  统计每个key的在途请求数、响应耗时、429/5xx比例与 x-ratelimit-remaining-requests，
+ *  随机取两个可用key比较负载选较轻者，避免并发请求集中到同一个key；
+ *  429/5xx后按指数退避冷却，冷却结束自动恢复。所有统计均为无锁计数
+ *
+ * @author goalias
+ */
+@Slf4j
+public class KeyHealthStrategy implements KeyStrategyFunction<List<String>, String>, KeyFeedback {
+
+    private static final String REMAINING_REQUESTS = "x-ratelimit-remaining-requests";
+
+    private static final String RESET_REQUESTS = "x-ratelimit-reset-requests";
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * 统计的平滑系数
+     */
+    private static final double ALPHA = 0.2;
+
+    private final long baseCooldownNanos;
+
+    private final long maxCooldownNanos;
+
+    private final Map<String, KeyState> states = new ConcurrentHashMap<>();
+
+    public KeyHealthStrategy() {
+        this(1, 60);
+    }
+
+    /**
+     * @param baseCooldownSeconds 首次冷却时长
+     * @param maxCooldownSeconds  最长冷却时长
+     */
+    public KeyHealthStrategy(long baseCooldownSeconds, long maxCooldownSeconds) {
+        this.baseCooldownNanos = TimeUnit.SECONDS.toNanos(baseCooldownSeconds);
+        this.maxCooldownNanos = TimeUnit.SECONDS.toNanos(maxCooldownSeconds);
+    }
+
+    @Override
+    public String apply(List<String> apiKeys) {
+        int size = apiKeys.size();
+        if (size == 1) {
+            return apiKeys.get(0);
+        }
+        long now = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        //两次随机选择：任取两个key比较负载取较轻者，效果接近全量比较，且不会让所有请求涌向同一个key
+        int firstIndex = random.nextInt(size);
+        String first = apiKeys.get(firstIndex);
+        String second = apiKeys.get((firstIndex + 1 + random.nextInt(size - 1)) % size);
+        boolean firstAvailable = !state(first).coolingDown(now);
+        boolean secondAvailable = !state(second).coolingDown(now);
+        if (firstAvailable && secondAvailable) {
+            return state(first).score() <= state(second).score() ? first : second;
+        }
+        if (firstAvailable) {
+            return first;
+        }
+        if (secondAvailable) {
+            return second;
+        }
+        for (int i = 1; i < size; i++) {
+            String key = apiKeys.get((firstIndex + i) % size);
+            if (!state(key).coolingDown(now)) {
+                return key;
+            }
+        }
+        //全部冷却中，选最早恢复的key
+        return earliestAvailable(apiKeys);
+    }
+
+    @Override
+    public void onStart(String key) {
+        state(key).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void onResponse(String key, int code, long latencyNanos, Headers headers) {
+        KeyState state = state(key);
+        state.inFlight.decrementAndGet();
+        state.updateLatency(latencyNanos);
+        String remaining = headers.get(REMAINING_REQUESTS);
+        if (StrUtil.isNotBlank(remaining)) {
+            try {
+                state.remaining = Integer.parseInt(remaining.trim());
+            } catch (NumberFormatException ignored) {
+                state.remaining = -1;
+            }
+        }
+        boolean failed = code == 429 || code >= 500;
+        state.updateErrorRate(failed);
+        if (failed) {
+            long retryAfter = parseRetryAfter(headers.get(RETRY_AFTER));
+            cooldown(key, state, retryAfter);
+        } else {
+            state.failures.set(0);
+            //额度用完时冷却到额度重置
+            if (state.remaining == 0) {
+                long reset = parseDuration(headers.get(RESET_REQUESTS));
+                if (reset > 0) {
+                    state.cooldownUntil = System.nanoTime() + reset;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onError(String key, long latencyNanos) {
+        KeyState state = state(key);
+        state.inFlight.decrementAndGet();
+        state.updateLatency(latencyNanos);
+        state.updateErrorRate(true);
+    }
+
+    @Override
+    public void onCancel(String key) {
+        state(key).inFlight.decrementAndGet();
+    }
+
+    /**
+     * 当前各key的统计，便于监控
+     */
+    public Map<String, String> snapshot() {
+        Map<String, String> snapshot = new ConcurrentHashMap<>(states.size());
+        long now = System.nanoTime();
+        states.forEach((key, state) -> snapshot.put(mask(key), state.describe(now)));
+        return snapshot;
+    }
+
+    private void cooldown(String key, KeyState state, long retryAfterNanos) {
+        int failures = state.failures.incrementAndGet();
+        long backoff = baseCooldownNanos << Math.min(failures - 1, 16);
+        backoff = Math.min(backoff, maxCooldownNanos);
+        //加入抖动，避免多个key同时恢复后再次同时被打满
+        backoff = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        long cooldown = Math.max(backoff, retryAfterNanos);
+        state.cooldownUntil = System.nanoTime() + cooldown;
+        log.warn("--------> ApiKey：[{}] 连续失败{}次，冷却{}ms", mask(key), failures, TimeUnit.NANOSECONDS.toMillis(cooldown));
+    }
+
+    private String earliestAvailable(List<String> apiKeys) {
+        String best = apiKeys.get(0);
+        long bestUntil = state(best).cooldownUntil;
+        for (String key : apiKeys) {
+            long until = state(key).cooldownUntil;
+            if (until - bestUntil < 0) {
+                best = key;
+                bestUntil = until;
+            }
+        }
+        return best;
+    }
+
+    private KeyState state(String key) {
+        return states.computeIfAbsent(key, k -> new KeyState());
+    }
+
+    private static long parseRetryAfter(String value) {
+        if (StrUtil.isBlank(value)) {
+            return 0;
+        }
+        try {
+            return TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 解析OpenAi的重置时间格式，如 1s、6m0s、20ms
+     */
+    static long parseDuration(String value) {
+        if (StrUtil.isBlank(value)) {
+            return 0;
+        }
+        long nanos = 0;
+        int i = 0;
+        int length = value.length();
+        while (i < length) {
+            int numberStart = i;
+            while (i < length && (Character.isDigit(value.charAt(i)) || value.charAt(i) == '.')) {
+                i++;
+            }
+            int unitStart = i;
+            while (i < length && Character.isLetter(value.charAt(i))) {
+                i++;
+            }
+            if (numberStart == unitStart) {
+                return 0;
+            }
+            double number = Double.parseDouble(value.substring(numberStart, unitStart));
+            switch (value.substring(unitStart, i)) {
+                case "ms":
+                    nanos += (long) (number * 1_000_000L);
+                    break;
+                case "s":
+                    nanos += (long) (number * 1_000_000_000L);
+                    break;
+                case "m":
+                    nanos += (long) (number * 60_000_000_000L);
+                    break;
+                case "h":
+                    nanos += (long) (number * 3600_000_000_000L);
+                    break;
+                default:
+                    return 0;
+            }
+        }
+        return nanos;
+    }
+
+    private static String mask(String key) {
+        return key.length() <= 12 ? "****" : key.substring(0, 6) + "****" + key.substring(key.length() - 6);
+    }
+
+    private static final class KeyState {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicInteger failures = new AtomicInteger();
+
+        /**
+         * 平滑后的耗时(纳秒)
+         */
+        private final AtomicLong latency = new AtomicLong();
+
+        /**
+         * 平滑后的失败比例，按double位存储
+         */
+        private final AtomicLong errorRate = new AtomicLong(Double.doubleToLongBits(0));
+
+        private volatile long cooldownUntil;
+
+        /**
+         * 最近一次响应头中的剩余请求数，-1为未知
+         */
+        private volatile int remaining = -1;
+
+        private boolean coolingDown(long now) {
+            return cooldownUntil - now > 0;
+        }
+
+        /**
+         * 越小越优先：在途请求越多、耗时越长、失败越多、剩余额度越少，分数越高
+         */
+        private double score() {
+            double latencyMs = Math.max(1, latency.get() / 1_000_000d);
+            double score = (inFlight.get() + 1) * latencyMs * (1 + 4 * Double.longBitsToDouble(errorRate.get()));
+            int left = remaining;
+            if (left >= 0 && left < 10) {
+                score *= 10d / (left + 1);
+            }
+            return score;
+        }
+
+        private void updateLatency(long sample) {
+            long prev;
+            long next;
+            do {
+                prev = latency.get();
+                next = prev == 0 ? sample : (long) (prev + ALPHA * (sample - prev));
+            } while (!latency.compareAndSet(prev, next));
+        }
+
+        private void updateErrorRate(boolean failed) {
+            long prev;
+            long next;
+            do {
+                prev = errorRate.get();
+                double rate = Double.longBitsToDouble(prev);
+                next = Double.doubleToLongBits(rate + ALPHA * ((failed ? 1 : 0) - rate));
+            } while (!errorRate.compareAndSet(prev, next));
+        }
+
+        private String describe(long now) {
+            return StrUtil.format("inFlight={}, latencyMs={}, errorRate={}, remaining={}, coolingMs={}",
+                inFlight.get(), TimeUnit.NANOSECONDS.toMillis(latency.get()),
+                String.format("%.2f", Double.longBitsToDouble(errorRate.get())), remaining,
+                Math.max(0, TimeUnit.NANOSECONDS.toMillis(cooldownUntil - now)));
+        }
+    }
+}
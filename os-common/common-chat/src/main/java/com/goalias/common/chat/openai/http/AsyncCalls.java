@@ -0,0 +1,32 @@
+package com.goalias.common.chat.openai.http;
+
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 将异步Retrofit接口返回的Single转为CompletableFuture
+ * 请求由OkHttp调度器异步发出，等待响应期间不占用调用线程；取消future时同时取消底层请求
+ * 注意：鉴权拦截器的重试退避(sleep)与对冲等待在拦截器链内同步进行，异步调用时会占用一个OkHttp调度器线程，
+ * 调度器的maxRequests按这段时间计入并发，故障期间应相应调低 RetryPolicy 的重试次数与退避上限
+ * 拦截器中的业务异常以 OpenAiIOException 抛出，由 ErrorMappingCallAdapterFactory 还原为BaseException后交给future
+ *
+ * @author goalias
+ */
+public class AsyncCalls {
+
+    private AsyncCalls() {
+    }
+
+    public static <T> CompletableFuture<T> toFuture(Single<T> single) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Disposable disposable = single.subscribe(future::complete, future::completeExceptionally);
+        future.whenComplete((result, e) -> {
+            if (future.isCancelled()) {
+                disposable.dispose();
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,62 @@
+package com.goalias.common.chat.openai.http;
+
+import com.goalias.common.chat.openai.exception.OpenAiIOException;
+import io.reactivex.Single;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Retrofit;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * 包装RxJava2CallAdapterFactory，将拦截器抛出的 OpenAiIOException 还原为原BaseException
+ * 同步与异步接口的调用方看到的异常与拦截器直接抛出BaseException时一致
+ *
+ * @author goalias
+ */
+public class ErrorMappingCallAdapterFactory extends CallAdapter.Factory {
+
+    private final CallAdapter.Factory delegate;
+
+    private ErrorMappingCallAdapterFactory(CallAdapter.Factory delegate) {
+        this.delegate = delegate;
+    }
+
+    public static ErrorMappingCallAdapterFactory create(CallAdapter.Factory delegate) {
+        return new ErrorMappingCallAdapterFactory(delegate);
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        CallAdapter<?, ?> adapter = delegate.get(returnType, annotations, retrofit);
+        if (adapter == null || getRawType(returnType) != Single.class) {
+            return adapter;
+        }
+        return new SingleAdapter<>(adapter);
+    }
+
+    private static final class SingleAdapter<R> implements CallAdapter<R, Object> {
+
+        private final CallAdapter<R, ?> adapter;
+
+        @SuppressWarnings("unchecked")
+        private SingleAdapter(CallAdapter<?, ?> adapter) {
+            this.adapter = (CallAdapter<R, ?>) adapter;
+        }
+
+        @Override
+        public Type responseType() {
+            return adapter.responseType();
+        }
+
+        @Override
+        public Object adapt(Call<R> call) {
+            return unwrap((Single<?>) adapter.adapt(call));
+        }
+
+        private static <T> Single<T> unwrap(Single<T> single) {
+            return single.onErrorResumeNext(e -> Single.error(OpenAiIOException.unwrap(e)));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.goalias.common.chat.openai.http;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * 写入时直接序列化到OkHttp sink的请求体，不生成中间String和byte[]
+ * 长度未知，HTTP/1.1下使用chunked编码；重试时重新序列化
+ *
+ * @author goalias
+ */
+public class JsonRequestBody extends RequestBody {
+
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    private final ObjectWriter writer;
+
+    private final Object value;
+
+    public JsonRequestBody(Object value) {
+        this.writer = OpenAiJson.writerFor(value.getClass());
+        this.value = value;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public void writeTo(@NotNull BufferedSink sink) throws IOException {
+        writer.writeValue(sink.outputStream(), value);
+    }
+}
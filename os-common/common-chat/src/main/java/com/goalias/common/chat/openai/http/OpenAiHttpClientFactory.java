@@ -0,0 +1,176 @@
+package com.goalias.common.chat.openai.http;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.goalias.common.chat.config.properties.OpenAiHttpProperties;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * OpenAi 客户端共享的 OkHttpClient
+ * 所有客户端共用一个连接池；普通请求与流式请求使用各自的调度器，长时间占用的SSE连接不会挤占普通请求的并发额度
+ * 各客户端通过 newBuilder() 追加拦截器和超时，派生出的实例仍共享连接池和调度器
+ * 共享实例在第一次被使用时才创建，之后不再替换，保证所有客户端始终共用同一个连接池和调度器
+ *
+ * @author goalias
+ */
+@Slf4j
+public class OpenAiHttpClientFactory {
+
+    private static OpenAiHttpProperties properties = new OpenAiHttpProperties();
+
+    private static volatile Holder holder;
+
+    private OpenAiHttpClientFactory() {
+    }
+
+    /**
+     * 应用配置：共享实例尚未创建时按新配置创建；已创建时并发上限立即对所有客户端生效，
+     * 连接池大小、保活时间、HTTP/2 无法在运行中修改，需在第一个客户端创建前完成配置
+     */
+    public static synchronized void configure(OpenAiHttpProperties properties) {
+        OpenAiHttpClientFactory.properties = properties;
+        Holder current = holder;
+        if (current != null) {
+            current.unaryDispatcher.setMaxRequests(properties.getMaxRequests());
+            current.unaryDispatcher.setMaxRequestsPerHost(properties.getMaxRequestsPerHost());
+            current.streamDispatcher.setMaxRequests(properties.getStreamMaxRequests());
+            current.streamDispatcher.setMaxRequestsPerHost(properties.getStreamMaxRequestsPerHost());
+            current.hedgeDispatcher.setMaxRequests(properties.getMaxRequests());
+            current.hedgeDispatcher.setMaxRequestsPerHost(properties.getMaxRequestsPerHost());
+            OpenAiHttpProperties built = current.properties;
+            if (built.getMaxIdleConnections() != properties.getMaxIdleConnections()
+                || built.getKeepAliveSeconds() != properties.getKeepAliveSeconds()
+                || built.isHttp2() != properties.isHttp2()) {
+                log.warn("OpenAi http client was created before configuration, pool and protocol settings keep {}/{}s, http2: {}",
+                    built.getMaxIdleConnections(), built.getKeepAliveSeconds(), built.isHttp2());
+            }
+        }
+        log.info("OpenAi http client configured, maxRequests: {}/{}, stream maxRequests: {}/{}, pool: {}/{}s, http2: {}",
+            properties.getMaxRequests(), properties.getMaxRequestsPerHost(),
+            properties.getStreamMaxRequests(), properties.getStreamMaxRequestsPerHost(),
+            properties.getMaxIdleConnections(), properties.getKeepAliveSeconds(), properties.isHttp2());
+    }
+
+    /**
+     * 普通请求使用的共享实例
+     */
+    public static OkHttpClient unaryClient() {
+        return holder().unaryClient;
+    }
+
+    /**
+     * 流式(SSE)请求使用的共享实例
+     */
+    public static OkHttpClient streamClient() {
+        return holder().streamClient;
+    }
+
+    /**
+     * 对冲请求使用的调度器：对冲在拦截器内等待内层请求，内层请求若与外层异步请求共用调度器，
+     * 外层请求占满maxRequestsPerHost后内层请求只能排队，形成死锁
+     */
+    public static Dispatcher hedgeDispatcher() {
+        return holder().hedgeDispatcher;
+    }
+
+    /**
+     * 连接池与调度器队列的当前状态
+     */
+    public static Map<String, Integer> metrics() {
+        Holder current = holder();
+        Map<String, Integer> metrics = new LinkedHashMap<>(8);
+        metrics.put("pool.connections", current.pool.connectionCount());
+        metrics.put("pool.idle", current.pool.idleConnectionCount());
+        metrics.put("unary.running", current.unaryDispatcher.runningCallsCount());
+        metrics.put("unary.queued", current.unaryDispatcher.queuedCallsCount());
+        metrics.put("stream.running", current.streamDispatcher.runningCallsCount());
+        metrics.put("stream.queued", current.streamDispatcher.queuedCallsCount());
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * 监控读取连接池状态，共享实例尚未创建时为0，不触发创建
+     */
+    static int poolState(ToIntFunction<ConnectionPool> getter) {
+        Holder current = holder;
+        return current == null ? 0 : getter.applyAsInt(current.pool);
+    }
+
+    /**
+     * 监控读取调度器状态，共享实例尚未创建时为0，不触发创建
+     *
+     * @param stream 是否为流式请求的调度器
+     */
+    static int dispatcherState(boolean stream, ToIntFunction<Dispatcher> getter) {
+        Holder current = holder;
+        return current == null ? 0 : getter.applyAsInt(stream ? current.streamDispatcher : current.unaryDispatcher);
+    }
+
+    private static Holder holder() {
+        Holder current = holder;
+        if (current == null) {
+            synchronized (OpenAiHttpClientFactory.class) {
+                current = holder;
+                if (current == null) {
+                    current = new Holder(properties);
+                    holder = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Dispatcher dispatcher(String namePrefix, int maxRequests, int maxRequestsPerHost) {
+        ExecutorService executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            ThreadFactoryBuilder.create().setNamePrefix(namePrefix).setDaemon(true).build());
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        return dispatcher;
+    }
+
+    private static final class Holder {
+
+        private final OpenAiHttpProperties properties;
+
+        private final ConnectionPool pool;
+
+        private final Dispatcher unaryDispatcher;
+
+        private final Dispatcher streamDispatcher;
+
+        private final Dispatcher hedgeDispatcher;
+
+        private final OkHttpClient unaryClient;
+
+        private final OkHttpClient streamClient;
+
+        private Holder(OpenAiHttpProperties properties) {
+            this.properties = properties;
+            this.pool = new ConnectionPool(properties.getMaxIdleConnections(), properties.getKeepAliveSeconds(), TimeUnit.SECONDS);
+            this.unaryDispatcher = dispatcher("openai-http-", properties.getMaxRequests(), properties.getMaxRequestsPerHost());
+            this.streamDispatcher = dispatcher("openai-sse-", properties.getStreamMaxRequests(), properties.getStreamMaxRequestsPerHost());
+            this.hedgeDispatcher = dispatcher("openai-hedge-", properties.getMaxRequests(), properties.getMaxRequestsPerHost());
+            OkHttpClient base = new OkHttpClient.Builder()
+                .connectionPool(pool)
+                .protocols(properties.isHttp2() ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                    : Collections.singletonList(Protocol.HTTP_1_1))
+                .build();
+            this.unaryClient = base.newBuilder().dispatcher(unaryDispatcher).build();
+            this.streamClient = base.newBuilder().dispatcher(streamDispatcher).build();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.goalias.common.chat.openai.http;
+
+import com.goalias.common.chat.sse.SseRelayListener;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * 将共享连接池与调度器队列状态发布到Micrometer，指标名 openai.http.{key}，共享实例创建前取值为0
+ * 以及sse转发的连接数与缓冲占用 openai.sse.*
+ *
+ * @author goalias
+ */
+public class OpenAiHttpMeterBinder implements MeterBinder {
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        poolGauge(registry, "pool.connections", ConnectionPool::connectionCount);
+        poolGauge(registry, "pool.idle", ConnectionPool::idleConnectionCount);
+        dispatcherGauge(registry, "unary.running", false, Dispatcher::runningCallsCount);
+        dispatcherGauge(registry, "unary.queued", false, Dispatcher::queuedCallsCount);
+        dispatcherGauge(registry, "stream.running", true, Dispatcher::runningCallsCount);
+        dispatcherGauge(registry, "stream.queued", true, Dispatcher::queuedCallsCount);
+        Gauge.builder("openai.sse.open", SseRelayListener::openStreams)
+            .description("转发中的sse连接数")
+            .register(registry);
+        Gauge.builder("openai.sse.buffered", SseRelayListener::bufferedEvents)
+            .description("sse转发缓冲区中待写出的事件数")
+            .register(registry);
+    }
+
+    private void poolGauge(MeterRegistry registry, String key, ToIntFunction<ConnectionPool> getter) {
+        Gauge.builder("openai.http." + key, () -> OpenAiHttpClientFactory.poolState(getter))
+            .register(registry);
+    }
+
+    private void dispatcherGauge(MeterRegistry registry, String key, boolean stream, ToIntFunction<Dispatcher> getter) {
+        Gauge.builder("openai.http." + key, () -> OpenAiHttpClientFactory.dispatcherState(stream, getter))
+            .register(registry);
+    }
+}
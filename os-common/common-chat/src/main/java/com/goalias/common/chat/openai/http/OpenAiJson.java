@@ -0,0 +1,34 @@
+package com.goalias.common.chat.openai.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * OpenAi 请求体序列化
+ * 共享一个ObjectMapper，按请求类型缓存ObjectWriter，序列化器缓存在多次请求间保持热态
+ *
+ * @author goalias
+ */
+public class OpenAiJson {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        //写入OkHttp的sink，不能由Jackson关闭
+        .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+
+    private static final Map<Class<?>, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
+    private OpenAiJson() {
+    }
+
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    public static ObjectWriter writerFor(Class<?> type) {
+        return WRITERS.computeIfAbsent(type, MAPPER::writerFor);
+    }
+}
@@ -1,7 +1,6 @@
 package com.goalias.common.chat.openai.interceptor;
 
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.Request;
 import okhttp3.Response;
 
 import java.io.IOException;
@@ -41,8 +40,7 @@ public class DefaultOpenAiAuthInterceptor extends OpenAiAuthInterceptor {
      */
     @Override
     public Response intercept(Chain chain) throws IOException {
-        Request original = chain.request();
-        return chain.proceed(auth(super.getKey(), original));
+        return execute(chain);
     }
 
     /**
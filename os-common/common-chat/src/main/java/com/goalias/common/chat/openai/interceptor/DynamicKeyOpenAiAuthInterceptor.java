@@ -1,5 +1,7 @@
 package com.goalias.common.chat.openai.interceptor;
 
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.http.Header;
 import cn.hutool.json.JSONUtil;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -7,9 +9,10 @@ import okhttp3.Request;
 import okhttp3.Response;
 import com.goalias.common.chat.entity.common.OpenAiResponse;
 import com.goalias.common.chat.openai.exception.CommonError;
-import com.goalias.common.core.exception.base.BaseException;
+import com.goalias.common.chat.openai.exception.OpenAiIOException;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -52,10 +55,7 @@ public class DynamicKeyOpenAiAuthInterceptor extends OpenAiAuthInterceptor {
 
     @Override
     public Response intercept(Chain chain) throws IOException {
-        String key = getKey();
-        Request original = chain.request();
-        Request request = this.auth(key, original);
-        Response response = chain.proceed(request);
+        Response response = execute(chain);
         if (!response.isSuccessful()) {
             String errorMsg = response.body().string();
             if (response.code() == CommonError.OPENAI_AUTHENTICATION_ERROR.code()
@@ -67,26 +67,36 @@ public class DynamicKeyOpenAiAuthInterceptor extends OpenAiAuthInterceptor {
                 log.error("--------> 请求异常：{}", errorMsg);
                 //账号被封或者key不正确就移除掉
                 if (ACCOUNT_DEACTIVATED.equals(errorCode) || INVALID_API_KEY.equals(errorCode)) {
-                    super.setApiKey(this.onErrorDealApiKeys(key));
+                    //重试后最终使用的key
+                    String key = bearerKey(response.request());
+                    //并发请求可能同时移除不同的key，串行替换避免互相覆盖
+                    synchronized (this) {
+                        super.setApiKey(this.onErrorDealApiKeys(key));
+                    }
                 }
-                throw new BaseException(openAiResponse.getError().getMessage());
+                throw new OpenAiIOException(openAiResponse.getError().getMessage());
             }
             //非官方定义的错误code
             log.error("--------> 请求异常：{}", errorMsg);
             OpenAiResponse openAiResponse = JSONUtil.toBean(errorMsg, OpenAiResponse.class);
             if (Objects.nonNull(openAiResponse.getError())) {
                 log.error(openAiResponse.getError().getMessage());
-                throw new BaseException(openAiResponse.getError().getMessage());
+                throw new OpenAiIOException(openAiResponse.getError().getMessage());
             }
-            throw new BaseException(CommonError.RETRY_ERROR.msg());
+            throw new OpenAiIOException(CommonError.RETRY_ERROR.msg());
         }
         return response;
     }
 
 
+    private static String bearerKey(Request request) {
+        String authorization = request.header(Header.AUTHORIZATION.getValue());
+        return authorization == null ? "" : StrUtil.removePrefix(authorization, "Bearer ");
+    }
+
     @Override
     protected List<String> onErrorDealApiKeys(String errorKey) {
-        List<String> apiKey = super.getApiKey().stream().filter(e -> !errorKey.equals(e)).collect(Collectors.toList());
+        List<String> apiKey = Collections.unmodifiableList(super.getApiKey().stream().filter(e -> !errorKey.equals(e)).collect(Collectors.toList()));
         log.error("--------> 当前ApiKey：[{}] 失效了，移除！", errorKey);
         return apiKey;
     }
@@ -6,24 +6,42 @@ import cn.hutool.http.ContentType;
 import cn.hutool.http.Header;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.Response;
+import org.jetbrains.annotations.NotNull;
 import com.goalias.common.chat.openai.exception.CommonError;
+import com.goalias.common.chat.openai.exception.OpenAiIOException;
+import com.goalias.common.chat.openai.function.KeyFeedback;
 import com.goalias.common.chat.openai.function.KeyStrategyFunction;
+import com.goalias.common.chat.openai.http.OpenAiHttpClientFactory;
 import com.goalias.common.core.exception.base.BaseException;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+@Slf4j
 public abstract class OpenAiAuthInterceptor implements Interceptor {
 
+    private static final String EVENT_STREAM = "text/event-stream";
 
     /**
-     * key 集合
+     * key 集合，整体替换不做原地修改，请求线程读取时不加锁
      */
     @Getter
     @Setter
-    private List<String> apiKey;
+    private volatile List<String> apiKey;
     /**
      * 自定义的key的使用策略
      */
@@ -31,6 +49,18 @@ public abstract class OpenAiAuthInterceptor implements Interceptor {
     @Setter
     private KeyStrategyFunction<List<String>, String> keyStrategy;
 
+    /**
+     * 重试与对冲策略，默认失败换key重试，不对冲
+     */
+    @Getter
+    @Setter
+    private RetryPolicy retryPolicy = new RetryPolicy();
+
+    /**
+     * 对冲请求使用的客户端，由attach在拦截器挂载到客户端后创建一次，未挂载时不对冲
+     */
+    private volatile OkHttpClient hedgeClient;
+
     /**
      * 预警触发参数配置，配置参数实现飞书、钉钉、企业微信、邮箱预警等功能
      */
@@ -53,6 +83,18 @@ public abstract class OpenAiAuthInterceptor implements Interceptor {
     protected abstract void noHaveActiveKeyWarring();
 
 
+    /**
+     * 绑定挂载了本拦截器的客户端：对冲请求经由其派生的客户端发出，沿用其余拦截器、连接池和超时设置，
+     * 去掉本拦截器避免再次进入重试、对冲逻辑，并使用独立的调度器，不与外层异步请求争抢并发额度
+     *
+     * @param client 挂载了本拦截器的客户端
+     */
+    public void attach(OkHttpClient client) {
+        OkHttpClient.Builder builder = client.newBuilder().dispatcher(OpenAiHttpClientFactory.hedgeDispatcher());
+        builder.interceptors().removeIf(interceptor -> interceptor == this);
+        this.hedgeClient = builder.build();
+    }
+
     /**
      * 获取请求key
      *
@@ -66,6 +108,272 @@ public abstract class OpenAiAuthInterceptor implements Interceptor {
         return keyStrategy.apply(apiKey);
     }
 
+    /**
+     * 选key鉴权后发出请求：429/5xx与网络异常在预算内换key重试，非流式请求可按策略对冲
+     * 重试只发生在拿到成功响应之前，流式响应一旦交给监听器就不会重发，不会重复计费
+     *
+     * @param chain Chain
+     * @return 成功响应，或重试耗尽后的最后一次响应
+     */
+    protected Response execute(Chain chain) throws IOException {
+        Request original = chain.request();
+        RetryPolicy policy = this.retryPolicy;
+        //okhttp-sse会为流式请求加上 Accept: text/event-stream
+        boolean stream = EVENT_STREAM.equals(original.header(Header.ACCEPT.getValue()));
+        boolean replayable = original.body() == null || !original.body().isOneShot();
+        OkHttpClient hedgeClient = this.hedgeClient;
+        boolean hedging = policy.isHedging() && hedgeClient != null && !stream && replayable;
+        policy.onRequest();
+        for (int attempt = 1; ; attempt++) {
+            boolean lastAttempt = !replayable || attempt >= policy.getMaxAttempts();
+            String key = nextKey();
+            Request request = auth(key, original);
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = hedging ? hedge(hedgeClient, chain, key, request, policy) : proceed(chain, key, request);
+            } catch (IOException e) {
+                if (lastAttempt || chain.call().isCanceled() || !policy.tryAcquireRetry()) {
+                    throw e;
+                }
+                log.warn("--------> 请求openai网络异常，第{}次重试：{}", attempt, e.getMessage());
+                sleep(policy.backoffNanos(attempt, null));
+                continue;
+            }
+            if (response.isSuccessful()) {
+                if (!stream) {
+                    policy.recordLatency(System.nanoTime() - start);
+                }
+                return response;
+            }
+            if (lastAttempt || !policy.retryable(response.code())) {
+                return response;
+            }
+            long backoff = policy.backoffNanos(attempt, response);
+            if (backoff < 0 || !policy.tryAcquireRetry()) {
+                return response;
+            }
+            log.warn("--------> 请求openai返回{}，{}ms后换key第{}次重试", response.code(), TimeUnit.NANOSECONDS.toMillis(backoff), attempt);
+            response.close();
+            sleep(backoff);
+        }
+    }
+
+    /**
+     * 发出请求，策略实现了KeyFeedback时回调本次请求的结果
+     *
+     * @param chain   Chain
+     * @param key     本次使用的api key
+     * @param request 已鉴权的请求
+     * @return 响应
+     */
+    protected Response proceed(Chain chain, String key, Request request) throws IOException {
+        KeyFeedback feedback = feedback();
+        if (feedback == null) {
+            return chain.proceed(request);
+        }
+        feedback.onStart(key);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            if (chain.call().isCanceled()) {
+                feedback.onCancel(key);
+            } else {
+                feedback.onError(key, System.nanoTime() - start);
+            }
+            throw e;
+        }
+        feedback.onResponse(key, response.code(), System.nanoTime() - start, response.headers());
+        return response;
+    }
+
+    /**
+     * 对冲请求：先发一次，超过近期p95耗时仍未返回时换key再发一次(消耗一次重试预算)，先成功者胜出，落败的请求取消
+     * 对冲期间返回的非2xx响应暂存，另一个请求仍在进行时不会胜出；两次请求都失败时返回暂存的响应或最后一个异常
+     * 两次请求都经由attach创建的客户端发出，落败请求被取消时不计入key的错误统计
+     */
+    private Response hedge(OkHttpClient client, Chain chain, String key, Request request, RetryPolicy policy) throws IOException {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos((long) chain.connectTimeoutMillis() + chain.writeTimeoutMillis() + chain.readTimeoutMillis());
+        long deadline = System.nanoTime() + timeoutNanos;
+        HedgeResult result = new HedgeResult();
+        Call primary = client.newCall(request);
+        primary.enqueue(result.callback(key, feedback()));
+        Call hedge = null;
+        Response response = null;
+        try {
+            response = result.await(timeoutNanos == 0 ? policy.hedgeDelayNanos() : Math.min(policy.hedgeDelayNanos(), timeoutNanos));
+            if (response != null) {
+                return response;
+            }
+            if (policy.tryAcquireRetry()) {
+                String hedgeKey = nextKey();
+                result.hedged();
+                hedge = client.newCall(auth(hedgeKey, chain.request()));
+                hedge.enqueue(result.callback(hedgeKey, feedback()));
+            }
+            response = result.await(timeoutNanos == 0 ? -1 : Math.max(0, deadline - System.nanoTime()));
+            if (response == null) {
+                throw new InterruptedIOException("对冲请求超时");
+            }
+            return response;
+        } finally {
+            Call winner = result.winnerCall;
+            if (primary != winner) {
+                primary.cancel();
+            }
+            if (hedge != null && hedge != winner) {
+                hedge.cancel();
+            }
+            if (response == null) {
+                //超时或中断后才到达的响应无人读取，释放连接
+                result.winner.thenAccept(Response::close);
+            }
+        }
+    }
+
+    /**
+     * 拦截器内选key，无可用key时转为IOException抛出，避免异步请求结束调度器线程
+     */
+    private String nextKey() throws OpenAiIOException {
+        try {
+            return getKey();
+        } catch (BaseException e) {
+            throw new OpenAiIOException(e);
+        }
+    }
+
+    private KeyFeedback feedback() {
+        return keyStrategy instanceof KeyFeedback ? (KeyFeedback) keyStrategy : null;
+    }
+
+    private static void sleep(long nanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("重试等待被中断");
+        }
+    }
+
+    /**
+     * 对冲请求的结果，第一个成功的响应胜出，落败的响应直接关闭
+     * 非2xx响应在另一个请求未结束时暂存；全部结束仍无成功响应时返回暂存的响应，没有则抛出最后一个异常
+     */
+    private static final class HedgeResult {
+
+        private final CompletableFuture<Response> winner = new CompletableFuture<>();
+
+        private final AtomicInteger pending = new AtomicInteger(1);
+
+        /**
+         * 胜出响应所属的请求，落败的请求由发起方取消
+         */
+        private volatile Call winnerCall;
+
+        private Response fallback;
+
+        private Call fallbackCall;
+
+        private void hedged() {
+            pending.incrementAndGet();
+        }
+
+        private Callback callback(String key, KeyFeedback feedback) {
+            if (feedback != null) {
+                feedback.onStart(key);
+            }
+            long start = System.nanoTime();
+            return new Callback() {
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    if (feedback != null) {
+                        feedback.onResponse(key, response.code(), System.nanoTime() - start, response.headers());
+                    }
+                    if (response.isSuccessful()) {
+                        pending.decrementAndGet();
+                        complete(call, response);
+                        return;
+                    }
+                    Response previous;
+                    synchronized (HedgeResult.this) {
+                        previous = fallback;
+                        fallback = response;
+                        fallbackCall = call;
+                    }
+                    if (previous != null) {
+                        previous.close();
+                    }
+                    if (pending.decrementAndGet() == 0) {
+                        completeWithFallback(null);
+                    }
+                }
+
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    if (feedback != null) {
+                        //落败请求被取消不代表key异常
+                        if (call.isCanceled()) {
+                            feedback.onCancel(key);
+                        } else {
+                            feedback.onError(key, System.nanoTime() - start);
+                        }
+                    }
+                    if (pending.decrementAndGet() == 0) {
+                        completeWithFallback(e);
+                    }
+                }
+            };
+        }
+
+        /**
+         * 先记录胜出的请求再完成，发起方拿到结果时一定能看到winnerCall
+         */
+        private void complete(Call call, Response response) {
+            synchronized (this) {
+                if (!winner.isDone()) {
+                    winnerCall = call;
+                    winner.complete(response);
+                    return;
+                }
+            }
+            response.close();
+        }
+
+        private void completeWithFallback(IOException e) {
+            Response response;
+            Call call;
+            synchronized (this) {
+                response = fallback;
+                call = fallbackCall;
+                fallback = null;
+            }
+            if (response != null) {
+                complete(call, response);
+            } else if (e != null) {
+                winner.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * @param timeoutNanos 小于0时一直等待
+         * @return 超时返回null
+         */
+        private Response await(long timeoutNanos) throws IOException {
+            try {
+                return timeoutNanos < 0 ? winner.get() : winner.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("对冲请求等待被中断");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
+        }
+    }
+
     /**
      * 默认的鉴权处理方法
      *
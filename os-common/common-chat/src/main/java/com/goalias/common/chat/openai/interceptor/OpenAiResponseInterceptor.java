@@ -7,7 +7,7 @@ import okhttp3.Request;
 import okhttp3.Response;
 import com.goalias.common.chat.entity.common.OpenAiResponse;
 import com.goalias.common.chat.openai.exception.CommonError;
-import com.goalias.common.core.exception.base.BaseException;
+import com.goalias.common.chat.openai.exception.OpenAiIOException;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -31,16 +31,16 @@ public class OpenAiResponseInterceptor implements Interceptor {
                     || response.code() == CommonError.OPENAI_SERVER_ERROR.code()) {
                 OpenAiResponse openAiResponse = JSONUtil.toBean(response.body().string(), OpenAiResponse.class);
                 log.error(openAiResponse.getError().getMessage());
-                throw new BaseException(openAiResponse.getError().getMessage());
+                throw new OpenAiIOException(openAiResponse.getError().getMessage());
             }
             String errorMsg = response.body().string();
             log.error("--------> 请求异常：{}", errorMsg);
             OpenAiResponse openAiResponse = JSONUtil.toBean(errorMsg, OpenAiResponse.class);
             if (Objects.nonNull(openAiResponse.getError())) {
                 log.error(openAiResponse.getError().getMessage());
-                throw new BaseException(openAiResponse.getError().getMessage());
+                throw new OpenAiIOException(openAiResponse.getError().getMessage());
             }
-            throw new BaseException(CommonError.RETRY_ERROR.msg());
+            throw new OpenAiIOException(CommonError.RETRY_ERROR.msg());
         }
         return response;
     }
@@ -0,0 +1,184 @@
+package com.goalias.common.chat.openai.interceptor;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import okhttp3.Response;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  请求重试与对冲策略
+ *  重试受预算限制：每个请求存入ratio个令牌，每次重试消耗1个，持续故障时重试量不超过请求量的ratio倍，避免重试风暴
+ *  对冲：非流式请求超过近期p95耗时仍未返回时，用另一个key再发一次，先返回者胜出
+ *
+ * @author goalias
+ */
+@Getter
+@Setter
+public class RetryPolicy {
+
+    private static final int TOKEN_SCALE = 100;
+
+    private static final int LATENCY_SAMPLES = 256;
+
+    /**
+     * 最大尝试次数(含第一次)，1为不重试
+     */
+    private int maxAttempts = 3;
+
+    /**
+     * 首次退避时长(毫秒)
+     */
+    private long baseBackoffMillis = 200;
+
+    /**
+     * 最长退避时长(毫秒)，Retry-After超过此值时不再重试，直接返回
+     */
+    private long maxBackoffMillis = 5000;
+
+    /**
+     * 重试预算，重试量占请求量的比例
+     */
+    private double budgetRatio = 0.2;
+
+    /**
+     * 非流式请求是否开启对冲
+     */
+    private boolean hedging = false;
+
+    /**
+     * 对冲触发的最小等待时长(毫秒)，样本不足时也使用此值
+     */
+    private long minHedgeDelayMillis = 1000;
+
+    /**
+     * 令牌数，按TOKEN_SCALE放大
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicInteger tokens = new AtomicInteger(10 * TOKEN_SCALE);
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLongArray latencies = new AtomicLongArray(LATENCY_SAMPLES);
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final AtomicLong latencyCursor = new AtomicLong();
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile long hedgeDelayNanos = -1;
+
+    /**
+     * 不重试、不对冲
+     */
+    public static RetryPolicy none() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(1);
+        return policy;
+    }
+
+    /**
+     * 是否值得重试：429、502/503/504与500
+     */
+    public boolean retryable(int code) {
+        return code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * 每个请求开始时存入令牌
+     */
+    void onRequest() {
+        int deposit = (int) (budgetRatio * TOKEN_SCALE);
+        int max = 10 * TOKEN_SCALE;
+        int prev;
+        do {
+            prev = tokens.get();
+            if (prev >= max) {
+                return;
+            }
+        } while (!tokens.compareAndSet(prev, Math.min(max, prev + deposit)));
+    }
+
+    /**
+     * 申请一次重试的令牌
+     */
+    boolean tryAcquireRetry() {
+        int prev;
+        do {
+            prev = tokens.get();
+            if (prev < TOKEN_SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(prev, prev - TOKEN_SCALE));
+        return true;
+    }
+
+    /**
+     * 第attempt次重试前的等待时长，带抖动；服务端给出Retry-After时取两者较大值
+     *
+     * @return 纳秒，-1表示等待时长超过上限，不应重试
+     */
+    long backoffNanos(int attempt, Response response) {
+        long max = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+        long backoff = Math.min(max, TimeUnit.MILLISECONDS.toNanos(baseBackoffMillis) << Math.min(attempt - 1, 16));
+        //full jitter
+        backoff = ThreadLocalRandom.current().nextLong(backoff + 1);
+        if (response != null) {
+            long retryAfter = parseRetryAfter(response.header("Retry-After"));
+            if (retryAfter > max) {
+                return -1;
+            }
+            backoff = Math.max(backoff, retryAfter);
+        }
+        return backoff;
+    }
+
+    /**
+     * 记录一次成功的非流式请求耗时
+     */
+    void recordLatency(long nanos) {
+        long cursor = latencyCursor.getAndIncrement();
+        latencies.set((int) (cursor & (LATENCY_SAMPLES - 1)), nanos);
+        //每64个样本重新计算一次p95
+        if ((cursor & 63) == 63) {
+            hedgeDelayNanos = computeP95((int) Math.min(cursor + 1, LATENCY_SAMPLES));
+        }
+    }
+
+    /**
+     * 对冲等待时长：近期p95耗时，不小于minHedgeDelayMillis
+     */
+    long hedgeDelayNanos() {
+        return Math.max(hedgeDelayNanos, TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMillis));
+    }
+
+    private long computeP95(int count) {
+        count = Math.max(1, count);
+        long[] samples = new long[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = latencies.get(i);
+        }
+        Arrays.sort(samples);
+        return samples[Math.max(0, (int) (count * 0.95) - 1)];
+    }
+
+    private static long parseRetryAfter(String value) {
+        if (StrUtil.isBlank(value)) {
+            return 0;
+        }
+        try {
+            return TimeUnit.MILLISECONDS.toNanos((long) (Double.parseDouble(value.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -9,7 +9,6 @@ import okhttp3.sse.EventSource;
 import okhttp3.sse.EventSourceListener;
 import org.jetbrains.annotations.NotNull;
 import com.goalias.common.chat.entity.chat.ChatCompletion;
-import com.goalias.common.chat.entity.chat.ChatCompletionResponse;
 import com.goalias.common.chat.entity.chat.FunctionCall;
 import com.goalias.common.chat.entity.chat.Message;
 import com.goalias.common.chat.openai.OpenAiStreamClient;
@@ -27,17 +26,21 @@ import java.util.Objects;
 @Slf4j
 public abstract class PluginListener<R extends PluginParam, T> extends EventSourceListener {
     /**
-     * openAi插件构建的参数
+     * 收集openAi插件构建的参数
      */
-    private String arguments = "";
+    private final StreamDeltaParser deltaParser = new StreamDeltaParser();
 
     /**
-     * 获取openAi插件构建的参数
+     * 获取openAi插件构建的参数，function_call为空时取第一个tool_call
      *
      * @return arguments
      */
     private String getArguments() {
-        return this.arguments;
+        String arguments = deltaParser.getFunctionArguments();
+        if (arguments.isEmpty() && !deltaParser.getToolCalls().isEmpty()) {
+            return deltaParser.getToolCalls().get(0).getFunction().getArguments();
+        }
+        return arguments;
     }
 
     private OpenAiStreamClient client;
@@ -89,10 +92,7 @@ public abstract class PluginListener<R extends PluginParam, T> extends EventSour
             log.debug("插件开发返回信息收集sse监听器返回数据结束了");
             return;
         }
-        ChatCompletionResponse chatCompletionResponse = JSONUtil.toBean(data, ChatCompletionResponse.class);
-        if (Objects.nonNull(chatCompletionResponse.getChoices().get(0).getDelta().getFunctionCall())) {
-            this.arguments += chatCompletionResponse.getChoices().get(0).getDelta().getFunctionCall().getArguments();
-        }
+        deltaParser.append(data);
     }
 
     @Override
@@ -0,0 +1,313 @@
+package com.goalias.common.chat.sse;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Response;
+import okhttp3.sse.EventSource;
+import okhttp3.sse.EventSourceListener;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *   将OpenAi的sse事件转发到浏览器的SseEmitter
+ *   上游事件先进入每个连接独立的有界缓冲区，按时间间隔或累计字节数合并为一次写出，
+ *   OkHttp读取线程不直接写浏览器连接；缓冲区满时读取线程等待(对上游形成TCP背压)，等待超时则放弃该连接。
+ *   浏览器断开、超时或写出失败时立即取消上游请求，不再为无人接收的token付费
+ *   定时线程只负责触发，写出在写线程池中按连接串行执行，慢连接的阻塞写不会拖住其他连接的定时刷新
+ *   注意：构造时会注册emitter的onCompletion/onTimeout/onError回调，覆盖调用方此前注册的回调，
+ *   连接结束时的清理逻辑请通过{@link #onClose(Runnable)}注册
+ *
+ * @author goalias
+ */
+@Slf4j
+public class SseRelayListener extends EventSourceListener {
+
+    /**
+     * 只负责定时触发写出，不执行阻塞的写操作
+     */
+    private static final ScheduledExecutorService FLUSHER = Executors.newSingleThreadScheduledExecutor(
+        ThreadFactoryBuilder.create().setNamePrefix("openai-sse-timer-").setDaemon(true).build());
+
+    /**
+     * 执行写出，同一连接同时最多占用一个线程
+     */
+    private static final ExecutorService WRITER = Executors.newCachedThreadPool(
+        ThreadFactoryBuilder.create().setNamePrefix("openai-sse-relay-").setDaemon(true).build());
+
+    private static final AtomicInteger OPEN_STREAMS = new AtomicInteger();
+
+    private static final AtomicLong BUFFERED_EVENTS = new AtomicLong();
+
+    private final SseEmitter emitter;
+
+    private final BlockingQueue<String> buffer;
+
+    private final int flushBytes;
+
+    private final long maxBlockMillis;
+
+    private final ScheduledFuture<?> flushTask;
+
+    /**
+     * 缓冲区中待写出的字节数(按字符计)
+     */
+    private final AtomicInteger pendingBytes = new AtomicInteger();
+
+    /**
+     * 写任务已提交或正在执行
+     */
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private final List<Runnable> closeCallbacks = new CopyOnWriteArrayList<>();
+
+    private volatile EventSource eventSource;
+
+    private volatile boolean upstreamDone;
+
+    private volatile Throwable upstreamError;
+
+    /**
+     * 默认：缓冲256个事件，每50ms或累计4KB写出一次，缓冲区满时最多等待5秒
+     */
+    public SseRelayListener(SseEmitter emitter) {
+        this(emitter, 256, 50, 4096, 5000);
+    }
+
+    /**
+     * @param emitter         浏览器连接
+     * @param capacity        缓冲的最大事件数
+     * @param flushIntervalMs 合并写出的时间间隔
+     * @param flushBytes      累计达到此字节数时立即写出
+     * @param maxBlockMillis  缓冲区满时上游读取线程的最长等待时间
+     */
+    public SseRelayListener(SseEmitter emitter, int capacity, long flushIntervalMs, int flushBytes, long maxBlockMillis) {
+        this.emitter = emitter;
+        this.buffer = new ArrayBlockingQueue<>(capacity);
+        this.flushBytes = flushBytes;
+        this.maxBlockMillis = maxBlockMillis;
+        this.flushTask = FLUSHER.scheduleWithFixedDelay(this::scheduleFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        emitter.onCompletion(() -> close("浏览器连接已完成"));
+        emitter.onTimeout(() -> close("浏览器连接超时"));
+        emitter.onError(e -> close("浏览器连接异常"));
+        OPEN_STREAMS.incrementAndGet();
+    }
+
+    /**
+     * 注册连接结束(浏览器断开、超时、写出失败或上游结束)时的回调，只执行一次；
+     * 替代被本类覆盖的emitter回调
+     */
+    public SseRelayListener onClose(Runnable callback) {
+        closeCallbacks.add(callback);
+        //注册前已结束
+        if (closed.get() && closeCallbacks.remove(callback)) {
+            callback.run();
+        }
+        return this;
+    }
+
+    /**
+     * 当前转发中的连接数
+     */
+    public static int openStreams() {
+        return OPEN_STREAMS.get();
+    }
+
+    /**
+     * 所有连接缓冲区中尚未写出的事件数
+     */
+    public static long bufferedEvents() {
+        return BUFFERED_EVENTS.get();
+    }
+
+    @Override
+    public void onOpen(@NotNull EventSource eventSource, @NotNull Response response) {
+        this.eventSource = eventSource;
+        //请求发出前浏览器已断开
+        if (closed.get()) {
+            eventSource.cancel();
+        }
+    }
+
+    @Override
+    public void onEvent(@NotNull EventSource eventSource, String id, String type, @NotNull String data) {
+        this.eventSource = eventSource;
+        if (closed.get()) {
+            eventSource.cancel();
+            return;
+        }
+        //先计数再入队，事件被写线程或release取出时才会扣减，计数不会为负
+        BUFFERED_EVENTS.incrementAndGet();
+        try {
+            if (!buffer.offer(data, maxBlockMillis, TimeUnit.MILLISECONDS)) {
+                BUFFERED_EVENTS.decrementAndGet();
+                log.warn("sse转发缓冲区已满{}ms，浏览器接收过慢，断开连接", maxBlockMillis);
+                close("缓冲区已满");
+                emitter.completeWithError(new IOException("sse relay buffer overflow"));
+                return;
+            }
+        } catch (InterruptedException e) {
+            BUFFERED_EVENTS.decrementAndGet();
+            Thread.currentThread().interrupt();
+            close("上游读取线程被中断");
+            return;
+        }
+        //入队期间连接已关闭，release可能已清空缓冲区，自行取回本事件并撤销计数
+        if (closed.get()) {
+            if (buffer.remove(data)) {
+                BUFFERED_EVENTS.decrementAndGet();
+            }
+            eventSource.cancel();
+            return;
+        }
+        if (pendingBytes.addAndGet(data.length()) >= flushBytes) {
+            scheduleFlush();
+        }
+    }
+
+    @Override
+    public void onClosed(@NotNull EventSource eventSource) {
+        upstreamDone = true;
+        scheduleFlush();
+    }
+
+    @Override
+    public void onFailure(@NotNull EventSource eventSource, Throwable t, Response response) {
+        //浏览器断开后主动取消上游导致的失败
+        if (closed.get()) {
+            return;
+        }
+        log.error("OpenAI sse连接异常，response：{}", response, t);
+        upstreamError = t != null ? t : new IOException("sse upstream failure: " + response);
+        upstreamDone = true;
+        scheduleFlush();
+    }
+
+    /**
+     * 提交一次写出，已有写任务未完成时不重复提交
+     */
+    private void scheduleFlush() {
+        if (closed.get() || !writeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            WRITER.execute(this::flush);
+        } catch (RuntimeException e) {
+            writeScheduled.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * 将缓冲区中的事件合并为一次写出，只在写线程中执行
+     */
+    private void flush() {
+        try {
+            if (closed.get()) {
+                return;
+            }
+            boolean done = upstreamDone;
+            StringBuilder frame = null;
+            String data;
+            while ((data = buffer.poll()) != null) {
+                BUFFERED_EVENTS.decrementAndGet();
+                pendingBytes.addAndGet(-data.length());
+                if (frame == null) {
+                    frame = new StringBuilder(Math.max(256, data.length() + 16));
+                }
+                appendEvent(frame, data);
+            }
+            if (frame != null) {
+                //已按sse格式拼好，原样写出并flush
+                emitter.send(Collections.singleton(new ResponseBodyEmitter.DataWithMediaType(frame.toString(), MediaType.TEXT_PLAIN)));
+            }
+            if (done && buffer.isEmpty()) {
+                release();
+                if (upstreamError != null) {
+                    emitter.completeWithError(upstreamError);
+                } else {
+                    emitter.complete();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            //浏览器已断开
+            log.debug("sse转发写出失败：{}", e.getMessage());
+            close("写出失败");
+        } finally {
+            writeScheduled.set(false);
+        }
+        //写出期间又积累了足够数据或上游已结束
+        if (!closed.get() && (upstreamDone || pendingBytes.get() >= flushBytes)) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 按sse格式追加一个事件，多行数据拆为多个data行
+     */
+    private static void appendEvent(StringBuilder frame, String data) {
+        int start = 0;
+        int newline;
+        while ((newline = data.indexOf('\n', start)) >= 0) {
+            frame.append("data:").append(data, start, newline).append('\n');
+            start = newline + 1;
+        }
+        frame.append("data:").append(data, start, data.length()).append("\n\n");
+    }
+
+    /**
+     * 浏览器侧结束：取消上游并释放缓冲
+     */
+    private void close(String reason) {
+        if (!release()) {
+            return;
+        }
+        EventSource upstream = this.eventSource;
+        if (upstream != null && !upstreamDone) {
+            log.debug("{}，取消OpenAI sse请求", reason);
+            upstream.cancel();
+        }
+    }
+
+    private boolean release() {
+        if (!closed.compareAndSet(false, true)) {
+            return false;
+        }
+        flushTask.cancel(false);
+        //逐个取出计数，与onEvent中的取回互斥，每个事件只扣减一次
+        int dropped = 0;
+        while (buffer.poll() != null) {
+            dropped++;
+        }
+        BUFFERED_EVENTS.addAndGet(-dropped);
+        OPEN_STREAMS.decrementAndGet();
+        for (Runnable callback : closeCallbacks) {
+            if (closeCallbacks.remove(callback)) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    log.warn("sse连接关闭回调执行失败", e);
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,263 @@
+package com.goalias.common.chat.sse;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.goalias.common.chat.entity.chat.tool.ToolCallFunction;
+import com.goalias.common.chat.entity.chat.tool.ToolCalls;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *   流式返回增量解析
+ *   逐个token读取 choices[0].delta 中需要的字段并直接追加到缓冲区，不构建响应对象
+ *   非线程安全，一次sse请求对应一个实例
+ *
+ * @author goalias
+ */
+public class StreamDeltaParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 单次回复中工具调用数的上限，index由上游返回，超出时按格式错误处理，防止异常index撑大列表
+     */
+    private static final int MAX_TOOL_CALLS = 64;
+
+    private final StringBuilder content = new StringBuilder();
+
+    private final StringBuilder reasoningContent = new StringBuilder();
+
+    private final StringBuilder functionName = new StringBuilder();
+
+    private final StringBuilder functionArguments = new StringBuilder();
+
+    /**
+     * 按tool_calls[].index存放
+     */
+    private final List<ToolCallBuffer> toolCalls = new ArrayList<>(2);
+
+    /**
+     * 上游返回的结束原因，只在最后一个数据块中出现
+     */
+    private String finishReason;
+
+    /**
+     * 解析一个sse数据块
+     *
+     * @param data 一次事件的data
+     */
+    public void append(String data) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("choices".equals(field) && token == JsonToken.START_ARRAY) {
+                    readChoices(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    public String getContent() {
+        return content.toString();
+    }
+
+    public String getReasoningContent() {
+        return reasoningContent.toString();
+    }
+
+    public String getFunctionName() {
+        return functionName.toString();
+    }
+
+    public String getFunctionArguments() {
+        return functionArguments.toString();
+    }
+
+    /**
+     * choices[0].finish_reason，尚未收到时为null
+     */
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    /**
+     * 已收集的工具调用，按index排序
+     */
+    public List<ToolCalls> getToolCalls() {
+        if (toolCalls.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ToolCalls> result = new ArrayList<>(toolCalls.size());
+        for (ToolCallBuffer buffer : toolCalls) {
+            if (buffer != null) {
+                result.add(buffer.build());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 与原实现一致只取第一个choice
+     */
+    private void readChoices(JsonParser parser) throws IOException {
+        boolean first = true;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (first && token == JsonToken.START_OBJECT) {
+                readChoice(parser);
+            } else {
+                parser.skipChildren();
+            }
+            first = false;
+        }
+    }
+
+    private void readChoice(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("delta".equals(field) && token == JsonToken.START_OBJECT) {
+                readDelta(parser);
+            } else if ("finish_reason".equals(field) && token == JsonToken.VALUE_STRING) {
+                finishReason = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readDelta(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field)) {
+                appendText(parser, token, content);
+            } else if ("reasoning_content".equals(field)) {
+                appendText(parser, token, reasoningContent);
+            } else if ("function_call".equals(field) && token == JsonToken.START_OBJECT) {
+                readFunction(parser, functionName, functionArguments);
+            } else if ("tool_calls".equals(field) && token == JsonToken.START_ARRAY) {
+                readToolCalls(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private void readToolCalls(JsonParser parser) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            //OpenAi协议中index总在最前；缺失时视为继续上一个调用
+            ToolCallBuffer buffer = toolCalls.isEmpty() ? null : toolCalls.get(toolCalls.size() - 1);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                token = parser.nextToken();
+                if ("index".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                    buffer = toolCall(parser);
+                    continue;
+                }
+                if (buffer == null) {
+                    buffer = toolCall(0);
+                }
+                //id与type只在调用的第一个数据块中完整出现，后续块为空或重复，取最后一个非空值
+                if ("id".equals(field)) {
+                    buffer.id = replaceText(parser, token, buffer.id);
+                } else if ("type".equals(field)) {
+                    buffer.type = replaceText(parser, token, buffer.type);
+                } else if ("function".equals(field) && token == JsonToken.START_OBJECT) {
+                    readFunction(parser, buffer.name, buffer.arguments);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static void readFunction(JsonParser parser, StringBuilder name, StringBuilder arguments) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("name".equals(field)) {
+                appendText(parser, token, name);
+            } else if ("arguments".equals(field)) {
+                appendText(parser, token, arguments);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * 直接从解析器的字符缓冲区追加，不创建中间String
+     */
+    private static void appendText(JsonParser parser, JsonToken token, StringBuilder target) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            target.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    private static String replaceText(JsonParser parser, JsonToken token, String current) throws IOException {
+        if (token == JsonToken.VALUE_STRING) {
+            String text = parser.getText();
+            return text.isEmpty() ? current : text;
+        }
+        parser.skipChildren();
+        return current;
+    }
+
+    private ToolCallBuffer toolCall(JsonParser parser) throws IOException {
+        int index = parser.getIntValue();
+        if (index < 0 || index >= MAX_TOOL_CALLS) {
+            throw new JsonParseException(parser, "tool_calls index out of range: " + index);
+        }
+        return toolCall(index);
+    }
+
+    private ToolCallBuffer toolCall(int index) {
+        while (toolCalls.size() <= index) {
+            toolCalls.add(null);
+        }
+        ToolCallBuffer buffer = toolCalls.get(index);
+        if (buffer == null) {
+            buffer = new ToolCallBuffer();
+            toolCalls.set(index, buffer);
+        }
+        return buffer;
+    }
+
+    private static final class ToolCallBuffer {
+
+        private String id = "";
+
+        private String type = "";
+
+        private final StringBuilder name = new StringBuilder();
+
+        private final StringBuilder arguments = new StringBuilder();
+
+        private ToolCalls build() {
+            return ToolCalls.builder()
+                .id(id)
+                .type(type.isEmpty() ? ToolCalls.Type.FUNCTION.getName() : type)
+                .function(ToolCallFunction.builder().name(name.toString()).arguments(arguments.toString()).build())
+                .build();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.goalias.common.chat.token;
+
+import com.goalias.common.chat.entity.chat.Content;
+import com.goalias.common.chat.entity.chat.FunctionCall;
+import com.goalias.common.chat.entity.chat.Message;
+import com.goalias.common.chat.entity.chat.tool.ToolCalls;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+/**
+ *  本地BPE分词计数，与tiktoken的cl100k/o200k结果一致
+ *  计数路径不创建String与token对象：预分词片段直接编码到线程本地的字节缓冲区，在词表哈希表中按字节区间查找rank
+ *  classpath中没有词表文件时退化为估算(ASCII约4个字符一个token，非ASCII字符每个码点一个token，偏向高估)，并打印一次告警
+ *
+ * @author goalias
+ */
+@Slf4j
+public class BpeTokenizer {
+
+    private static final Map<TokenEncoding, BpeTokenizer> TOKENIZERS = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private static final int MAX_RANK = Integer.MAX_VALUE;
+
+    /**
+     * 每条消息的格式开销(<|start|>role\n ... <|end|>)
+     */
+    private static final int TOKENS_PER_MESSAGE = 3;
+
+    /**
+     * 回复开头<|start|>assistant<|message|>的开销
+     */
+    private static final int TOKENS_PER_REPLY = 3;
+
+    private final TokenEncoding encoding;
+
+    /**
+     * 词表，为null时按字符估算
+     */
+    private final RankTable ranks;
+
+    private BpeTokenizer(TokenEncoding encoding, RankTable ranks) {
+        this.encoding = encoding;
+        this.ranks = ranks;
+    }
+
+    public static BpeTokenizer of(TokenEncoding encoding) {
+        return TOKENIZERS.computeIfAbsent(encoding, BpeTokenizer::load);
+    }
+
+    public static BpeTokenizer forModel(String model) {
+        return of(TokenEncoding.forModel(model));
+    }
+
+    /**
+     * 是否加载了词表，false时计数结果为估算值
+     */
+    public boolean isExact() {
+        return ranks != null;
+    }
+
+    public TokenEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 计算文本的token数
+     */
+    public int count(CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return 0;
+        }
+        Buffers buffers = BUFFERS.get();
+        Matcher matcher = encoding.getPattern().matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            if (ranks == null) {
+                count += estimatePiece(text, matcher.start(), matcher.end());
+            } else {
+                count += countPiece(buffers, buffers.encode(text, matcher.start(), matcher.end()));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 计算一组消息作为请求时占用的token数，算法同OpenAI cookbook
+     */
+    public int countMessages(List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        int count = TOKENS_PER_REPLY;
+        for (Message message : messages) {
+            count += countMessage(message);
+        }
+        return count;
+    }
+
+    /**
+     * 计算单条消息的token数(含格式开销，不含回复开销)
+     */
+    public int countMessage(Message message) {
+        if (message == null) {
+            return 0;
+        }
+        int count = TOKENS_PER_MESSAGE + count(message.getRole());
+        if (message.getName() != null) {
+            count += count(message.getName()) + 1;
+        }
+        Object content = message.getContent();
+        if (content instanceof CharSequence) {
+            count += count((CharSequence) content);
+        } else if (content instanceof List) {
+            for (Object part : (List<?>) content) {
+                if (part instanceof Content) {
+                    count += count(((Content) part).getText());
+                }
+            }
+        }
+        FunctionCall functionCall = message.getFunctionCall();
+        if (functionCall != null) {
+            count += count(functionCall.getName()) + count(functionCall.getArguments());
+        }
+        List<ToolCalls> toolCalls = message.getToolCalls();
+        if (toolCalls != null) {
+            for (ToolCalls toolCall : toolCalls) {
+                if (toolCall.getFunction() != null) {
+                    count += count(toolCall.getFunction().getName()) + count(toolCall.getFunction().getArguments());
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 没有词表时估算一个预分词片段的token数，宁多勿少：ASCII约4个字符一个token，
+     * 非ASCII字符每个码点计一个token(cl100k/o200k中常用汉字多为1个token，生僻字会拆为多个字节token)
+     */
+    private static int estimatePiece(CharSequence text, int start, int end) {
+        int ascii = 0;
+        int others = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (!Character.isLowSurrogate(c)) {
+                others++;
+            }
+        }
+        return (ascii + 3) / 4 + others;
+    }
+
+    /**
+     * 对一个预分词片段做BPE合并，返回合并后的token数，同tiktoken的byte_pair_merge
+     */
+    private int countPiece(Buffers buffers, int length) {
+        byte[] bytes = buffers.bytes;
+        if (length == 1 || ranks.get(bytes, 0, length) >= 0) {
+            return 1;
+        }
+        //parts[i]为第i段的起始位置，rank[i]为第i段与第i+1段合并后的rank
+        int size = length + 1;
+        int[] parts = buffers.parts(size);
+        int[] rank = buffers.ranks(size);
+        for (int i = 0; i < size; i++) {
+            parts[i] = i;
+        }
+        for (int i = 0; i < size; i++) {
+            rank[i] = i + 2 < size ? rankOf(bytes, parts[i], parts[i + 2]) : MAX_RANK;
+        }
+        while (size > 1) {
+            int min = MAX_RANK;
+            int minIndex = -1;
+            for (int i = 0; i < size - 1; i++) {
+                if (rank[i] < min) {
+                    min = rank[i];
+                    minIndex = i;
+                }
+            }
+            if (minIndex < 0) {
+                break;
+            }
+            if (minIndex > 0) {
+                rank[minIndex - 1] = minIndex + 2 < size ? rankOf(bytes, parts[minIndex - 1], parts[minIndex + 2]) : MAX_RANK;
+            }
+            rank[minIndex] = minIndex + 3 < size ? rankOf(bytes, parts[minIndex], parts[minIndex + 3]) : MAX_RANK;
+            System.arraycopy(parts, minIndex + 2, parts, minIndex + 1, size - minIndex - 2);
+            System.arraycopy(rank, minIndex + 2, rank, minIndex + 1, size - minIndex - 2);
+            size--;
+        }
+        return size - 1;
+    }
+
+    private int rankOf(byte[] bytes, int from, int to) {
+        int rank = ranks.get(bytes, from, to - from);
+        return rank < 0 ? MAX_RANK : rank;
+    }
+
+    private static BpeTokenizer load(TokenEncoding encoding) {
+        ClassLoader classLoader = BpeTokenizer.class.getClassLoader();
+        try (InputStream in = classLoader.getResourceAsStream(encoding.getResource())) {
+            if (in == null) {
+                log.warn("classpath中没有词表文件[{}]，token数按字符估算", encoding.getResource());
+                return new BpeTokenizer(encoding, null);
+            }
+            long start = System.currentTimeMillis();
+            RankTable table = RankTable.read(in);
+            log.info("加载词表[{}]，token数：{}，耗时：{}ms", encoding.getResource(), table.size, System.currentTimeMillis() - start);
+            return new BpeTokenizer(encoding, table);
+        } catch (IOException | RuntimeException e) {
+            log.warn("词表文件[{}]加载失败，token数按字符估算：{}", encoding.getResource(), e.getMessage());
+            return new BpeTokenizer(encoding, null);
+        }
+    }
+
+    /**
+     * 线程本地的编码与合并缓冲区
+     */
+    private static final class Buffers {
+
+        private byte[] bytes = new byte[256];
+
+        private int[] parts = new int[257];
+
+        private int[] ranks = new int[257];
+
+        /**
+         * 将text[start, end)按UTF-8编码到bytes，返回字节数
+         */
+        private int encode(CharSequence text, int start, int end) {
+            int required = (end - start) * 3;
+            if (bytes.length < required) {
+                bytes = new byte[Math.max(required, bytes.length * 2)];
+            }
+            byte[] out = bytes;
+            int n = 0;
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    out[n++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[n++] = (byte) (0xC0 | (c >> 6));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    out[n++] = (byte) (0xF0 | (cp >> 18));
+                    out[n++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    out[n++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    //孤立的代理字符按'?'编码，与String.getBytes一致
+                    out[n++] = (byte) '?';
+                } else {
+                    out[n++] = (byte) (0xE0 | (c >> 12));
+                    out[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    out[n++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return n;
+        }
+
+        private int[] parts(int size) {
+            if (parts.length < size) {
+                parts = new int[size * 2];
+            }
+            return parts;
+        }
+
+        private int[] ranks(int size) {
+            if (ranks.length < size) {
+                ranks = new int[size * 2];
+            }
+            return ranks;
+        }
+    }
+
+    /**
+     * token字节序列到rank的开放寻址哈希表，所有token的字节连续存放，查找时直接比较字节区间
+     */
+    private static final class RankTable {
+
+        private byte[] arena = new byte[1 << 20];
+
+        private int arenaSize;
+
+        private int[] offsets = new int[1 << 17];
+
+        private int[] lengths = new int[1 << 17];
+
+        private int[] rankOf = new int[1 << 17];
+
+        private int size;
+
+        /**
+         * 槽位存放token下标+1，0为空
+         */
+        private int[] slots;
+
+        private int mask;
+
+        private static RankTable read(InputStream in) throws IOException {
+            RankTable table = new RankTable();
+            Base64.Decoder decoder = Base64.getDecoder();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] token = decoder.decode(line.substring(0, space));
+                table.add(token, Integer.parseInt(line.substring(space + 1).trim()));
+            }
+            table.index();
+            return table;
+        }
+
+        private void add(byte[] token, int rank) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                rankOf = Arrays.copyOf(rankOf, size * 2);
+            }
+            if (arenaSize + token.length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + token.length));
+            }
+            System.arraycopy(token, 0, arena, arenaSize, token.length);
+            offsets[size] = arenaSize;
+            lengths[size] = token.length;
+            rankOf[size] = rank;
+            arenaSize += token.length;
+            size++;
+        }
+
+        private void index() {
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2) << 1;
+            slots = new int[capacity];
+            mask = capacity - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(arena, offsets[i], lengths[i]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i + 1;
+            }
+        }
+
+        /**
+         * @return rank，不存在时返回-1
+         */
+        private int get(byte[] bytes, int from, int length) {
+            int slot = hash(bytes, from, length) & mask;
+            int entry;
+            while ((entry = slots[slot]) != 0) {
+                int index = entry - 1;
+                if (lengths[index] == length && equals(bytes, from, offsets[index], length)) {
+                    return rankOf[index];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private boolean equals(byte[] bytes, int from, int offset, int length) {
+            for (int i = 0; i < length; i++) {
+                if (bytes[from + i] != arena[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int hash(byte[] bytes, int from, int length) {
+            int h = 0x811C9DC5;
+            for (int i = from, end = from + length; i < end; i++) {
+                h = (h ^ bytes[i]) * 0x01000193;
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
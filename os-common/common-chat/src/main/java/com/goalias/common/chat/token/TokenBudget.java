@@ -0,0 +1,138 @@
+package com.goalias.common.chat.token;
+
+import com.goalias.common.chat.entity.chat.BaseMessage;
+import com.goalias.common.chat.entity.chat.Message;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ *  对话历史的token预算
+ *  保留开头的system消息和最近N轮对话，超出预算时从最早的对话开始丢弃；
+ *  设置了summarizer时，被丢弃的中间部分替换为一条摘要消息，摘要的token数同样计入预算
+ *
+ * @author goalias
+ */
+@Slf4j
+@Getter
+public class TokenBudget {
+
+    /**
+     * 请求消息的token上限(不含回复)
+     */
+    private final int maxTokens;
+
+    /**
+     * 最多保留的对话轮数，一轮为一问一答
+     */
+    private final int keepLastTurns;
+
+    /**
+     * 被丢弃消息的摘要生成器，为null时直接丢弃
+     */
+    private final Function<List<Message>, Message> summarizer;
+
+    public TokenBudget(int maxTokens, int keepLastTurns) {
+        this(maxTokens, keepLastTurns, null);
+    }
+
+    public TokenBudget(int maxTokens, int keepLastTurns, Function<List<Message>, Message> summarizer) {
+        if (maxTokens <= 0 || keepLastTurns <= 0) {
+            throw new IllegalArgumentException("maxTokens和keepLastTurns必须大于0");
+        }
+        this.maxTokens = maxTokens;
+        this.keepLastTurns = keepLastTurns;
+        this.summarizer = summarizer;
+    }
+
+    /**
+     * 按预算裁剪消息，不修改传入的列表；未超出预算时原样返回
+     *
+     * @param model    模型，决定分词编码
+     * @param messages 消息
+     * @return 裁剪后的消息
+     */
+    public List<Message> trim(String model, List<Message> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return messages;
+        }
+        BpeTokenizer tokenizer = BpeTokenizer.forModel(model);
+        int size = messages.size();
+        int[] tokens = new int[size];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            tokens[i] = tokenizer.countMessage(messages.get(i));
+            total += tokens[i];
+        }
+        int maxMessages = keepLastTurns * 2;
+        int head = 0;
+        int used = 3;
+        while (head < size - 1 && isSystem(messages.get(head))) {
+            used += tokens[head];
+            head++;
+        }
+        if (total + 3 <= maxTokens && size - head <= maxMessages) {
+            return messages;
+        }
+        //从最后一条往前保留，最后一条(当前提问)始终保留
+        int tail = size - 1;
+        used += tokens[tail];
+        while (tail > head && size - tail < maxMessages && used + tokens[tail - 1] <= maxTokens) {
+            tail--;
+            used += tokens[tail];
+        }
+        //不以孤立的函数/工具结果开头
+        while (tail < size - 1 && isToolResult(messages.get(tail))) {
+            used -= tokens[tail];
+            tail++;
+        }
+        Message summary = null;
+        int summaryTokens = 0;
+        if (summarizer != null && tail > head) {
+            summary = summarizer.apply(messages.subList(head, tail));
+            //摘要同样计入预算，放不下时继续丢弃最早的消息并重新生成摘要，只剩当前提问仍放不下时不加摘要
+            while (summary != null) {
+                summaryTokens = tokenizer.countMessage(summary);
+                if (used + summaryTokens <= maxTokens) {
+                    break;
+                }
+                if (tail == size - 1) {
+                    summary = null;
+                    summaryTokens = 0;
+                    break;
+                }
+                while (tail < size - 1 && used + summaryTokens > maxTokens) {
+                    used -= tokens[tail];
+                    tail++;
+                }
+                while (tail < size - 1 && isToolResult(messages.get(tail))) {
+                    used -= tokens[tail];
+                    tail++;
+                }
+                summary = summarizer.apply(messages.subList(head, tail));
+            }
+        }
+        List<Message> trimmed = new ArrayList<>(head + size - tail + 1);
+        trimmed.addAll(messages.subList(0, head));
+        if (summary != null) {
+            trimmed.add(summary);
+        }
+        trimmed.addAll(messages.subList(tail, size));
+        if (log.isDebugEnabled()) {
+            log.debug("对话历史超出预算[{}]，消息数：{} -> {}，token数：{} -> {}", maxTokens, size, trimmed.size(), total + 3, used + summaryTokens);
+        }
+        return trimmed;
+    }
+
+    private static boolean isSystem(Message message) {
+        return BaseMessage.Role.SYSTEM.getName().equals(message.getRole());
+    }
+
+    private static boolean isToolResult(Message message) {
+        return BaseMessage.Role.TOOL.getName().equals(message.getRole())
+            || BaseMessage.Role.FUNCTION.getName().equals(message.getRole());
+    }
+}
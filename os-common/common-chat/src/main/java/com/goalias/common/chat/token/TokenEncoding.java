@@ -0,0 +1,58 @@
+package com.goalias.common.chat.token;
+
+import lombok.Getter;
+
+import java.util.regex.Pattern;
+
+/**
+ *  BPE编码方式，词表文件为tiktoken格式(每行: base64编码的token 空格 rank)，从classpath加载
+ *
+ * @author goalias
+ */
+@Getter
+public enum TokenEncoding {
+
+    /**
+     * gpt-3.5 / gpt-4 / text-embedding-3
+     */
+    CL100K_BASE("tiktoken/cl100k_base.tiktoken",
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+"),
+
+    /**
+     * gpt-4o / o1 / o3
+     */
+    O200K_BASE("tiktoken/o200k_base.tiktoken",
+        "[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]*[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]+(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+            + "|[^\\r\\n\\p{L}\\p{N}]?[\\p{Lu}\\p{Lt}\\p{Lm}\\p{Lo}\\p{M}]+[\\p{Ll}\\p{Lm}\\p{Lo}\\p{M}]*(?i:'s|'t|'re|'ve|'m|'ll|'d)?"
+            + "|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n/]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+"),
+    ;
+
+    /**
+     * classpath中的词表文件
+     */
+    private final String resource;
+
+    /**
+     * 预分词正则
+     */
+    private final Pattern pattern;
+
+    TokenEncoding(String resource, String regex) {
+        this.resource = resource;
+        this.pattern = Pattern.compile(regex, Pattern.UNICODE_CHARACTER_CLASS);
+    }
+
+    /**
+     * 按模型名选择编码，未知模型使用cl100k
+     */
+    public static TokenEncoding forModel(String model) {
+        if (model != null) {
+            String name = model.toLowerCase();
+            if (name.startsWith("gpt-4o") || name.startsWith("o1") || name.startsWith("o3") || name.startsWith("o4")
+                || name.startsWith("gpt-4.1") || name.startsWith("gpt-5")) {
+                return O200K_BASE;
+            }
+        }
+        return CL100K_BASE;
+    }
+}
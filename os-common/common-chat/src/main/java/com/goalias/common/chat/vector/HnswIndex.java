@@ -0,0 +1,1124 @@
+package com.goalias.common.chat.vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ *  HNSW近似最近邻索引，相似度为余弦(向量写入与查询时都归一化，计算点积)
+ *  向量按节点顺序存放在内存映射文件中，不占用堆内存；图结构与id在堆上，通过snapshot落盘，启动时从目录恢复
+ *  删除为标记删除，被删除的节点仍参与图的遍历但不会出现在结果中；
+ *  snapshot时已删除节点超过1/4则先压缩：在锁外用存活向量构建新的向量文件与图并追赶构建期间的写入，只在切换时短暂持有写锁，
+ *  新快照替换成功后才删除旧文件
+ *  查询路径只使用原始类型数组与线程本地缓冲区；按kid过滤且该知识库向量较少时直接精确计算
+ *  写入串行，查询可并发；压缩只在切换时短暂阻塞查询
+ *
+ * @author goalias
+ */
+public class HnswIndex implements Closeable {
+
+    private static final int MAGIC = 0x484E5357;
+
+    /**
+     * 1：id为writeUTF，向量文件固定为VECTOR_FILE；2：id为长度前缀的UTF-8字节，快照中记录向量文件名
+     */
+    private static final int VERSION = 2;
+
+    private static final String VECTOR_FILE = "vectors.bin";
+
+    /**
+     * 已删除节点占比超过该值时，snapshot前先压缩
+     */
+    private static final double COMPACT_RATIO = 0.25;
+
+    private static final String GRAPH_FILE = "graph.bin";
+
+    /**
+     * 压缩时在锁外追赶写入的最多轮数，剩余不超过CATCH_UP_BATCH条新写入时提前结束，其余在阻塞写入时同步
+     */
+    private static final int CATCH_UP_ROUNDS = 8;
+
+    private static final int CATCH_UP_BATCH = 256;
+
+    /**
+     * 单个映射段的大小上限
+     */
+    private static final long SEGMENT_BYTES = 1L << 28;
+
+    private final Path directory;
+
+    private final int dimension;
+
+    private final int m;
+
+    private final int maxM0;
+
+    private final int efConstruction;
+
+    private final double levelFactor;
+
+    private final int nodesPerSegment;
+
+    /**
+     * 当前使用的向量文件名，压缩后切换为新文件
+     */
+    private String vectorFile;
+
+    private FileChannel channel;
+
+    private List<MappedByteBuffer> mapped = new ArrayList<>();
+
+    private volatile FloatBuffer[] segments = new FloatBuffer[0];
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 写入互斥，先于写锁获取；压缩同步最后一批写入时持有，只阻塞写入不阻塞查询
+     */
+    private final ReentrantLock writer = new ReentrantLock();
+
+    private final ThreadLocal<SearchContext> contexts = ThreadLocal.withInitial(SearchContext::new);
+
+    /**
+     * 已分配的节点数(含已删除)
+     */
+    private int size;
+
+    private String[] ids = new String[1024];
+
+    private String[] kids = new String[1024];
+
+    /**
+     * links[node][level] = [邻居数, 邻居...]
+     */
+    private int[][][] links = new int[1024][][];
+
+    private BitSet deleted = new BitSet();
+
+    private Map<String, Integer> nodeById = new HashMap<>();
+
+    private Map<String, BitSet> nodesByKid = new HashMap<>();
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    /**
+     * 压缩后待删除的旧向量文件，快照不再引用后删除；只在synchronized方法中访问
+     */
+    private final List<String> obsoleteFiles = new ArrayList<>();
+
+    /**
+     * @param directory      存放目录，存在快照时从快照恢复
+     * @param dimension      向量维度
+     * @param m              每层最大邻居数，第0层为2m
+     * @param efConstruction 构建时的候选集大小
+     */
+    public HnswIndex(Path directory, int dimension, int m, int efConstruction) throws IOException {
+        if (dimension <= 0 || m < 2 || efConstruction <= 0) {
+            throw new IllegalArgumentException("dimension、efConstruction必须大于0，m不能小于2");
+        }
+        this.directory = directory;
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelFactor = 1 / Math.log(m);
+        this.nodesPerSegment = (int) Math.max(1, SEGMENT_BYTES / (dimension * 4L));
+        Files.createDirectories(directory);
+        Path graph = directory.resolve(GRAPH_FILE);
+        if (Files.exists(graph)) {
+            restore(graph);
+        } else {
+            this.vectorFile = VECTOR_FILE;
+            this.channel = openVectorFile(VECTOR_FILE, false);
+        }
+    }
+
+    /**
+     * 压缩时在锁外构建新图，参数与source相同，向量写入新文件
+     */
+    private HnswIndex(HnswIndex source, String vectorFile, int capacity) throws IOException {
+        this.directory = source.directory;
+        this.dimension = source.dimension;
+        this.m = source.m;
+        this.maxM0 = source.maxM0;
+        this.efConstruction = source.efConstruction;
+        this.levelFactor = source.levelFactor;
+        this.nodesPerSegment = source.nodesPerSegment;
+        this.vectorFile = vectorFile;
+        this.channel = openVectorFile(vectorFile, true);
+        this.ids = new String[capacity];
+        this.kids = new String[capacity];
+        this.links = new int[capacity][][];
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * 未删除的向量条数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入向量，id已存在时先删除旧节点
+     */
+    public void add(String id, String kid, float[] vector) throws IOException {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度应为" + dimension + "，实际为" + vector.length);
+        }
+        float[] query = normalize(Arrays.copyOf(vector, dimension));
+        writer.lock();
+        lock.writeLock().lock();
+        try {
+            Integer old = nodeById.get(id);
+            if (old != null) {
+                markDeleted(old);
+            }
+            int node = allocate(id, kid);
+            writeVector(node, query);
+            insert(node, query);
+        } finally {
+            lock.writeLock().unlock();
+            writer.unlock();
+        }
+    }
+
+    /**
+     * 将已写入向量的节点接入图，调用方持有写锁，或是压缩中尚未切换的新图
+     */
+    private void insert(int node, float[] query) {
+        int level = randomLevel();
+        int[][] nodeLinks = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            nodeLinks[l] = new int[1 + (l == 0 ? maxM0 : m)];
+        }
+        links[node] = nodeLinks;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        SearchContext context = contexts.get();
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedy(query, current, l);
+        }
+        int[] entries = {current};
+        int entryCount = 1;
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            ScoreHeap results = searchLayer(context, query, entries, entryCount, efConstruction, l, null, false);
+            int count = results.drainDescending(context);
+            int cap = l == 0 ? maxM0 : m;
+            int selected = selectNeighbors(context.nodes, context.scores, count, m, context.selected);
+            int[] own = nodeLinks[l];
+            for (int i = 0; i < selected; i++) {
+                int neighbor = context.selected[i];
+                own[++own[0]] = neighbor;
+                connect(neighbor, node, l, cap, context);
+            }
+            entries = Arrays.copyOf(context.nodes, count);
+            entryCount = count;
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    public boolean delete(String id) {
+        writer.lock();
+        lock.writeLock().lock();
+        try {
+            Integer node = nodeById.get(id);
+            if (node == null) {
+                return false;
+            }
+            markDeleted(node);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+            writer.unlock();
+        }
+    }
+
+    public int deleteByKid(String kid) {
+        writer.lock();
+        lock.writeLock().lock();
+        try {
+            BitSet nodes = nodesByKid.get(kid);
+            if (nodes == null) {
+                return 0;
+            }
+            int count = 0;
+            for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+                nodeById.remove(ids[node]);
+                deleted.set(node);
+                count++;
+            }
+            nodesByKid.remove(kid);
+            return count;
+        } finally {
+            lock.writeLock().unlock();
+            writer.unlock();
+        }
+    }
+
+    /**
+     * 近似查询
+     *
+     * @param kid            知识库id，为null时不过滤
+     * @param vector         查询向量
+     * @param topK           返回条数
+     * @param ef             查询时的候选集大小，越大召回越高
+     * @param exactThreshold 参与比较的向量数不超过该值时精确计算
+     */
+    public List<VectorHit> search(String kid, float[] vector, int topK, int ef, int exactThreshold) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度应为" + dimension + "，实际为" + vector.length);
+        }
+        if (topK <= 0) {
+            return Collections.emptyList();
+        }
+        SearchContext context = contexts.get();
+        float[] query = normalize(context.query(vector));
+        lock.readLock().lock();
+        try {
+            BitSet filter = null;
+            if (kid != null) {
+                filter = nodesByKid.get(kid);
+                if (filter == null) {
+                    return Collections.emptyList();
+                }
+            }
+            if (entryPoint < 0 || nodeById.isEmpty()) {
+                return Collections.emptyList();
+            }
+            ScoreHeap results;
+            if ((filter == null ? nodeById.size() : filter.cardinality()) <= exactThreshold) {
+                results = exact(context, query, filter, topK);
+            } else {
+                int current = entryPoint;
+                for (int l = maxLevel; l > 0; l--) {
+                    current = greedy(query, current, l);
+                }
+                context.entries[0] = current;
+                results = searchLayer(context, query, context.entries, 1, Math.max(ef, topK), 0, filter, true);
+            }
+            while (results.size() > topK) {
+                results.pop();
+            }
+            int count = results.drainDescending(context);
+            List<VectorHit> hits = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                hits.add(new VectorHit(ids[context.nodes[i]], context.scores[i]));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 精确查询，作为召回率的对照基准
+     */
+    public List<VectorHit> exactSearch(String kid, float[] vector, int topK) {
+        return search(kid, vector, topK, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 将向量文件刷盘并写出图结构，先写临时文件再替换，中途失败不影响上一次快照
+     * 已删除节点过多时改为执行compact
+     */
+    public synchronized void snapshot() throws IOException {
+        boolean compact;
+        lock.readLock().lock();
+        try {
+            compact = deleted.cardinality() > size * COMPACT_RATIO;
+            if (!compact) {
+                writeSnapshot();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (compact) {
+            compact();
+        }
+    }
+
+    /**
+     * 回收已删除节点：存活向量按原顺序写入新的向量文件并重建图，随后写出快照，成功后删除旧向量文件
+     * 重建与追赶构建期间的写入都在锁外进行，查询与写入照常；最后一批写入在阻塞写入(不阻塞查询)的情况下同步，
+     * 只在切换时短暂持有写锁，随后降级为读锁写出快照。切换前失败时删除新文件，索引保持压缩前的状态
+     *
+     * @return 回收的节点数
+     */
+    public synchronized int compact() throws IOException {
+        int removed;
+        int capacity;
+        lock.readLock().lock();
+        try {
+            removed = deleted.cardinality();
+            capacity = Math.max(1024, size - removed);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (removed == 0) {
+            return 0;
+        }
+        long suffix = System.currentTimeMillis();
+        String newFile = "vectors-" + Long.toHexString(suffix) + ".bin";
+        while (newFile.equals(vectorFile) || Files.exists(directory.resolve(newFile))) {
+            newFile = "vectors-" + Long.toHexString(++suffix) + ".bin";
+        }
+        Rebuild rebuild = new Rebuild(new HnswIndex(this, newFile, capacity));
+        try {
+            for (int round = 0; round < CATCH_UP_ROUNDS; round++) {
+                lock.readLock().lock();
+                try {
+                    rebuild.capture();
+                } finally {
+                    lock.readLock().unlock();
+                }
+                if (round > 0 && rebuild.pending() <= CATCH_UP_BATCH) {
+                    break;
+                }
+                rebuild.apply();
+            }
+        } catch (IOException | RuntimeException e) {
+            rebuild.built.discard();
+            throw e;
+        }
+        String oldFile = vectorFile;
+        FileChannel oldChannel = channel;
+        writer.lock();
+        try {
+            //写入已被阻塞，状态不会再变化，不持有读锁也能读取
+            try {
+                rebuild.capture();
+                rebuild.apply();
+            } catch (IOException | RuntimeException e) {
+                rebuild.built.discard();
+                throw e;
+            }
+            HnswIndex built = rebuild.built;
+            lock.writeLock().lock();
+            try {
+                vectorFile = built.vectorFile;
+                channel = built.channel;
+                mapped = built.mapped;
+                segments = built.segments;
+                size = built.size;
+                ids = built.ids;
+                kids = built.kids;
+                links = built.links;
+                deleted = built.deleted;
+                nodeById = built.nodeById;
+                nodesByKid = built.nodesByKid;
+                entryPoint = built.entryPoint;
+                maxLevel = built.maxLevel;
+                //旧快照仍指向旧文件，新快照写出成功后才删除
+                obsoleteFiles.add(oldFile);
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            try {
+                writeSnapshot();
+            } finally {
+                lock.readLock().unlock();
+                oldChannel.close();
+            }
+        } finally {
+            writer.unlock();
+        }
+        return removed;
+    }
+
+    /**
+     * 放弃未切换的新图，只删除本次创建的文件
+     */
+    private void discard() throws IOException {
+        channel.close();
+        Files.deleteIfExists(directory.resolve(vectorFile));
+    }
+
+    /**
+     * 调用方持有读锁或写锁
+     */
+    private void writeSnapshot() throws IOException {
+        for (MappedByteBuffer buffer : mapped) {
+            buffer.force();
+        }
+        Path temp = directory.resolve(GRAPH_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            writeString(out, vectorFile);
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < size; node++) {
+                out.writeBoolean(deleted.get(node));
+                writeString(out, ids[node]);
+                writeString(out, kids[node] == null ? "" : kids[node]);
+                int[][] nodeLinks = links[node];
+                out.writeInt(nodeLinks.length);
+                for (int[] levelLinks : nodeLinks) {
+                    out.writeInt(levelLinks[0]);
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        out.writeInt(levelLinks[i]);
+                    }
+                }
+            }
+        }
+        Files.move(temp, directory.resolve(GRAPH_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        //新快照已不再引用旧向量文件，删除失败只会残留磁盘空间
+        for (String file : obsoleteFiles) {
+            try {
+                Files.deleteIfExists(directory.resolve(file));
+            } catch (IOException ignored) {
+            }
+        }
+        obsoleteFiles.clear();
+    }
+
+    /**
+     * 长度前缀的UTF-8字节，不受writeUTF的64KB限制
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, int version) throws IOException {
+        if (version == 1) {
+            return in.readUTF();
+        }
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private FileChannel openVectorFile(String name, boolean createNew) throws IOException {
+        return FileChannel.open(directory.resolve(name), createNew ? StandardOpenOption.CREATE_NEW : StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * 与compact互斥，不会关闭正在重建的向量文件
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (MappedByteBuffer buffer : mapped) {
+                buffer.force();
+            }
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void restore(Path graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(graph), 1 << 16))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != VERSION) {
+                throw new IOException("不是有效的索引快照：" + graph);
+            }
+            int savedDimension = in.readInt();
+            int savedM = in.readInt();
+            if (savedDimension != dimension || savedM != m) {
+                throw new IOException("快照参数不一致，dimension=" + savedDimension + "，m=" + savedM);
+            }
+            vectorFile = version == 1 ? VECTOR_FILE : readString(in, version);
+            channel = openVectorFile(vectorFile, false);
+            int count = in.readInt();
+            if (channel.size() < (long) count * dimension * 4) {
+                throw new IOException("向量文件不完整：" + directory.resolve(vectorFile));
+            }
+            int savedEntryPoint = in.readInt();
+            int savedMaxLevel = in.readInt();
+            for (int node = 0; node < count; node++) {
+                boolean removed = in.readBoolean();
+                String id = readString(in, version);
+                String kid = readString(in, version);
+                allocate(id, kid.isEmpty() ? null : kid);
+                int levels = in.readInt();
+                int[][] nodeLinks = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int[] levelLinks = new int[1 + (l == 0 ? maxM0 : m)];
+                    levelLinks[0] = in.readInt();
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        levelLinks[i] = in.readInt();
+                    }
+                    nodeLinks[l] = levelLinks;
+                }
+                links[node] = nodeLinks;
+                if (removed) {
+                    markDeleted(node);
+                }
+            }
+            entryPoint = savedEntryPoint;
+            maxLevel = savedMaxLevel;
+            if (count > 0) {
+                segment(count - 1);
+            }
+        }
+    }
+
+    private int allocate(String id, String kid) {
+        int node = size;
+        if (node == ids.length) {
+            int capacity = node * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            kids = Arrays.copyOf(kids, capacity);
+            links = Arrays.copyOf(links, capacity);
+        }
+        ids[node] = id;
+        kids[node] = kid;
+        nodeById.put(id, node);
+        if (kid != null) {
+            nodesByKid.computeIfAbsent(kid, k -> new BitSet()).set(node);
+        }
+        size++;
+        return node;
+    }
+
+    private void markDeleted(int node) {
+        deleted.set(node);
+        nodeById.remove(ids[node], node);
+        String kid = kids[node];
+        if (kid != null) {
+            BitSet nodes = nodesByKid.get(kid);
+            if (nodes != null) {
+                nodes.clear(node);
+                if (nodes.isEmpty()) {
+                    nodesByKid.remove(kid);
+                }
+            }
+        }
+    }
+
+    private int randomLevel() {
+        double r = ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(Math.max(r, Double.MIN_VALUE)) * levelFactor);
+    }
+
+    /**
+     * 将新节点加入neighbor在level层的邻居表，已满时用启发式规则重新挑选
+     */
+    private void connect(int neighbor, int node, int level, int cap, SearchContext context) {
+        int[] neighborLinks = links[neighbor][level];
+        int count = neighborLinks[0];
+        if (count < cap) {
+            neighborLinks[count + 1] = node;
+            neighborLinks[0] = count + 1;
+            return;
+        }
+        int[] nodes = context.pruneNodes;
+        float[] scores = context.pruneScores;
+        nodes[0] = node;
+        scores[0] = dot(neighbor, node);
+        for (int i = 0; i < count; i++) {
+            nodes[i + 1] = neighborLinks[i + 1];
+            scores[i + 1] = dot(neighbor, neighborLinks[i + 1]);
+        }
+        sortDescending(nodes, scores, count + 1);
+        int selected = selectNeighbors(nodes, scores, count + 1, cap, context.pruneSelected);
+        System.arraycopy(context.pruneSelected, 0, neighborLinks, 1, selected);
+        neighborLinks[0] = selected;
+    }
+
+    /**
+     * 启发式选择邻居(HNSW论文算法4)：候选按相似度从高到低，只保留与已选邻居都不比与目标更相近的节点，使邻居分布在不同方向
+     *
+     * @param nodes  按相似度降序排列的候选
+     * @param scores 候选与目标的相似度
+     */
+    private int selectNeighbors(int[] nodes, float[] scores, int count, int max, int[] selected) {
+        int selectedCount = 0;
+        for (int i = 0; i < count && selectedCount < max; i++) {
+            int candidate = nodes[i];
+            boolean keep = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (dot(candidate, selected[j]) > scores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[selectedCount++] = candidate;
+            }
+        }
+        return selectedCount;
+    }
+
+    /**
+     * 在level层从current出发贪心移动到最相近的节点
+     */
+    private int greedy(float[] query, int current, int level) {
+        float best = dot(query, current);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            int[] levelLinks = links[current][level];
+            for (int i = 1; i <= levelLinks[0]; i++) {
+                int candidate = levelLinks[i];
+                float score = dot(query, candidate);
+                if (score > best) {
+                    best = score;
+                    current = candidate;
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在level层做ef大小的束搜索
+     *
+     * @param filter      结果只接受该集合中的节点，为null时接受全部
+     * @param skipDeleted 结果中是否排除已删除的节点
+     * @return 结果小顶堆
+     */
+    private ScoreHeap searchLayer(SearchContext context, float[] query, int[] entries, int entryCount, int ef, int level,
+                                  BitSet filter, boolean skipDeleted) {
+        context.nextVisit(size);
+        ScoreHeap candidates = context.candidates;
+        ScoreHeap results = context.results;
+        candidates.clear();
+        results.clear();
+        for (int i = 0; i < entryCount; i++) {
+            int entry = entries[i];
+            context.visit(entry);
+            float score = dot(query, entry);
+            candidates.push(entry, score);
+            if (accept(entry, filter, skipDeleted)) {
+                results.push(entry, score);
+            }
+        }
+        while (candidates.size() > 0) {
+            float candidateScore = candidates.topScore();
+            int candidate = candidates.pop();
+            if (results.size() >= ef && candidateScore < results.topScore()) {
+                break;
+            }
+            int[] levelLinks = links[candidate][level];
+            for (int i = 1; i <= levelLinks[0]; i++) {
+                int neighbor = levelLinks[i];
+                if (!context.visit(neighbor)) {
+                    continue;
+                }
+                float score = dot(query, neighbor);
+                if (results.size() < ef || score > results.topScore()) {
+                    candidates.push(neighbor, score);
+                    if (accept(neighbor, filter, skipDeleted)) {
+                        results.push(neighbor, score);
+                        if (results.size() > ef) {
+                            results.pop();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private ScoreHeap exact(SearchContext context, float[] query, BitSet filter, int topK) {
+        ScoreHeap results = context.results;
+        results.clear();
+        for (int node = next(filter, 0); node >= 0; node = next(filter, node + 1)) {
+            float score = dot(query, node);
+            if (results.size() < topK) {
+                results.push(node, score);
+            } else if (score > results.topScore()) {
+                results.pop();
+                results.push(node, score);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 下一个待比较的节点：有过滤时为集合中的下一个，否则为下一个未删除的节点
+     */
+    private int next(BitSet filter, int from) {
+        if (filter != null) {
+            return filter.nextSetBit(from);
+        }
+        int node = deleted.nextClearBit(from);
+        return node < size ? node : -1;
+    }
+
+    private boolean accept(int node, BitSet filter, boolean skipDeleted) {
+        if (filter != null) {
+            return filter.get(node);
+        }
+        return !skipDeleted || !deleted.get(node);
+    }
+
+    private void writeVector(int node, float[] vector) throws IOException {
+        FloatBuffer segment = segment(node);
+        int offset = (node % nodesPerSegment) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            segment.put(offset + i, vector[i]);
+        }
+    }
+
+    private void readVector(FloatBuffer[] from, int node, float[] vector) {
+        FloatBuffer segment = from[node / nodesPerSegment];
+        int offset = (node % nodesPerSegment) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = segment.get(offset + i);
+        }
+    }
+
+    private FloatBuffer segment(int node) throws IOException {
+        int index = node / nodesPerSegment;
+        FloatBuffer[] current = segments;
+        if (index < current.length) {
+            return current[index];
+        }
+        long segmentBytes = (long) nodesPerSegment * dimension * 4;
+        FloatBuffer[] grown = Arrays.copyOf(current, index + 1);
+        for (int i = current.length; i <= index; i++) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            mapped.add(buffer);
+            grown[i] = buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+        segments = grown;
+        return grown[index];
+    }
+
+    private float dot(float[] query, int node) {
+        FloatBuffer segment = segments[node / nodesPerSegment];
+        int offset = (node % nodesPerSegment) * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += query[i] * segment.get(offset + i);
+        }
+        return sum;
+    }
+
+    private float dot(int a, int b) {
+        FloatBuffer[] current = segments;
+        FloatBuffer segmentA = current[a / nodesPerSegment];
+        FloatBuffer segmentB = current[b / nodesPerSegment];
+        int offsetA = (a % nodesPerSegment) * dimension;
+        int offsetB = (b % nodesPerSegment) * dimension;
+        float sum = 0;
+        for (int i = 0; i < dimension; i++) {
+            sum += segmentA.get(offsetA + i) * segmentB.get(offsetB + i);
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static void sortDescending(int[] nodes, float[] scores, int count) {
+        for (int i = 1; i < count; i++) {
+            int node = nodes[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                nodes[j + 1] = nodes[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+            scores[j + 1] = score;
+        }
+    }
+
+    /**
+     * 压缩时的重建进度：按轮读取旧索引的状态，把上一轮之后的删除与新写入同步到新图
+     */
+    private final class Rebuild {
+
+        private final HnswIndex built;
+
+        private final float[] vector = new float[dimension];
+
+        /**
+         * 旧节点在新图中的编号，只对追加时存活的节点有效
+         */
+        private int[] remap = new int[0];
+
+        /**
+         * 已同步的旧节点数
+         */
+        private int from;
+
+        /**
+         * 已同步的删除标记
+         */
+        private BitSet seen = new BitSet();
+
+        private int capturedSize;
+
+        private BitSet capturedDeleted;
+
+        private FloatBuffer[] capturedSegments;
+
+        private String[] capturedIds;
+
+        private String[] capturedKids;
+
+        private Rebuild(HnswIndex built) {
+            this.built = built;
+        }
+
+        /**
+         * 记录旧索引的当前状态，调用方持有读锁或阻塞了写入
+         */
+        private void capture() {
+            capturedSize = size;
+            capturedDeleted = (BitSet) deleted.clone();
+            capturedSegments = segments;
+            capturedIds = ids;
+            capturedKids = kids;
+        }
+
+        /**
+         * 上一轮之后新写入的节点数
+         */
+        private int pending() {
+            return capturedSize - from;
+        }
+
+        /**
+         * 同步到capture时的状态，已记录的节点与向量不再变化，可以不加锁读取
+         */
+        private void apply() throws IOException {
+            BitSet removedSince = capturedDeleted.get(0, from);
+            removedSince.andNot(seen);
+            for (int old = removedSince.nextSetBit(0); old >= 0; old = removedSince.nextSetBit(old + 1)) {
+                built.markDeleted(remap[old]);
+            }
+            if (remap.length < capturedSize) {
+                remap = Arrays.copyOf(remap, capturedSize);
+            }
+            for (int old = capturedDeleted.nextClearBit(from); old < capturedSize; old = capturedDeleted.nextClearBit(old + 1)) {
+                readVector(capturedSegments, old, vector);
+                int node = built.allocate(capturedIds[old], capturedKids[old]);
+                built.writeVector(node, vector);
+                built.insert(node, vector);
+                remap[old] = node;
+            }
+            from = capturedSize;
+            seen = capturedDeleted;
+        }
+    }
+
+    /**
+     * 线程本地的查询缓冲区
+     */
+    private final class SearchContext {
+
+        private final ScoreHeap candidates = new ScoreHeap(true);
+
+        private final ScoreHeap results = new ScoreHeap(false);
+
+        private final int[] entries = new int[1];
+
+        private final int[] pruneNodes = new int[maxM0 + 1];
+
+        private final float[] pruneScores = new float[maxM0 + 1];
+
+        private final int[] pruneSelected = new int[maxM0 + 1];
+
+        private int[] selected = new int[maxM0];
+
+        private int[] nodes = new int[64];
+
+        private float[] scores = new float[64];
+
+        private float[] query = new float[dimension];
+
+        private int[] visited = new int[1024];
+
+        private int epoch;
+
+        private float[] query(float[] vector) {
+            System.arraycopy(vector, 0, query, 0, dimension);
+            return query;
+        }
+
+        private void nextVisit(int size) {
+            if (visited.length < size) {
+                visited = new int[Math.max(size, visited.length * 2)];
+                epoch = 0;
+            }
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                epoch = 1;
+            }
+        }
+
+        /**
+         * @return 首次访问时返回true
+         */
+        private boolean visit(int node) {
+            if (visited[node] == epoch) {
+                return false;
+            }
+            visited[node] = epoch;
+            return true;
+        }
+    }
+
+    /**
+     * (节点, 相似度)二叉堆，max为true时堆顶相似度最高
+     */
+    private final class ScoreHeap {
+
+        private final boolean max;
+
+        private int[] heapNodes = new int[64];
+
+        private float[] heapScores = new float[64];
+
+        private int size;
+
+        private ScoreHeap(boolean max) {
+            this.max = max;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private void clear() {
+            size = 0;
+        }
+
+        private float topScore() {
+            return heapScores[0];
+        }
+
+        private void push(int node, float score) {
+            if (size == heapNodes.length) {
+                heapNodes = Arrays.copyOf(heapNodes, size * 2);
+                heapScores = Arrays.copyOf(heapScores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, heapScores[parent])) {
+                    break;
+                }
+                heapNodes[i] = heapNodes[parent];
+                heapScores[i] = heapScores[parent];
+                i = parent;
+            }
+            heapNodes[i] = node;
+            heapScores[i] = score;
+        }
+
+        private int pop() {
+            int top = heapNodes[0];
+            int lastNode = heapNodes[--size];
+            float lastScore = heapScores[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && before(heapScores[child + 1], heapScores[child])) {
+                    child++;
+                }
+                if (!before(heapScores[child], lastScore)) {
+                    break;
+                }
+                heapNodes[i] = heapNodes[child];
+                heapScores[i] = heapScores[child];
+                i = child;
+            }
+            heapNodes[i] = lastNode;
+            heapScores[i] = lastScore;
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+
+        /**
+         * 取出全部元素，按相似度降序写入SearchContext的nodes/scores，返回个数
+         */
+        private int drainDescending(SearchContext context) {
+            int count = size;
+            if (context.nodes.length < count) {
+                context.nodes = new int[count * 2];
+                context.scores = new float[count * 2];
+            }
+            for (int i = count - 1; i >= 0; i--) {
+                context.scores[i] = heapScores[0];
+                context.nodes[i] = pop();
+            }
+            if (max) {
+                reverse(context.nodes, context.scores, count);
+            }
+            return count;
+        }
+
+        private void reverse(int[] nodes, float[] scores, int count) {
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int node = nodes[i];
+                nodes[i] = nodes[j];
+                nodes[j] = node;
+                float score = scores[i];
+                scores[i] = scores[j];
+                scores[j] = score;
+            }
+        }
+    }
+}
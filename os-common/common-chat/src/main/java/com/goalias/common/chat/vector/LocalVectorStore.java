@@ -0,0 +1,126 @@
+package com.goalias.common.chat.vector;
+
+import cn.hutool.core.thread.ThreadFactoryBuilder;
+import com.goalias.common.core.config.VectorStoreProperties;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  进程内向量库(vector-store.type=local)，基于HnswIndex
+ *  有写入时按snapshotIntervalSeconds定时快照，关闭时再快照一次
+ *
+ * @author goalias
+ */
+@Slf4j
+public class LocalVectorStore implements VectorStore, Closeable {
+
+    private final HnswIndex index;
+
+    private final VectorStoreProperties.Local properties;
+
+    private final ScheduledExecutorService snapshotExecutor;
+
+    /**
+     * 自上次快照以来的写入次数
+     */
+    private final AtomicLong modifications = new AtomicLong();
+
+    public LocalVectorStore(VectorStoreProperties.Local properties) {
+        this.properties = properties;
+        try {
+            this.index = new HnswIndex(Paths.get(properties.getPath()), properties.getDimension(),
+                properties.getM(), properties.getEfConstruction());
+        } catch (IOException e) {
+            throw new UncheckedIOException("本地向量库打开失败：" + properties.getPath(), e);
+        }
+        log.info("本地向量库已加载，目录：{}，向量数：{}", properties.getPath(), index.size());
+        if (properties.getSnapshotIntervalSeconds() > 0) {
+            this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(
+                ThreadFactoryBuilder.create().setNamePrefix("local-vector-snapshot-").setDaemon(true).build());
+            this.snapshotExecutor.scheduleWithFixedDelay(this::snapshotQuietly, properties.getSnapshotIntervalSeconds(),
+                properties.getSnapshotIntervalSeconds(), TimeUnit.SECONDS);
+        } else {
+            this.snapshotExecutor = null;
+        }
+    }
+
+    @Override
+    public void add(String id, String kid, float[] vector) {
+        try {
+            index.add(id, kid, vector);
+        } catch (IOException e) {
+            throw new UncheckedIOException("向量写入失败：" + id, e);
+        }
+        modifications.incrementAndGet();
+    }
+
+    @Override
+    public boolean delete(String id) {
+        boolean removed = index.delete(id);
+        if (removed) {
+            modifications.incrementAndGet();
+        }
+        return removed;
+    }
+
+    @Override
+    public int deleteByKid(String kid) {
+        int count = index.deleteByKid(kid);
+        if (count > 0) {
+            modifications.incrementAndGet();
+        }
+        return count;
+    }
+
+    @Override
+    public List<VectorHit> search(String kid, float[] query, int topK) {
+        return index.search(kid, query, topK, properties.getEfSearch(), properties.getExactThreshold());
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 立即快照
+     */
+    public void snapshot() {
+        long pending = modifications.get();
+        try {
+            index.snapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException("本地向量库快照失败：" + properties.getPath(), e);
+        }
+        modifications.addAndGet(-pending);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdown();
+        }
+        snapshotQuietly();
+        index.close();
+    }
+
+    private void snapshotQuietly() {
+        if (modifications.get() == 0) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (Exception e) {
+            log.warn("本地向量库快照失败：{}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.goalias.common.chat.vector;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 向量查询结果
+ *
+ * @author goalias
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class VectorHit {
+
+    /**
+     * 向量id
+     */
+    private final String id;
+
+    /**
+     * 余弦相似度
+     */
+    private final float score;
+}
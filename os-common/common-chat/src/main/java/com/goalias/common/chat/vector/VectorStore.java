@@ -0,0 +1,51 @@
+package com.goalias.common.chat.vector;
+
+import java.util.List;
+
+/**
+ * 向量库
+ *
+ * @author goalias
+ */
+public interface VectorStore {
+
+    /**
+     * 写入向量，id已存在时覆盖
+     *
+     * @param id     向量id
+     * @param kid    知识库id
+     * @param vector 向量
+     */
+    void add(String id, String kid, float[] vector);
+
+    /**
+     * 删除向量
+     *
+     * @param id 向量id
+     * @return 是否存在
+     */
+    boolean delete(String id);
+
+    /**
+     * 删除知识库下的全部向量
+     *
+     * @param kid 知识库id
+     * @return 删除的条数
+     */
+    int deleteByKid(String kid);
+
+    /**
+     * 查询最相近的向量
+     *
+     * @param kid   知识库id，为null时不过滤
+     * @param query 查询向量
+     * @param topK  返回条数
+     * @return 按相似度从高到低排列的结果
+     */
+    List<VectorHit> search(String kid, float[] query, int topK);
+
+    /**
+     * 向量条数
+     */
+    int size();
+}
@@ -0,0 +1,92 @@
+package com.goalias.common.chat.benchmark;
+
+import com.goalias.common.chat.entity.chat.BaseMessage;
+import com.goalias.common.chat.entity.chat.Message;
+import com.goalias.common.chat.token.BpeTokenizer;
+import com.goalias.common.chat.token.TokenBudget;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 英文与中文各约8KB文本的token计数，以及200条消息的对话历史按预算裁剪(含摘要)
+ * 词表不在classpath时测的是估算路径，词表文件放到 src/test/resources/tiktoken 下即测精确路径
+ * 运行：mvn -pl os-common/common-chat test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.goalias.common.chat.benchmark.BpeTokenizerBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BpeTokenizerBenchmark {
+
+    private static final String MODEL = "gpt-4o";
+
+    private BpeTokenizer tokenizer;
+
+    private String english;
+
+    private String chinese;
+
+    private List<Message> history;
+
+    private TokenBudget budget;
+
+    @Setup
+    public void setup() {
+        tokenizer = BpeTokenizer.forModel(MODEL);
+        StringBuilder en = new StringBuilder();
+        StringBuilder zh = new StringBuilder();
+        while (en.length() < 8192) {
+            en.append("The quick brown fox jumps over the lazy dog, then checks the weather in Hangzhou. ");
+        }
+        while (zh.length() < 8192 / 3) {
+            zh.append("今天杭州天气晴朗，适合和朋友一起去西湖边散步，顺便尝尝龙井虾仁。");
+        }
+        english = en.toString();
+        chinese = zh.toString();
+        history = new ArrayList<>();
+        history.add(Message.builder().role(BaseMessage.Role.SYSTEM).content("You are a helpful assistant.").build());
+        for (int i = 0; i < 100; i++) {
+            history.add(Message.builder().role(BaseMessage.Role.USER).content("第" + i + "个问题：" + english.substring(0, 200)).build());
+            history.add(Message.builder().role(BaseMessage.Role.ASSISTANT).content(chinese.substring(0, 200)).build());
+        }
+        budget = new TokenBudget(tokenizer.countMessages(history) / 4, 20,
+            dropped -> Message.builder().role(BaseMessage.Role.SYSTEM).content("之前共" + dropped.size() + "条消息的摘要").build());
+    }
+
+    @Benchmark
+    public int countEnglish() {
+        return tokenizer.count(english);
+    }
+
+    @Benchmark
+    public int countChinese() {
+        return tokenizer.count(chinese);
+    }
+
+    @Benchmark
+    public List<Message> trimHistory() {
+        return budget.trim(MODEL, history);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BpeTokenizerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
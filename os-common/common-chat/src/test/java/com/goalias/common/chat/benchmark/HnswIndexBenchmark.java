@@ -0,0 +1,214 @@
+package com.goalias.common.chat.benchmark;
+
+import com.goalias.common.chat.vector.HnswIndex;
+import com.goalias.common.chat.vector.VectorHit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * HNSW与exactSearch的召回率和QPS对比，以及压缩期间写入的最长等待
+ * 数据为围绕若干中心的聚类向量，查询为数据集向量加噪声；召回率为topK中与exactSearch结果相同的比例
+ * 默认规模为100万条1536维(向量文件约6GB，单线程构建需数小时)，可用系统属性缩小规模快速验证：
+ * -Dhnsw.size=1000000 -Dhnsw.dimension=1536 -Dhnsw.queries=1000 -Dhnsw.topK=10 -Dhnsw.m=16
+ * -Dhnsw.efConstruction=200 -Dhnsw.ef=64,128,256 -Dhnsw.threads=8 -Dhnsw.writeRate=200 -Dhnsw.dir=/data/hnsw-bench
+ * 运行：mvn -pl os-common/common-chat test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.goalias.common.chat.benchmark.HnswIndexBenchmark
+ */
+public class HnswIndexBenchmark {
+
+    private static final int SIZE = Integer.getInteger("hnsw.size", 1_000_000);
+
+    private static final int DIMENSION = Integer.getInteger("hnsw.dimension", 1536);
+
+    private static final int QUERIES = Integer.getInteger("hnsw.queries", 1000);
+
+    private static final int TOP_K = Integer.getInteger("hnsw.topK", 10);
+
+    private static final int M = Integer.getInteger("hnsw.m", 16);
+
+    private static final int EF_CONSTRUCTION = Integer.getInteger("hnsw.efConstruction", 200);
+
+    private static final String EF = System.getProperty("hnsw.ef", "64,128,256");
+
+    private static final int THREADS = Integer.getInteger("hnsw.threads", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * 压缩期间每秒写入条数
+     */
+    private static final int WRITE_RATE = Integer.getInteger("hnsw.writeRate", 200);
+
+    private static final int CLUSTERS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        String dir = System.getProperty("hnsw.dir");
+        Path directory = dir == null ? Files.createTempDirectory("hnsw-bench") : Files.createDirectories(Path.of(dir));
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (HnswIndex index = new HnswIndex(directory, DIMENSION, M, EF_CONSTRUCTION)) {
+            Random random = new Random(42);
+            float[][] centroids = new float[CLUSTERS][];
+            for (int i = 0; i < CLUSTERS; i++) {
+                centroids[i] = gaussian(random, 1f);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < SIZE; i++) {
+                index.add("doc-" + i, null, vector(random, centroids));
+                if ((i + 1) % 100_000 == 0) {
+                    System.out.printf("已写入 %d 条，耗时 %ds%n", i + 1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+                }
+            }
+            System.out.printf("构建：%d 条 x %d 维，耗时 %.1fs%n", SIZE, DIMENSION, (System.nanoTime() - start) / 1e9);
+
+            float[][] queries = new float[QUERIES][];
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i] = vector(random, centroids);
+            }
+            AtomicReferenceArray<List<VectorHit>> truth = new AtomicReferenceArray<>(QUERIES);
+            double exactQps = run(executor, queries, q -> truth.set(q, index.exactSearch(null, queries[q], TOP_K)));
+            System.out.printf("exactSearch：QPS %.1f%n", exactQps);
+            for (String value : EF.split(",")) {
+                int ef = Integer.parseInt(value.trim());
+                AtomicReferenceArray<List<VectorHit>> hits = new AtomicReferenceArray<>(QUERIES);
+                double qps = run(executor, queries, q -> hits.set(q, index.search(null, queries[q], TOP_K, ef, 0)));
+                System.out.printf("HNSW ef=%d：QPS %.1f，recall@%d %.4f%n", ef, qps, TOP_K, recall(truth, hits));
+            }
+
+            compaction(index, random, centroids, queries);
+        } finally {
+            executor.shutdownNow();
+            if (dir == null) {
+                try (Stream<Path> files = Files.walk(directory)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除三成数据后压缩，同时按WRITE_RATE写入并持续查询，记录单次写入与查询的最长耗时
+     * 写入速度接近单线程构建速度时，锁外追赶无法收敛，最后一批写入同步期间写入会被阻塞
+     */
+    private static void compaction(HnswIndex index, Random random, float[][] centroids, float[][] queries) throws Exception {
+        for (int i = 0; i < SIZE; i += 3) {
+            index.delete("doc-" + i);
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong maxAdd = new AtomicLong();
+        AtomicLong maxSearch = new AtomicLong();
+        AtomicLong adds = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            Random local = new Random(7);
+            long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, WRITE_RATE);
+            long next = System.nanoTime();
+            while (running.get()) {
+                next += interval;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                float[] vector = vector(local, centroids);
+                long begin = System.nanoTime();
+                try {
+                    index.add("new-" + adds.getAndIncrement(), null, vector);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                maxAdd.accumulateAndGet(System.nanoTime() - begin, Math::max);
+            }
+        });
+        Thread reader = new Thread(() -> {
+            int q = 0;
+            while (running.get()) {
+                long begin = System.nanoTime();
+                index.search(null, queries[q++ % queries.length], TOP_K, 64, 0);
+                maxSearch.accumulateAndGet(System.nanoTime() - begin, Math::max);
+            }
+        });
+        writer.start();
+        reader.start();
+        long start = System.nanoTime();
+        int removed = index.compact();
+        long elapsed = System.nanoTime() - start;
+        running.set(false);
+        writer.join();
+        reader.join();
+        System.out.printf("压缩：回收 %d 个节点，耗时 %.1fs，期间写入 %d 条，单次写入最长 %dms，单次查询最长 %dms，压缩后 %d 条%n",
+            removed, elapsed / 1e9, adds.get(), TimeUnit.NANOSECONDS.toMillis(maxAdd.get()),
+            TimeUnit.NANOSECONDS.toMillis(maxSearch.get()), index.size());
+    }
+
+    private interface Query {
+        void run(int q);
+    }
+
+    /**
+     * 多线程执行全部查询，返回QPS
+     */
+    private static double run(ExecutorService executor, float[][] queries, Query query) throws Exception {
+        AtomicLong next = new AtomicLong();
+        long start = System.nanoTime();
+        Future<?>[] futures = new Future[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            futures[t] = executor.submit(() -> {
+                int q;
+                while ((q = (int) next.getAndIncrement()) < queries.length) {
+                    query.run(q);
+                }
+            });
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return queries.length / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double recall(AtomicReferenceArray<List<VectorHit>> truth, AtomicReferenceArray<List<VectorHit>> hits) {
+        long found = 0;
+        long total = 0;
+        for (int q = 0; q < truth.length(); q++) {
+            Set<String> expected = new HashSet<>();
+            for (VectorHit hit : truth.get(q)) {
+                expected.add(hit.getId());
+            }
+            for (VectorHit hit : hits.get(q)) {
+                if (expected.contains(hit.getId())) {
+                    found++;
+                }
+            }
+            total += expected.size();
+        }
+        return total == 0 ? 1 : (double) found / total;
+    }
+
+    private static float[] vector(Random random, float[][] centroids) {
+        float[] centroid = centroids[random.nextInt(centroids.length)];
+        float[] vector = gaussian(random, 0.3f);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] += centroid[i];
+        }
+        return vector;
+    }
+
+    private static float[] gaussian(Random random, float scale) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+}
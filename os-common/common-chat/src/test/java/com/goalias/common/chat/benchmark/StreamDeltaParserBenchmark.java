@@ -0,0 +1,77 @@
+package com.goalias.common.chat.benchmark;
+
+import cn.hutool.json.JSONUtil;
+import com.goalias.common.chat.entity.chat.ChatCompletionResponse;
+import com.goalias.common.chat.entity.chat.FunctionCall;
+import com.goalias.common.chat.sse.StreamDeltaParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析一次2000个数据块的function_call流：原 JSONUtil.toBean + 字符串拼接 与 StreamDeltaParser
+ * 运行：mvn -pl os-common/common-chat test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.goalias.common.chat.benchmark.StreamDeltaParserBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamDeltaParserBenchmark {
+
+    private static final int CHUNKS = 2000;
+
+    private String[] chunks;
+
+    @Setup
+    public void setup() {
+        chunks = new String[CHUNKS];
+        for (int i = 0; i < CHUNKS; i++) {
+            String arguments = i == 0 ? "{\\\"query\\\":\\\"" : "token" + i + " ";
+            chunks[i] = "{\"id\":\"chatcmpl-9x\",\"object\":\"chat.completion.chunk\",\"created\":1700000000,"
+                + "\"model\":\"gpt-4o-2024-08-06\",\"system_fingerprint\":\"fp_1\",\"choices\":[{\"index\":0,"
+                + "\"delta\":{\"function_call\":{\"arguments\":\"" + arguments + "\"}},\"logprobs\":null,\"finish_reason\":null}]}";
+        }
+    }
+
+    @Benchmark
+    public String legacy() {
+        String arguments = "";
+        for (String chunk : chunks) {
+            ChatCompletionResponse response = JSONUtil.toBean(chunk, ChatCompletionResponse.class);
+            FunctionCall functionCall = response.getChoices().get(0).getDelta().getFunctionCall();
+            if (functionCall != null) {
+                arguments += functionCall.getArguments();
+            }
+        }
+        return arguments;
+    }
+
+    @Benchmark
+    public String streaming() throws IOException {
+        StreamDeltaParser parser = new StreamDeltaParser();
+        for (String chunk : chunks) {
+            parser.append(chunk);
+        }
+        return parser.getFunctionArguments();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StreamDeltaParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
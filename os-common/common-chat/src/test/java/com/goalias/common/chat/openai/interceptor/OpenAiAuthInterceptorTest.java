@@ -0,0 +1,273 @@
+package com.goalias.common.chat.openai.interceptor;
+
+import com.goalias.common.chat.openai.exception.OpenAiIOException;
+import com.goalias.common.chat.openai.function.KeyFeedback;
+import com.goalias.common.chat.openai.function.KeyStrategyFunction;
+import com.goalias.common.core.exception.base.BaseException;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAiAuthInterceptorTest {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private MockWebServer server;
+
+    private RecordingStrategy strategy;
+
+    private RetryPolicy policy;
+
+    private DefaultOpenAiAuthInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        strategy = new RecordingStrategy();
+        policy = new RetryPolicy();
+        policy.setBaseBackoffMillis(1);
+        interceptor = new DefaultOpenAiAuthInterceptor();
+        interceptor.setApiKey(Arrays.asList("k1", "k2"));
+        interceptor.setKeyStrategy(strategy);
+        interceptor.setRetryPolicy(policy);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    void retriesServerErrorsOnAnotherKey() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        try (Response response = client(new Dispatcher()).newCall(request()).execute()) {
+            assertEquals(200, response.code());
+            assertEquals("ok", response.body().string());
+        }
+        assertEquals(2, server.getRequestCount());
+        String first = server.takeRequest().getHeader("Authorization");
+        String second = server.takeRequest().getHeader("Authorization");
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void waitsForRetryAfter() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "0.3"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        long start = System.nanoTime();
+        try (Response response = client(new Dispatcher()).newCall(request()).execute()) {
+            assertEquals(200, response.code());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+    }
+
+    @Test
+    void returnsImmediatelyWhenRetryAfterExceedsMaxBackoff() throws Exception {
+        policy.setMaxBackoffMillis(1000);
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "30"));
+
+        try (Response response = client(new Dispatcher()).newCall(request()).execute()) {
+            assertEquals(429, response.code());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    void stopsRetryingWhenBudgetIsExhausted() throws Exception {
+        //不再存入令牌，初始的10次重试额度用完后直接返回
+        policy.setBudgetRatio(0);
+        policy.setMaxAttempts(100);
+        for (int i = 0; i < 20; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        try (Response response = client(new Dispatcher()).newCall(request()).execute()) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(11, server.getRequestCount());
+        try (Response response = client(new Dispatcher()).newCall(request()).execute()) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(12, server.getRequestCount());
+    }
+
+    @Test
+    void hedgeWinsAndLoserIsNotPenalized() throws Exception {
+        policy.setHedging(true);
+        policy.setMinHedgeDelayMillis(100);
+        server.setDispatcher(new SlowKeyDispatcher("Bearer k1"));
+
+        try (Response response = client(new Dispatcher()).newCall(request()).execute()) {
+            assertEquals("fast", response.body().string());
+        }
+        assertEquals(2, server.getRequestCount());
+        assertTrue(awaitEvent("cancel:k1"), "loser should be reported as cancelled");
+        assertFalse(strategy.events.contains("error:k1"));
+    }
+
+    @Test
+    void hedgingDoesNotDeadlockEnqueuedCalls() throws Exception {
+        policy.setHedging(true);
+        policy.setMinHedgeDelayMillis(100);
+        server.setDispatcher(new SlowKeyDispatcher("Bearer k1"));
+        //外层异步请求占满唯一的并发额度，内层对冲请求走独立调度器
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(1);
+
+        CompletableFuture<String> body = new CompletableFuture<>();
+        client(dispatcher).newCall(request()).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) throws IOException {
+                try (Response r = response) {
+                    body.complete(r.body().string());
+                }
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                body.completeExceptionally(e);
+            }
+        });
+        assertEquals("fast", body.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void noActiveKeyFailsEnqueuedCallWithoutKillingDispatcher() throws Exception {
+        interceptor.setApiKey(Collections.emptyList());
+
+        CompletableFuture<IOException> failure = new CompletableFuture<>();
+        client(new Dispatcher()).newCall(request()).enqueue(new Callback() {
+            @Override
+            public void onResponse(@NotNull Call call, @NotNull Response response) {
+                response.close();
+                failure.completeExceptionally(new AssertionError("unexpected response"));
+            }
+
+            @Override
+            public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                failure.complete(e);
+            }
+        });
+        IOException e = failure.get(5, TimeUnit.SECONDS);
+        assertInstanceOf(OpenAiIOException.class, e);
+        assertInstanceOf(BaseException.class, OpenAiIOException.unwrap(e));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    private OkHttpClient client(Dispatcher dispatcher) {
+        OkHttpClient client = new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .addInterceptor(interceptor)
+            .readTimeout(10, TimeUnit.SECONDS)
+            .build();
+        interceptor.attach(client);
+        return client;
+    }
+
+    private Request request() {
+        return new Request.Builder()
+            .url(server.url("/v1/chat/completions"))
+            .post(RequestBody.create("{\"model\":\"gpt-4o\"}", JSON))
+            .build();
+    }
+
+    private boolean awaitEvent(String event) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (strategy.events.contains(event)) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    /**
+     * 轮流使用各个key，并记录反馈
+     */
+    private static final class RecordingStrategy implements KeyStrategyFunction<List<String>, String>, KeyFeedback {
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        private final Queue<String> events = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public String apply(List<String> keys) {
+            return keys.get(Math.floorMod(next.getAndIncrement(), keys.size()));
+        }
+
+        @Override
+        public void onStart(String key) {
+            events.add("start:" + key);
+        }
+
+        @Override
+        public void onResponse(String key, int code, long latencyNanos, Headers headers) {
+            events.add("response:" + key + ":" + code);
+        }
+
+        @Override
+        public void onError(String key, long latencyNanos) {
+            events.add("error:" + key);
+        }
+
+        @Override
+        public void onCancel(String key) {
+            events.add("cancel:" + key);
+        }
+    }
+
+    /**
+     * 指定key的请求迟迟不返回，其余请求立即返回
+     */
+    private static final class SlowKeyDispatcher extends okhttp3.mockwebserver.Dispatcher {
+
+        private final String slowAuthorization;
+
+        private SlowKeyDispatcher(String slowAuthorization) {
+            this.slowAuthorization = slowAuthorization;
+        }
+
+        @NotNull
+        @Override
+        public MockResponse dispatch(@NotNull RecordedRequest request) {
+            if (slowAuthorization.equals(request.getHeader("Authorization"))) {
+                return new MockResponse().setBody("slow").setHeadersDelay(3, TimeUnit.SECONDS);
+            }
+            return new MockResponse().setBody("fast");
+        }
+    }
+}
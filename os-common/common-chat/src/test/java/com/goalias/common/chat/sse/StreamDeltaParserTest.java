@@ -0,0 +1,56 @@
+package com.goalias.common.chat.sse;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.goalias.common.chat.entity.chat.tool.ToolCalls;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamDeltaParserTest {
+
+    @Test
+    void contentIsConcatenatedAcrossChunks() throws Exception {
+        StreamDeltaParser parser = new StreamDeltaParser();
+        parser.append(chunk("{\"content\":\"Hel\"}", null));
+        parser.append(chunk("{\"content\":\"lo\"}", null));
+        parser.append(chunk("{}", "\"stop\""));
+        assertEquals("Hello", parser.getContent());
+        assertEquals("stop", parser.getFinishReason());
+    }
+
+    @Test
+    void toolCallIdAndTypeAreNotRepeated() throws Exception {
+        StreamDeltaParser parser = new StreamDeltaParser();
+        parser.append(chunk("{\"tool_calls\":[{\"index\":0,\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\"weather\",\"arguments\":\"\"}}]}", null));
+        parser.append(chunk("{\"tool_calls\":[{\"index\":0,\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"arguments\":\"{\\\"city\\\":\"}}]}", null));
+        parser.append(chunk("{\"tool_calls\":[{\"index\":0,\"id\":\"\",\"function\":{\"arguments\":\"\\\"Paris\\\"}\"}}]}", null));
+        parser.append(chunk("{\"tool_calls\":[{\"index\":1,\"id\":\"call_2\",\"function\":{\"name\":\"time\",\"arguments\":\"{}\"}}]}", "\"tool_calls\""));
+
+        List<ToolCalls> toolCalls = parser.getToolCalls();
+        assertEquals(2, toolCalls.size());
+        assertEquals("call_1", toolCalls.get(0).getId());
+        assertEquals("function", toolCalls.get(0).getType());
+        assertEquals("weather", toolCalls.get(0).getFunction().getName());
+        assertEquals("{\"city\":\"Paris\"}", toolCalls.get(0).getFunction().getArguments());
+        assertEquals("call_2", toolCalls.get(1).getId());
+        assertEquals("function", toolCalls.get(1).getType());
+    }
+
+    @Test
+    void outOfRangeToolCallIndexIsRejected() {
+        StreamDeltaParser parser = new StreamDeltaParser();
+        assertThrows(JsonParseException.class,
+            () -> parser.append(chunk("{\"tool_calls\":[{\"index\":2147483647,\"id\":\"x\"}]}", null)));
+        assertThrows(JsonParseException.class,
+            () -> parser.append(chunk("{\"tool_calls\":[{\"index\":-1,\"id\":\"x\"}]}", null)));
+        assertEquals(0, parser.getToolCalls().size());
+    }
+
+    static String chunk(String delta, String finishReason) {
+        return "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion.chunk\",\"created\":1700000000,\"model\":\"gpt-4o\","
+            + "\"choices\":[{\"index\":0,\"delta\":" + delta + ",\"finish_reason\":" + finishReason + "}]}";
+    }
+}
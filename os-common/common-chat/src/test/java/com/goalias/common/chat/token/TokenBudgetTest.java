@@ -0,0 +1,80 @@
+package com.goalias.common.chat.token;
+
+import com.goalias.common.chat.entity.chat.BaseMessage;
+import com.goalias.common.chat.entity.chat.Message;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBudgetTest {
+
+    private static final String MODEL = "gpt-4o";
+
+    @Test
+    void estimateDoesNotUndercountCjk() {
+        BpeTokenizer tokenizer = BpeTokenizer.forModel(MODEL);
+        String text = "今天天气很好，我们一起去公园散步吧。";
+        if (!tokenizer.isExact()) {
+            assertTrue(tokenizer.count(text) >= text.codePointCount(0, text.length()));
+        }
+        assertTrue(tokenizer.count("hello world") > 0);
+    }
+
+    @Test
+    void summaryIsCountedAgainstBudget() {
+        BpeTokenizer tokenizer = BpeTokenizer.forModel(MODEL);
+        List<Message> messages = conversation(20);
+        int maxTokens = tokenizer.countMessages(messages) / 2;
+        AtomicInteger calls = new AtomicInteger();
+        //摘要与被丢弃的部分等长，不计入预算时必然超出
+        TokenBudget budget = new TokenBudget(maxTokens, 100, dropped -> {
+            calls.incrementAndGet();
+            StringBuilder text = new StringBuilder();
+            for (Message message : dropped) {
+                text.append(message.getContent()).append(' ');
+            }
+            return message(BaseMessage.Role.SYSTEM, text.toString());
+        });
+
+        List<Message> trimmed = budget.trim(MODEL, messages);
+
+        assertTrue(tokenizer.countMessages(trimmed) <= maxTokens);
+        assertSame(messages.get(0), trimmed.get(0));
+        assertSame(messages.get(messages.size() - 1), trimmed.get(trimmed.size() - 1));
+        assertTrue(calls.get() >= 1);
+    }
+
+    @Test
+    void summaryIsDroppedWhenOnlyTheQuestionFits() {
+        BpeTokenizer tokenizer = BpeTokenizer.forModel(MODEL);
+        List<Message> messages = conversation(3);
+        Message question = messages.get(messages.size() - 1);
+        int maxTokens = 3 + tokenizer.countMessage(messages.get(0)) + tokenizer.countMessage(question);
+        TokenBudget budget = new TokenBudget(maxTokens, 100, dropped -> message(BaseMessage.Role.SYSTEM, "summary of earlier turns"));
+
+        List<Message> trimmed = budget.trim(MODEL, messages);
+
+        assertEquals(List.of(messages.get(0), question), trimmed);
+    }
+
+    private static List<Message> conversation(int turns) {
+        List<Message> messages = new ArrayList<>();
+        messages.add(message(BaseMessage.Role.SYSTEM, "You are a helpful assistant."));
+        for (int i = 0; i < turns; i++) {
+            messages.add(message(BaseMessage.Role.USER, "question " + i + " about the weather in Hangzhou and Shanghai today"));
+            messages.add(message(BaseMessage.Role.ASSISTANT, "answer " + i + " it is sunny in Hangzhou and cloudy in Shanghai"));
+        }
+        messages.add(message(BaseMessage.Role.USER, "and tomorrow?"));
+        return messages;
+    }
+
+    private static Message message(BaseMessage.Role role, String content) {
+        return Message.builder().role(role).content(content).build();
+    }
+}
@@ -29,6 +29,11 @@ public class VectorStoreProperties {
      */
     private Milvus milvus = new Milvus();
 
+    /**
+     * 本地向量库配置
+     */
+    private Local local = new Local();
+
     @Data
     public static class Weaviate {
         /**
@@ -59,4 +64,42 @@ public class VectorStoreProperties {
          */
         private String collectionname;
     }
+
+    @Data
+    public static class Local {
+        /**
+         * 存放目录
+         */
+        private String path = "./data/vector-store";
+
+        /**
+         * 向量维度
+         */
+        private int dimension = 1536;
+
+        /**
+         * 每层最大邻居数
+         */
+        private int m = 16;
+
+        /**
+         * 构建时的候选集大小
+         */
+        private int efConstruction = 200;
+
+        /**
+         * 查询时的候选集大小
+         */
+        private int efSearch = 100;
+
+        /**
+         * 按知识库过滤后向量数不超过该值时精确计算
+         */
+        private int exactThreshold = 5000;
+
+        /**
+         * 定时快照间隔(秒)，0为只在关闭时快照
+         */
+        private long snapshotIntervalSeconds = 300;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.goalias.common.core.utils;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁ID生成器
+ * 63位：41位毫秒时间戳(自2024-01-01) | 10位节点 | 12位序列
+ * 线程每次从全局计数器租借一段序列在本地消费，全局CAS只在租借时发生；
+ * 同一毫秒序列用尽时借用下一毫秒，进程内严格不重复，跨线程按时间大致有序
+ * 跨进程不重复依赖节点号唯一，多实例部署时需通过 -Dgoalias.id.node、环境变量GOALIAS_ID_NODE 或 setNode 指定
+ *
+ * @author Goalias
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class IdGenerator {
+
+    private static final long EPOCH = 1704038400000L;
+
+    private static final int NODE_BITS = 10;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * 每次租借的序列数
+     */
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * 按ASCII升序排列的32进制字符表(去除0,O,1,I)，定长编码后字典序与数值序一致
+     */
+    private static final char[] BASE32 = "23456789ABCDEFGHJKLMNPQRSTUVWXYZ".toCharArray();
+
+    private static final int SHORT_ID_LENGTH = 13;
+
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+
+    private static volatile long node = resolveNode();
+
+    /**
+     * 时间戳与序列拼接后的值：timestamp << SEQUENCE_BITS | sequence
+     */
+    private static final AtomicLong counter = new AtomicLong();
+
+    private static final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]);
+
+    public static long nextId() {
+        long[] range = block.get();
+        if (range[0] >= range[1]) {
+            range[0] = lease();
+            range[1] = range[0] + BLOCK_SIZE;
+        }
+        long value = range[0]++;
+        return ((value >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | (value & SEQUENCE_MASK);
+    }
+
+    /**
+     * 13位定长32进制ID，可直接用于类名、文件名
+     */
+    public static String nextShortId() {
+        return encode(nextId());
+    }
+
+    public static String encode(long id) {
+        char[] chars = new char[SHORT_ID_LENGTH];
+        for (int i = SHORT_ID_LENGTH - 1; i >= 0; i--) {
+            chars[i] = BASE32[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    public static long getNode() {
+        return node;
+    }
+
+    /**
+     * 指定节点号(如由配置中心或Redis分配)，应在启动早期调用
+     * 切换前后生成的ID在进程内仍不重复(时间戳与序列单调递增)
+     */
+    public static void setNode(long node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("node must be between 0 and " + MAX_NODE + ": " + node);
+        }
+        IdGenerator.node = node;
+    }
+
+    private static long lease() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        while (true) {
+            long current = counter.get();
+            long start = Math.max(current, now);
+            if (counter.compareAndSet(current, start + BLOCK_SIZE)) {
+                return start;
+            }
+        }
+    }
+
+    /**
+     * 节点号优先取 -Dgoalias.id.node 或环境变量GOALIAS_ID_NODE，否则由主机名与进程号散列得到
+     * 散列只有1024个取值，实例较多时可能冲突
+     */
+    private static long resolveNode() {
+        String configured = System.getProperty("goalias.id.node", System.getenv("GOALIAS_ID_NODE"));
+        if (configured != null && !configured.isBlank()) {
+            long value = Long.parseLong(configured.trim());
+            if (value < 0 || value > MAX_NODE) {
+                throw new IllegalArgumentException("goalias.id.node must be between 0 and " + MAX_NODE + ": " + value);
+            }
+            return value;
+        }
+        String identity;
+        try {
+            identity = InetAddress.getLocalHost().getHostName() + "@" + ManagementFactory.getRuntimeMXBean().getName();
+        } catch (Exception e) {
+            identity = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        return (identity.hashCode() & 0x7fffffff) & NODE_MASK;
+    }
+}
@@ -0,0 +1,61 @@
+package com.goalias.common.core.benchmark;
+
+import com.goalias.common.core.utils.IdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多线程下IdGenerator的吞吐，对照全局AtomicLong自增与UUID
+ * 运行：mvn -pl os-common/common-core test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.goalias.common.core.benchmark.IdGeneratorBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(8)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Benchmark
+    public long nextId() {
+        return IdGenerator.nextId();
+    }
+
+    @Benchmark
+    public String nextShortId() {
+        return IdGenerator.nextShortId();
+    }
+
+    @Benchmark
+    public long atomicIncrement() {
+        return sequence.incrementAndGet();
+    }
+
+    @Benchmark
+    public String randomUuid() {
+        return UUID.randomUUID().toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IdGeneratorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,173 @@
+package com.goalias.common.rateLimiter.adaptive;
+
+import com.goalias.common.rateLimiter.annotation.GoaliasAdaptive;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 参考Netflix concurrency-limits的Gradient2实现
+ * 每个窗口用平均RT(short)与长期指数平均RT(long)的比值作为梯度：
+ * newLimit = limit * clamp(tolerance * long / short, 0.5, 1.0) + sqrt(limit)，再做平滑并限制在[min, max]
+ * 调用路径只做计数，上限的重新计算每个窗口由一个线程完成
+ */
+public class GradientLimiter {
+
+    private static final double SMOOTHING = 0.2d;
+
+    /**
+     * 长期RT的指数平均窗口(按调整次数计)，前WARMUP次取算术平均
+     */
+    private static final int LONG_WINDOW = 100;
+
+    private static final int WARMUP = 10;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder rttSum = new LongAdder();
+
+    private final LongAdder sampleCount = new LongAdder();
+
+    private final LongAdder rejectCount = new LongAdder();
+
+    private final AtomicLong nextUpdateAt;
+
+    private volatile double estimatedLimit;
+
+    private volatile int limit;
+
+    private volatile double longRtt;
+
+    private volatile double shortRtt;
+
+    /**
+     * 当前窗口内的并发峰值
+     */
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private int updateCount;
+
+    public GradientLimiter(GoaliasAdaptive goaliasAdaptive) {
+        this.minLimit = Math.max(1, goaliasAdaptive.minLimit());
+        this.maxLimit = Math.max(this.minLimit, goaliasAdaptive.maxLimit());
+        this.tolerance = Math.max(1.0d, goaliasAdaptive.tolerance());
+        this.windowNanos = Math.max(10, goaliasAdaptive.windowMs()) * 1_000_000L;
+        this.estimatedLimit = Math.min(maxLimit, Math.max(minLimit, goaliasAdaptive.initialLimit()));
+        this.limit = (int) estimatedLimit;
+        this.nextUpdateAt = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    /**
+     * 获取一个并发名额，成功返回开始时间(纳秒)，超过上限返回-1
+     */
+    public long tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejectCount.increment();
+                return -1L;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        int acquired = current + 1;
+        if (acquired > maxInFlight.get()) {
+            maxInFlight.accumulateAndGet(acquired, Math::max);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 正常返回，记录RT样本
+     */
+    public void onSuccess(long startNanos) {
+        long now = System.nanoTime();
+        inFlight.decrementAndGet();
+        rttSum.add(now - startNanos);
+        sampleCount.increment();
+        long next = nextUpdateAt.get();
+        if (now >= next && nextUpdateAt.compareAndSet(next, now + windowNanos)) {
+            update();
+        }
+    }
+
+    /**
+     * 异常返回，只释放名额，不计入RT
+     */
+    public void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    private void update() {
+        long samples = sampleCount.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        int peak = maxInFlight.getAndSet(inFlight.get());
+        if (samples == 0) {
+            return;
+        }
+        double rtt = (double) sum / samples;
+        shortRtt = rtt;
+
+        updateCount++;
+        if (updateCount <= WARMUP) {
+            longRtt = longRtt + (rtt - longRtt) / updateCount;
+        } else {
+            longRtt = longRtt + (rtt - longRtt) / LONG_WINDOW;
+        }
+        //长期RT明显偏高时(下游恢复)加速回落，避免上限长时间不收敛
+        if (longRtt / rtt > 2.0d) {
+            longRtt *= 0.95d;
+        }
+
+        double current = estimatedLimit;
+        //并发远未用满时RT不能反映容量，不调整上限
+        if (peak < current / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5d, Math.min(1.0d, tolerance * longRtt / rtt));
+        double newLimit = current * gradient + Math.sqrt(current);
+        newLimit = current * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        newLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        estimatedLimit = newLimit;
+        limit = (int) newLimit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 估算的排队数：在途请求中因RT膨胀而等待的部分
+     */
+    public double getQueueSize() {
+        double rtt = shortRtt;
+        if (rtt <= 0) {
+            return 0d;
+        }
+        return Math.max(0d, inFlight.get() * (1 - longRtt / rtt));
+    }
+
+    public long getRejectCount() {
+        return rejectCount.sum();
+    }
+
+    public double getLongRttMillis() {
+        return longRtt / 1_000_000d;
+    }
+
+    public double getShortRttMillis() {
+        return shortRtt / 1_000_000d;
+    }
+}
@@ -0,0 +1,34 @@
+package com.goalias.common.rateLimiter.annotation;
+
+
+import java.lang.annotation.*;
+
+/**
+ * 自适应并发限流，根据实测RT与在途请求数动态调整并发上限(Gradient算法)
+ * 超过当前上限的请求直接调用 {method}Fallback 方法
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface GoaliasAdaptive {
+
+    /**
+     * 初始并发上限
+     */
+    int initialLimit() default 20;
+
+    int minLimit() default 1;
+
+    int maxLimit() default 200;
+
+    /**
+     * RT容忍倍数，短期RT在长期RT的tolerance倍以内不收缩上限
+     */
+    double tolerance() default 1.5d;
+
+    /**
+     * 上限调整周期(毫秒)
+     */
+    int windowMs() default 1000;
+}
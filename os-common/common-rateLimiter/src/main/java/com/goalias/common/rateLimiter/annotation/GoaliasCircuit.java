@@ -0,0 +1,44 @@
+package com.goalias.common.rateLimiter.annotation;
+
+
+import com.goalias.common.rateLimiter.enums.CircuitGradeEnum;
+
+import java.lang.annotation.*;
+
+/**
+ * 熔断降级，熔断期间直接调用 {method}Fallback 方法
+ * 熔断时长结束后进入半开状态，放行一个探测请求，成功则关闭熔断，失败则重新熔断
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Inherited
+public @interface GoaliasCircuit {
+
+    CircuitGradeEnum grade();
+
+    /**
+     * 慢调用RT阈值(毫秒) / 异常比例 / 异常数，含义由grade决定
+     */
+    double count();
+
+    /**
+     * 熔断时长(秒)
+     */
+    int timeWindow();
+
+    /**
+     * 慢调用比例阈值，仅SLOW_REQUEST_RATIO有效
+     */
+    double slowRatioThreshold() default 1.0d;
+
+    /**
+     * 触发熔断的最小请求数
+     */
+    int minRequestAmount() default 5;
+
+    /**
+     * 统计时长(毫秒)
+     */
+    int statIntervalMs() default 1000;
+}
@@ -2,6 +2,7 @@ package com.goalias.common.rateLimiter.annotation;
 
 
 import com.goalias.common.rateLimiter.enums.FlowGradeEnum;
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
 
 import java.lang.annotation.*;
 
@@ -14,4 +15,25 @@ public @interface GoaliasFallback {
     FlowGradeEnum grade();
 
     int count();
+
+    /**
+     * 集群限流，需开启 goalias.cluster.enabled，count为全部实例共享的额度
+     */
+    boolean clusterMode() default false;
+
+    /**
+     * 按调用来源限流，每个来源单独计算额度，限流模式(QPS/并发)与grade一致，count仍为方法的总额度
+     * 来源额度与热点规则都以第0个入口参数计数，不能与@GoaliasHot用于同一方法，登记时抛出IllegalStateException
+     */
+    OriginTypeEnum origin() default OriginTypeEnum.NONE;
+
+    /**
+     * 每个来源的默认额度，小于等于0时与count相同
+     */
+    int originCount() default -1;
+
+    /**
+     * 指定来源的额度，格式为 来源=额度，如 {"1=100", "vip-tenant=500"}
+     */
+    String[] originQuotas() default {};
 }
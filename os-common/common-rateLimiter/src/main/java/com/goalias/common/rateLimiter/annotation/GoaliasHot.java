@@ -2,9 +2,14 @@ package com.goalias.common.rateLimiter.annotation;
 
 
 import com.goalias.common.rateLimiter.enums.FlowGradeEnum;
+import com.goalias.common.rateLimiter.hotkey.DefaultHotKeyExtractor;
+import com.goalias.common.rateLimiter.hotkey.HotKeyExtractor;
 
 import java.lang.annotation.*;
 
+/**
+ * 热点参数限流，不能与设置了origin的@GoaliasFallback用于同一方法，登记时抛出IllegalStateException
+ */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
@@ -16,4 +21,29 @@ public @interface GoaliasHot {
     int count();
 
     int duration();
+
+    /**
+     * 被限流时返回的缓存结果有效期(秒)，小于0时使用 goalias.hot-cache-seconds
+     */
+    int cacheSeconds() default -1;
+
+    /**
+     * 集群限流，需开启 goalias.cluster.enabled，count为全部实例共享的额度
+     */
+    boolean clusterMode() default false;
+
+    /**
+     * 参与热点参数计算的参数下标，为空时使用全部参数
+     */
+    int[] paramIndex() default {};
+
+    /**
+     * 热点参数的属性路径，格式为 参数下标.属性路径，如 "0.user.id"，设置后忽略paramIndex
+     */
+    String keyPath() default "";
+
+    /**
+     * 热点参数提取器
+     */
+    Class<? extends HotKeyExtractor> keyExtractor() default DefaultHotKeyExtractor.class;
 }
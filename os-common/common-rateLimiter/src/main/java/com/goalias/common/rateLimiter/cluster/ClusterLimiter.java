@@ -0,0 +1,48 @@
+package com.goalias.common.rateLimiter.cluster;
+
+import java.util.Collection;
+
+/**
+ * 集群令牌服务，负责与共享存储交互
+ * 本地预取、降级等逻辑由GoaliasClusterManager处理，实现类只需保证单次调用的原子性
+ */
+public interface ClusterLimiter {
+
+    /**
+     * 按滑动窗口申请一批QPS令牌
+     *
+     * @param key    资源key
+     * @param now    当前时间(毫秒)
+     * @param count  任意一个窗口长度内的全局额度
+     * @param batch  期望申请的令牌数
+     * @param windowSeconds 窗口长度(秒)
+     * @return 实际申请到的令牌数，0表示额度已用完
+     */
+    long acquireQps(String key, long now, int count, int batch, int windowSeconds);
+
+    /**
+     * 以租约方式申请一个并发槽位，租约到期未续期的槽位由令牌服务回收
+     *
+     * @param key    资源key
+     * @param count  全局并发上限
+     * @param holder 持有者标识，全局唯一
+     * @return 是否申请成功
+     */
+    boolean acquireConcurrency(String key, int count, String holder);
+
+    /**
+     * 为仍在执行的持有者续期
+     *
+     * @param key     资源key
+     * @param holders 持有者标识
+     */
+    void renewConcurrency(String key, Collection<String> holders);
+
+    /**
+     * 归还持有者占用的并发槽位
+     *
+     * @param key    资源key
+     * @param holder 持有者标识
+     */
+    void releaseConcurrency(String key, String holder);
+}
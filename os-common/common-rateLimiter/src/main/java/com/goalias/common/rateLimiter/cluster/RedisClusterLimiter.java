@@ -0,0 +1,116 @@
+package com.goalias.common.rateLimiter.cluster;
+
+import com.goalias.common.rateLimiter.config.GoaliasProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 基于Redis Lua脚本的集群令牌服务
+ * QPS使用滑动窗口计数：上一窗口的计数按未过去的比例折算后与当前窗口相加，避免固定窗口在边界处放行两倍额度；
+ * 一次脚本调用批量发放令牌；
+ * 并发使用ZSET记录持有者，score为租约到期时间(取Redis服务器时间，不受实例时钟偏差影响)，
+ * 申请前先清除已到期的持有者，实例宕机或漏归还的槽位最多占用一个租约时长，归还时按持有者删除
+ */
+public class RedisClusterLimiter implements ClusterLimiter {
+
+    private static final RedisScript<Long> QPS_SCRIPT = new DefaultRedisScript<>(
+            "local previous = tonumber(redis.call('GET', KEYS[2]) or '0') " +
+            "local used = tonumber(redis.call('GET', KEYS[1]) or '0') + math.floor(previous * (1000 - tonumber(ARGV[4])) / 1000) " +
+            "local grant = math.min(tonumber(ARGV[2]), tonumber(ARGV[1]) - used) " +
+            "if grant <= 0 then return 0 end " +
+            "redis.call('INCRBY', KEYS[1], grant) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+            "return grant", Long.class);
+
+    private static final String REDIS_NOW = "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) ";
+
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(REDIS_NOW +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now) " +
+            "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[1]) then return 0 end " +
+            "redis.call('ZADD', KEYS[1], now + tonumber(ARGV[2]), ARGV[3]) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "return 1", Long.class);
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(REDIS_NOW +
+            "local renewed = 0 " +
+            "for i = 2, #ARGV do " +
+            "renewed = renewed + redis.call('ZADD', KEYS[1], 'XX', 'CH', now + tonumber(ARGV[1]), ARGV[i]) " +
+            "end " +
+            "if renewed > 0 then redis.call('PEXPIRE', KEYS[1], ARGV[1]) end " +
+            "return renewed", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('ZREM', KEYS[1], ARGV[1])", Long.class);
+
+    private static final RedisSerializer<Long> RESULT_SERIALIZER = new GenericToStringSerializer<>(Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final GoaliasProperty.Cluster cluster;
+
+    public RedisClusterLimiter(StringRedisTemplate redisTemplate, GoaliasProperty.Cluster cluster) {
+        this.redisTemplate = redisTemplate;
+        this.cluster = cluster;
+    }
+
+    @Override
+    public long acquireQps(String key, long now, int count, int batch, int windowSeconds) {
+        long windowMillis = windowSeconds * 1000L;
+        long window = now / windowMillis;
+        //{}使两个窗口的key落在同一个slot，兼容Redis Cluster
+        String prefix = cluster.getKeyPrefix() + "qps:{" + key + "}:";
+        long elapsedPermille = (now % windowMillis) * 1000 / windowMillis;
+        Long granted = redisTemplate.execute(QPS_SCRIPT, StringRedisSerializer.UTF_8, RESULT_SERIALIZER,
+                Arrays.asList(prefix + window, prefix + (window - 1)),
+                String.valueOf(count), String.valueOf(batch), String.valueOf(windowMillis * 2), String.valueOf(elapsedPermille));
+        return granted == null ? 0 : granted;
+    }
+
+    @Override
+    public boolean acquireConcurrency(String key, int count, String holder) {
+        Long acquired = execute(ACQUIRE_SCRIPT, holderKey(key),
+                String.valueOf(count), String.valueOf(leaseMillis()), holder);
+        return acquired != null && acquired > 0;
+    }
+
+    @Override
+    public void renewConcurrency(String key, Collection<String> holders) {
+        if (holders.isEmpty()) {
+            return;
+        }
+        Object[] args = new Object[holders.size() + 1];
+        args[0] = String.valueOf(leaseMillis());
+        int i = 1;
+        for (String holder : holders) {
+            args[i++] = holder;
+        }
+        execute(RENEW_SCRIPT, holderKey(key), args);
+    }
+
+    @Override
+    public void releaseConcurrency(String key, String holder) {
+        execute(RELEASE_SCRIPT, holderKey(key), holder);
+    }
+
+    private String holderKey(String key) {
+        return cluster.getKeyPrefix() + "holder:" + key;
+    }
+
+    private long leaseMillis() {
+        return cluster.getConcurrencyExpireSeconds() * 1000L;
+    }
+
+    private Long execute(RedisScript<Long> script, String key, Object... args) {
+        //参数按纯字符串传递，避免模板的JSON序列化影响Lua中的tonumber
+        return redisTemplate.execute(script, StringRedisSerializer.UTF_8, RESULT_SERIALIZER, Collections.singletonList(key), args);
+    }
+}
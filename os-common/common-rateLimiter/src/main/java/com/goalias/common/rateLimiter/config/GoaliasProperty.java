@@ -1,15 +1,43 @@
 package com.goalias.common.rateLimiter.config;
 
+import com.goalias.common.core.utils.IdGenerator;
 import com.goalias.common.rateLimiter.spring.GoaliasConfigHolder;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @ConfigurationProperties(prefix = "goalias")
 public class GoaliasProperty implements InitializingBean {
     private int hotCacheSeconds = 60;
 
+    private int hotCacheSize = 10000;
+
+    /**
+     * 热点缓存未命中时，等待其他线程加载结果的最长时间(毫秒)，超时按限流处理
+     */
+    private long hotLoadWaitMillis = 3000L;
+
     private boolean enableLog = true;
 
+    /**
+     * 同一资源降级日志的最小间隔(毫秒)
+     */
+    private long blockLogIntervalMillis = 1000L;
+
+    /**
+     * 注解扫描的包前缀，为空时扫描全部bean
+     */
+    private List<String> basePackages = new ArrayList<>();
+
+    /**
+     * IdGenerator节点号(0-1023)，多实例部署时每个实例需不同，小于0时使用 -Dgoalias.id.node 或主机名散列
+     */
+    private int idNode = -1;
+
+    private Cluster cluster = new Cluster();
+
     public  int getHotCacheSeconds() {
         return hotCacheSeconds;
     }
@@ -18,6 +46,22 @@ public class GoaliasProperty implements InitializingBean {
         this.hotCacheSeconds = hotCacheSeconds;
     }
 
+    public int getHotCacheSize() {
+        return hotCacheSize;
+    }
+
+    public void setHotCacheSize(int hotCacheSize) {
+        this.hotCacheSize = hotCacheSize;
+    }
+
+    public long getHotLoadWaitMillis() {
+        return hotLoadWaitMillis;
+    }
+
+    public void setHotLoadWaitMillis(long hotLoadWaitMillis) {
+        this.hotLoadWaitMillis = hotLoadWaitMillis;
+    }
+
     public boolean isEnableLog() {
         return enableLog;
     }
@@ -26,8 +70,113 @@ public class GoaliasProperty implements InitializingBean {
         this.enableLog = enableLog;
     }
 
+    public long getBlockLogIntervalMillis() {
+        return blockLogIntervalMillis;
+    }
+
+    public void setBlockLogIntervalMillis(long blockLogIntervalMillis) {
+        this.blockLogIntervalMillis = blockLogIntervalMillis;
+    }
+
+    public List<String> getBasePackages() {
+        return basePackages;
+    }
+
+    public void setBasePackages(List<String> basePackages) {
+        this.basePackages = basePackages;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public void setCluster(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    public int getIdNode() {
+        return idNode;
+    }
+
+    public void setIdNode(int idNode) {
+        this.idNode = idNode;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         GoaliasConfigHolder.setGoaliasProperty(this);
+        if (idNode >= 0) {
+            IdGenerator.setNode(idNode);
+        }
+    }
+
+    /**
+     * 集群限流配置
+     */
+    public static class Cluster {
+        /**
+         * 是否开启集群限流
+         */
+        private boolean enabled = false;
+
+        /**
+         * QPS模式下每次从Redis预取的令牌数
+         */
+        private int prefetch = 10;
+
+        /**
+         * Redis key前缀
+         */
+        private String keyPrefix = "goalias:cluster:";
+
+        /**
+         * 并发槽位的租约时长(秒)，调用未结束时每1/3租约续期一次，实例宕机后槽位最多保留一个租约时长
+         */
+        private int concurrencyExpireSeconds = 60;
+
+        /**
+         * Redis不可用时退化为本地限流的时长(秒)
+         */
+        private int degradeSeconds = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        public void setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        public String getKeyPrefix() {
+            return keyPrefix;
+        }
+
+        public void setKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        public int getConcurrencyExpireSeconds() {
+            return concurrencyExpireSeconds;
+        }
+
+        public void setConcurrencyExpireSeconds(int concurrencyExpireSeconds) {
+            this.concurrencyExpireSeconds = concurrencyExpireSeconds;
+        }
+
+        public int getDegradeSeconds() {
+            return degradeSeconds;
+        }
+
+        public void setDegradeSeconds(int degradeSeconds) {
+            this.degradeSeconds = degradeSeconds;
+        }
     }
 }
@@ -0,0 +1,55 @@
+package com.goalias.common.rateLimiter.enums;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 被保护方法的返回类型，异步类型在结果完成时才释放Sentinel入口
+ */
+public enum AsyncTypeEnum {
+    NONE,
+    /**
+     * CompletableFuture / CompletionStage，调用时即开始执行
+     */
+    COMPLETION_STAGE,
+    /**
+     * RxJava2 Single，订阅时才执行
+     */
+    RX_SINGLE,
+    /**
+     * Reactor Mono
+     */
+    REACTOR_MONO,
+    /**
+     * Reactor Flux
+     */
+    REACTOR_FLUX;
+
+    /**
+     * 惰性类型：返回的发布者本身不含结果，每次订阅都会重新执行
+     */
+    public boolean isLazy() {
+        return this == RX_SINGLE || this == REACTOR_MONO || this == REACTOR_FLUX;
+    }
+
+    /**
+     * 按类名判断，RxJava、Reactor不在classpath时不会触发类加载
+     */
+    public static AsyncTypeEnum of(Class<?> returnType) {
+        if (CompletionStage.class.isAssignableFrom(returnType)) {
+            return COMPLETION_STAGE;
+        }
+        for (Class<?> clazz = returnType; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            switch (clazz.getName()) {
+                case "io.reactivex.Single":
+                    return RX_SINGLE;
+                case "reactor.core.publisher.Mono":
+                    return REACTOR_MONO;
+                case "reactor.core.publisher.Flux":
+                    return REACTOR_FLUX;
+                default:
+                    break;
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,32 @@
+package com.goalias.common.rateLimiter.enums;
+
+import com.alibaba.csp.sentinel.slots.block.RuleConstant;
+
+public enum CircuitGradeEnum {
+    /**
+     * 慢调用比例，count为慢调用RT阈值(毫秒)
+     */
+    SLOW_REQUEST_RATIO(RuleConstant.DEGRADE_GRADE_RT),
+    /**
+     * 异常比例，count为比例阈值[0.0, 1.0]
+     */
+    ERROR_RATIO(RuleConstant.DEGRADE_GRADE_EXCEPTION_RATIO),
+    /**
+     * 异常数，count为统计窗口内的异常数
+     */
+    ERROR_COUNT(RuleConstant.DEGRADE_GRADE_EXCEPTION_COUNT);
+
+    private int grade;
+
+    CircuitGradeEnum(int grade) {
+        this.grade = grade;
+    }
+
+    public int getGrade() {
+        return grade;
+    }
+
+    public void setGrade(int grade) {
+        this.grade = grade;
+    }
+}
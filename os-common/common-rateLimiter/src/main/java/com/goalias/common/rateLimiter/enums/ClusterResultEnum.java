@@ -0,0 +1,19 @@
+package com.goalias.common.rateLimiter.enums;
+
+/**
+ * 集群限流结果
+ */
+public enum ClusterResultEnum {
+    /**
+     * 通过，或未开启/已降级为本地限流
+     */
+    PASS,
+    /**
+     * 通过并占用了并发槽位，调用结束后需要归还
+     */
+    HOLD,
+    /**
+     * 集群额度已用完
+     */
+    BLOCK
+}
@@ -2,5 +2,7 @@ package com.goalias.common.rateLimiter.enums;
 
 public enum GoaliasStrategyEnum {
     FALLBACK,
-    HOT_METHOD
+    HOT_METHOD,
+    CIRCUIT,
+    ADAPTIVE
 }
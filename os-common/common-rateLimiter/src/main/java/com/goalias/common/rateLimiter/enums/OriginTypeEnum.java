@@ -0,0 +1,20 @@
+package com.goalias.common.rateLimiter.enums;
+
+/**
+ * 调用来源，按来源分别计算额度
+ */
+public enum OriginTypeEnum {
+    NONE,
+    /**
+     * 登录用户ID
+     */
+    USER,
+    /**
+     * 租户ID
+     */
+    TENANT,
+    /**
+     * 客户端IP
+     */
+    IP
+}
@@ -0,0 +1,89 @@
+package com.goalias.common.rateLimiter.hotkey;
+
+import cn.hutool.core.bean.BeanPath;
+import cn.hutool.core.util.StrUtil;
+import com.goalias.common.rateLimiter.annotation.GoaliasHot;
+import com.goalias.common.rateLimiter.util.KeyHashUtil;
+
+import java.lang.reflect.Method;
+
+/**
+ * 默认热点参数提取器
+ * 单个字符串/基本类型参数直接作为热点参数，多个参数或复杂对象时计算64位哈希
+ */
+public class DefaultHotKeyExtractor implements HotKeyExtractor {
+
+    private static final String EMPTY_KEY = "";
+
+    /**
+     * 单个null参数的热点参数，与空字符串参数区分
+     */
+    private static final Long NULL_KEY = KeyHashUtil.finish(KeyHashUtil.hash(KeyHashUtil.SEED, null));
+
+    private int[] paramIndex;
+
+    private int pathIndex = -1;
+
+    private BeanPath beanPath;
+
+    @Override
+    public void init(Method method, GoaliasHot goaliasHot) {
+        if (StrUtil.isNotBlank(goaliasHot.keyPath())) {
+            String keyPath = goaliasHot.keyPath();
+            int dot = keyPath.indexOf('.');
+            pathIndex = Integer.parseInt(dot < 0 ? keyPath : keyPath.substring(0, dot));
+            beanPath = dot < 0 ? null : BeanPath.create(keyPath.substring(dot + 1));
+            checkIndex(method, pathIndex);
+        } else if (goaliasHot.paramIndex().length > 0) {
+            paramIndex = goaliasHot.paramIndex();
+            for (int index : paramIndex) {
+                checkIndex(method, index);
+            }
+        }
+    }
+
+    @Override
+    public Object extract(Object[] args) {
+        if (pathIndex >= 0) {
+            Object value = beanPath == null ? args[pathIndex] : beanPath.get(args[pathIndex]);
+            return toKey(value);
+        }
+        if (paramIndex != null) {
+            if (paramIndex.length == 1) {
+                return toKey(args[paramIndex[0]]);
+            }
+            long hash = KeyHashUtil.SEED;
+            for (int index : paramIndex) {
+                hash = KeyHashUtil.hash(hash, args[index]);
+            }
+            return KeyHashUtil.finish(hash);
+        }
+        if (args == null || args.length == 0) {
+            return EMPTY_KEY;
+        }
+        if (args.length == 1) {
+            return toKey(args[0]);
+        }
+        long hash = KeyHashUtil.SEED;
+        for (Object arg : args) {
+            hash = KeyHashUtil.hash(hash, arg);
+        }
+        return KeyHashUtil.finish(hash);
+    }
+
+    private static Object toKey(Object value) {
+        if (value == null) {
+            return NULL_KEY;
+        }
+        if (KeyHashUtil.isSimple(value)) {
+            return value;
+        }
+        return KeyHashUtil.finish(KeyHashUtil.hash(KeyHashUtil.SEED, value));
+    }
+
+    private static void checkIndex(Method method, int index) {
+        if (index < 0 || index >= method.getParameterCount()) {
+            throw new IllegalArgumentException(StrUtil.format("[Goalias] Hot param index [{}] out of range in method [{}]", index, method.getName()));
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.goalias.common.rateLimiter.hotkey;
+
+import com.goalias.common.rateLimiter.annotation.GoaliasHot;
+
+import java.lang.reflect.Method;
+
+/**
+ * 热点参数提取器
+ * 每个热点方法在扫描时创建一个实例并调用init，调用时只执行extract
+ */
+public interface HotKeyExtractor {
+
+    default void init(Method method, GoaliasHot goaliasHot) {
+    }
+
+    /**
+     * 从方法参数中提取热点参数，返回值直接作为Sentinel的热点参数
+     *
+     * @param args 方法参数
+     * @return 热点参数，不能为null
+     */
+    Object extract(Object[] args);
+}
@@ -0,0 +1,35 @@
+package com.goalias.common.rateLimiter.manager;
+
+import com.goalias.common.rateLimiter.adaptive.GradientLimiter;
+import com.goalias.common.rateLimiter.annotation.GoaliasAdaptive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 自适应并发限流器，每个资源一个
+ */
+public class GoaliasAdaptiveManager {
+    private static final Logger logger = LoggerFactory.getLogger(GoaliasAdaptiveManager.class);
+
+    private static final Map<String, GradientLimiter> limiterMap = new ConcurrentHashMap<>();
+
+    public static void registerLimiter(GoaliasAdaptive goaliasAdaptive, String resourceName) {
+        limiterMap.put(resourceName, new GradientLimiter(goaliasAdaptive));
+        logger.info("[Goalias] Add Adaptive Limiter [{}]", resourceName);
+    }
+
+    public static GradientLimiter getLimiter(String resourceName) {
+        return limiterMap.get(resourceName);
+    }
+
+    /**
+     * 供监控导出当前上限与排队情况
+     */
+    public static Map<String, GradientLimiter> getLimiters() {
+        return Collections.unmodifiableMap(limiterMap);
+    }
+}
@@ -0,0 +1,330 @@
+package com.goalias.common.rateLimiter.manager;
+
+import com.alibaba.csp.sentinel.slots.block.RuleConstant;
+import com.alibaba.csp.sentinel.slots.block.flow.FlowRule;
+import com.alibaba.csp.sentinel.slots.block.flow.param.ParamFlowRule;
+import com.goalias.common.rateLimiter.cluster.ClusterLimiter;
+import com.goalias.common.rateLimiter.enums.ClusterResultEnum;
+import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 集群限流
+ * QPS额度按批从集群令牌服务预取到本地消费，大部分调用不访问Redis，预取时不持有锁且同一个key只有一个线程访问Redis；
+ * 并发模式每次调用以唯一持有者申请租约，调用未结束时后台按1/3租约周期续期，结束时按持有者归还；
+ * 令牌服务异常时在degradeSeconds内退化为本地Sentinel规则
+ */
+public class GoaliasClusterManager {
+    private static final Logger logger = LoggerFactory.getLogger(GoaliasClusterManager.class);
+
+    /**
+     * 本地额度表的上限，超过后清理空闲项(无并发持有、无进行中的预取)；
+     * 被清理项中未用完的QPS令牌作废，只会少放行
+     */
+    private static final int MAX_QUOTA_SIZE = 10000;
+
+    /**
+     * 持有者标识前缀，每个实例随机生成，避免依赖节点号配置
+     */
+    private static final String HOLDER_PREFIX = UUID.randomUUID().toString().replace("-", "") + ":";
+
+    private static final AtomicLong holderSequence = new AtomicLong();
+
+    private static final Map<String, LocalQuota> quotaMap = new ConcurrentHashMap<>();
+
+    private static volatile ClusterLimiter clusterLimiter;
+
+    private static volatile int prefetch = 10;
+
+    private static volatile long degradeMillis = 10000L;
+
+    private static volatile long degradeUntil = 0L;
+
+    private static ScheduledExecutorService renewExecutor;
+
+    public static synchronized void setClusterLimiter(ClusterLimiter limiter, int prefetchSize, int degradeSeconds, int leaseSeconds) {
+        clusterLimiter = limiter;
+        prefetch = Math.max(1, prefetchSize);
+        degradeMillis = 1000L * degradeSeconds;
+        if (renewExecutor == null) {
+            renewExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "goalias-cluster-renew");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1L, 1000L * leaseSeconds / 3);
+            renewExecutor.scheduleWithFixedDelay(GoaliasClusterManager::renew, period, period, TimeUnit.MILLISECONDS);
+        }
+        logger.info("[Goalias] Cluster limiter enabled [{}]", limiter.getClass().getSimpleName());
+    }
+
+    public static boolean isAvailable() {
+        return clusterLimiter != null && System.currentTimeMillis() >= degradeUntil;
+    }
+
+    public static ClusterResultEnum tryAcquire(GoaliasMethodDescriptor descriptor, Object hotParam) {
+        if (!descriptor.isClusterMode() || !isAvailable()) {
+            return ClusterResultEnum.PASS;
+        }
+        String resourceName = descriptor.getResourceName();
+        String key;
+        int grade;
+        int count;
+        int windowSeconds;
+        if (descriptor.getStrategy() == GoaliasStrategyEnum.HOT_METHOD) {
+            ParamFlowRule rule = GoaliasRuleManager.getHotRule(resourceName);
+            if (rule == null) {
+                return ClusterResultEnum.PASS;
+            }
+            key = resourceName + "#" + hotParam;
+            grade = rule.getGrade();
+            count = (int) rule.getCount();
+            windowSeconds = (int) Math.max(1, rule.getDurationInSec());
+        } else {
+            FlowRule rule = GoaliasRuleManager.getFallBackRule(resourceName);
+            if (rule == null) {
+                return ClusterResultEnum.PASS;
+            }
+            key = resourceName;
+            grade = rule.getGrade();
+            count = (int) rule.getCount();
+            windowSeconds = 1;
+        }
+
+        try {
+            if (grade == RuleConstant.FLOW_GRADE_THREAD) {
+                while (true) {
+                    //额度项在加入前被清理时重新获取
+                    Boolean acquired = getQuota(key).acquireConcurrency(key, count);
+                    if (acquired != null) {
+                        return acquired ? ClusterResultEnum.HOLD : ClusterResultEnum.BLOCK;
+                    }
+                }
+            }
+            return getQuota(key).acquireQps(key, count, windowSeconds) ? ClusterResultEnum.PASS : ClusterResultEnum.BLOCK;
+        } catch (Exception e) {
+            degrade(e);
+            return ClusterResultEnum.PASS;
+        }
+    }
+
+    public static void release(GoaliasMethodDescriptor descriptor, Object hotParam) {
+        String key = descriptor.getStrategy() == GoaliasStrategyEnum.HOT_METHOD
+                ? descriptor.getResourceName() + "#" + hotParam : descriptor.getResourceName();
+        //持有期间额度项不会被清理
+        LocalQuota quota = quotaMap.get(key);
+        if (quota == null) {
+            return;
+        }
+        String holder = quota.holders.poll();
+        if (holder == null) {
+            return;
+        }
+        quota.inFlight.decrementAndGet();
+        try {
+            clusterLimiter.releaseConcurrency(key, holder);
+        } catch (Exception e) {
+            //未归还的槽位在租约到期后由令牌服务回收
+            degrade(e);
+        }
+    }
+
+    private static LocalQuota getQuota(String key) {
+        LocalQuota quota = quotaMap.get(key);
+        if (quota == null) {
+            if (quotaMap.size() >= MAX_QUOTA_SIZE) {
+                evictIdle();
+            }
+            quota = quotaMap.computeIfAbsent(key, k -> new LocalQuota());
+        }
+        return quota;
+    }
+
+    private static void evictIdle() {
+        for (Map.Entry<String, LocalQuota> entry : quotaMap.entrySet()) {
+            if (entry.getValue().markEvicted()) {
+                quotaMap.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 为本实例仍在执行的调用续期，续期失败时槽位在租约到期后被回收，只会少算并发
+     */
+    private static void renew() {
+        ClusterLimiter limiter = clusterLimiter;
+        if (limiter == null || !isAvailable()) {
+            return;
+        }
+        for (Map.Entry<String, LocalQuota> entry : quotaMap.entrySet()) {
+            Queue<String> holders = entry.getValue().holders;
+            if (holders.isEmpty()) {
+                continue;
+            }
+            try {
+                limiter.renewConcurrency(entry.getKey(), new ArrayList<>(holders));
+            } catch (Exception e) {
+                degrade(e);
+                return;
+            }
+        }
+    }
+
+    private static void degrade(Exception e) {
+        long now = System.currentTimeMillis();
+        if (now >= degradeUntil) {
+            logger.warn("[Goalias] Cluster limiter unavailable, degrade to local rules for [{}]ms: {}", degradeMillis, e.getMessage());
+        }
+        degradeUntil = now + degradeMillis;
+    }
+
+    private static final class LocalQuota {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * 本实例持有的并发槽位，同一个key的持有者可互换，归还时任取一个
+         */
+        private final Queue<String> holders = new ConcurrentLinkedQueue<>();
+
+        /**
+         * 已从额度表移除，之后的申请需重新获取额度项
+         */
+        private boolean evicted;
+
+        /**
+         * 本地批次所属的窗口，窗口切换后未用完的令牌作废
+         */
+        private long window = -1L;
+
+        private long remaining;
+
+        /**
+         * 集群额度用完后，在此时间之前不再访问Redis
+         */
+        private long retryAt;
+
+        /**
+         * 正在进行的集群预取，同一时刻只有一个线程访问Redis，其余线程等待其结果
+         */
+        private CompletableFuture<Void> refilling;
+
+        private boolean acquireQps(String key, int count, int windowSeconds) {
+            long windowMillis = 1000L * windowSeconds;
+            while (true) {
+                long now = System.currentTimeMillis();
+                long currentWindow = now / windowMillis;
+                CompletableFuture<Void> refill;
+                boolean owner = false;
+                synchronized (this) {
+                    //已移除的额度项仍可消费剩余令牌，预取到的令牌随之作废，只会少放行
+                    if (currentWindow != window) {
+                        window = currentWindow;
+                        remaining = 0;
+                    }
+                    if (remaining > 0) {
+                        remaining--;
+                        return true;
+                    }
+                    //滑动窗口的额度随时间逐步释放，被拒后按窗口的1/20退避
+                    if (now < retryAt) {
+                        return false;
+                    }
+                    if (refilling == null) {
+                        refilling = new CompletableFuture<>();
+                        owner = true;
+                    }
+                    refill = refilling;
+                }
+                if (!owner) {
+                    awaitRefill(refill);
+                    continue;
+                }
+                //Redis调用不持有锁
+                long granted;
+                try {
+                    granted = clusterLimiter.acquireQps(key, now, count, Math.min(prefetch, count), windowSeconds);
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        refilling = null;
+                    }
+                    refill.completeExceptionally(e);
+                    throw e;
+                }
+                synchronized (this) {
+                    refilling = null;
+                    if (granted <= 0) {
+                        retryAt = now + Math.max(1L, windowMillis / 20);
+                    } else if (window == currentWindow) {
+                        remaining += granted - 1;
+                    }
+                }
+                refill.complete(null);
+                return granted > 0;
+            }
+        }
+
+        private static void awaitRefill(CompletableFuture<Void> refill) {
+            try {
+                refill.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+            }
+        }
+
+        private synchronized boolean markEvicted() {
+            if (inFlight.get() > 0 || refilling != null) {
+                return false;
+            }
+            evicted = true;
+            return true;
+        }
+
+        /**
+         * @return 是否申请成功，额度项已被移除时返回null
+         */
+        private Boolean acquireConcurrency(String key, int count) {
+            synchronized (this) {
+                if (evicted) {
+                    return null;
+                }
+                //本实例的并发已达到全局上限时无需访问Redis
+                if (inFlight.incrementAndGet() > count) {
+                    inFlight.decrementAndGet();
+                    return false;
+                }
+            }
+            String holder = HOLDER_PREFIX + holderSequence.incrementAndGet();
+            boolean acquired;
+            try {
+                acquired = clusterLimiter.acquireConcurrency(key, count, holder);
+            } catch (RuntimeException e) {
+                inFlight.decrementAndGet();
+                throw e;
+            }
+            if (acquired) {
+                holders.offer(holder);
+            } else {
+                inFlight.decrementAndGet();
+            }
+            return acquired;
+        }
+    }
+}
@@ -1,26 +1,55 @@
 package com.goalias.common.rateLimiter.manager;
 
-import com.alibaba.csp.sentinel.util.function.Tuple2;
-import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
-import java.lang.annotation.Annotation;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * 被保护方法的描述表
+ * 扫描期间写入暂存表，扫描完成后freeze发布为不可变表；之后的登记(懒加载bean)以写时复制方式整体替换
+ * 读取只是一次volatile字段加载，不加锁
+ */
 public class GoaliasMethodManager {
     private static final Logger log = LoggerFactory.getLogger(GoaliasMethodManager.class);
 
-    private static final Map<String, Tuple2<GoaliasStrategyEnum, Annotation>> goaliasMethodMap = new HashMap<>();
+    private static final Map<String, GoaliasMethodDescriptor> pendingMap = new HashMap<>();
 
-    public static void addGoaliasMethod(String methodName, Tuple2<GoaliasStrategyEnum, Annotation> tuple2) {
-            log.info("[GOALIAS] Register goalias method:[{}{}]",tuple2.r1.name(),methodName);
-            goaliasMethodMap.put(methodName,tuple2);
+    private static volatile Map<String, GoaliasMethodDescriptor> goaliasMethodMap = Collections.emptyMap();
+
+    private static boolean frozen = false;
+
+    public static synchronized void addGoaliasMethod(GoaliasMethodDescriptor descriptor) {
+        log.info("[GOALIAS] Register goalias method:[{}{}]",descriptor.getStrategy().name(),descriptor.getResourceName());
+        if (frozen){
+            Map<String, GoaliasMethodDescriptor> copy = new HashMap<>(goaliasMethodMap);
+            copy.put(descriptor.getResourceName(), descriptor);
+            goaliasMethodMap = Collections.unmodifiableMap(copy);
+        }else{
+            pendingMap.put(descriptor.getResourceName(), descriptor);
+        }
+    }
+
+    /**
+     * 扫描完成后发布描述表
+     */
+    public static synchronized void freeze() {
+        if (frozen){
+            return;
+        }
+        Map<String, GoaliasMethodDescriptor> copy = new HashMap<>(goaliasMethodMap);
+        copy.putAll(pendingMap);
+        pendingMap.clear();
+        goaliasMethodMap = Collections.unmodifiableMap(copy);
+        frozen = true;
+        log.info("[GOALIAS] Freeze goalias method table, size:[{}]", copy.size());
     }
 
-    public static Tuple2<GoaliasStrategyEnum, Annotation> getGoaliasMethod(String methodName) {
+    public static GoaliasMethodDescriptor getGoaliasMethod(String methodName) {
         return goaliasMethodMap.get(methodName);
     }
 
@@ -28,4 +57,8 @@ public class GoaliasMethodManager {
         return goaliasMethodMap.containsKey(methodName);
     }
 
+    public static Map<String, GoaliasMethodDescriptor> getGoaliasMethods() {
+        return goaliasMethodMap;
+    }
+
 }
@@ -0,0 +1,71 @@
+package com.goalias.common.rateLimiter.manager;
+
+import com.goalias.common.rateLimiter.adaptive.GradientLimiter;
+import com.goalias.common.rateLimiter.metrics.GoaliasResourceStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 资源统计表，监控实现通过addListener绑定已有及之后登记的资源
+ */
+public class GoaliasMetricsManager {
+
+    private static final Map<String, GoaliasResourceStats> statsMap = new ConcurrentHashMap<>();
+
+    private static final List<Consumer<GoaliasResourceStats>> listeners = new ArrayList<>();
+
+    public static synchronized GoaliasResourceStats register(String resourceName, String strategy) {
+        GoaliasResourceStats stats = statsMap.get(resourceName);
+        if (stats == null) {
+            stats = new GoaliasResourceStats(resourceName, strategy);
+            statsMap.put(resourceName, stats);
+            for (Consumer<GoaliasResourceStats> listener : listeners) {
+                listener.accept(stats);
+            }
+        }
+        return stats;
+    }
+
+    public static synchronized void addListener(Consumer<GoaliasResourceStats> listener) {
+        listeners.add(listener);
+        statsMap.values().forEach(listener);
+    }
+
+    public static GoaliasResourceStats getStats(String resourceName) {
+        return statsMap.get(resourceName);
+    }
+
+    public static Map<String, GoaliasResourceStats> getAllStats() {
+        return Collections.unmodifiableMap(statsMap);
+    }
+
+    public static Map<String, Object> snapshot(String resourceName) {
+        GoaliasResourceStats stats = statsMap.get(resourceName);
+        if (stats == null) {
+            return null;
+        }
+        Map<String, Object> map = stats.snapshot();
+        GradientLimiter limiter = GoaliasAdaptiveManager.getLimiter(resourceName);
+        if (limiter != null) {
+            map.put("adaptiveLimit", limiter.getLimit());
+            map.put("adaptiveInFlight", limiter.getInFlight());
+            map.put("adaptiveQueueSize", limiter.getQueueSize());
+            map.put("adaptiveRejectCount", limiter.getRejectCount());
+        }
+        return map;
+    }
+
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (String resourceName : statsMap.keySet()) {
+            map.put(resourceName, snapshot(resourceName));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,35 @@
+package com.goalias.common.rateLimiter.manager;
+
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
+import com.goalias.common.rateLimiter.origin.OriginResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+//将OriginTypeEnum和来源解析器联系起来，同GoaliasStrategyManager按序号存放
+public class GoaliasOriginManager {
+    private static final Logger logger = LoggerFactory.getLogger(GoaliasOriginManager.class);
+
+    private static volatile OriginResolver[] resolvers = new OriginResolver[OriginTypeEnum.values().length];
+
+    public static synchronized void addResolver(OriginResolver resolver){
+        OriginResolver[] copy = resolvers.clone();
+        copy[resolver.getType().ordinal()] = resolver;
+        resolvers = copy;
+        logger.info("[Goalias] Add Origin Resolver [{}]", resolver.getType());
+    }
+
+    /**
+     * 解析当前调用来源，没有对应解析器或解析失败时返回null
+     */
+    public static String resolve(OriginTypeEnum type){
+        OriginResolver resolver = resolvers[type.ordinal()];
+        if (resolver == null){
+            return null;
+        }
+        try {
+            return resolver.resolve();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -1,42 +1,270 @@
 package com.goalias.common.rateLimiter.manager;
 
-import cn.hutool.core.collection.ListUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.csp.sentinel.slots.block.RuleConstant;
+import com.alibaba.csp.sentinel.slots.block.degrade.DegradeRule;
+import com.alibaba.csp.sentinel.slots.block.degrade.DegradeRuleManager;
 import com.alibaba.csp.sentinel.slots.block.flow.FlowRule;
 import com.alibaba.csp.sentinel.slots.block.flow.FlowRuleManager;
+import com.alibaba.csp.sentinel.slots.block.flow.param.ParamFlowItem;
 import com.alibaba.csp.sentinel.slots.block.flow.param.ParamFlowRule;
 import com.alibaba.csp.sentinel.slots.block.flow.param.ParamFlowRuleManager;
+import com.goalias.common.rateLimiter.annotation.GoaliasCircuit;
 import com.goalias.common.rateLimiter.annotation.GoaliasFallback;
 import com.goalias.common.rateLimiter.annotation.GoaliasHot;
+import com.goalias.common.rateLimiter.enums.CircuitGradeEnum;
+import com.goalias.common.rateLimiter.enums.FlowGradeEnum;
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 规则注册表
+ * 扫描阶段只登记规则，容器启动完成后统一加载到Sentinel；运行期通过update/remove热更新
+ * 写操作串行并以写时复制方式发布新表，读操作不加锁
+ */
 public class GoaliasRuleManager {
     private static final Logger logger = LoggerFactory.getLogger(GoaliasRuleManager.class);
 
+    private static volatile Map<String, FlowRule> fallBackRuleMap = Collections.emptyMap();
+
+    private static volatile Map<String, ParamFlowRule> hotRuleMap = Collections.emptyMap();
+
+    private static volatile Map<String, ParamFlowRule> originRuleMap = Collections.emptyMap();
+
+    private static volatile Map<String, DegradeRule> circuitRuleMap = Collections.emptyMap();
+
+    private static volatile boolean loaded = false;
+
     public static void registerFallBackRule(GoaliasFallback goaliasFallback, String resourceName){
+        putFallBackRule(buildFallBackRule(resourceName, goaliasFallback.grade(), goaliasFallback.count()));
+        if (goaliasFallback.origin() != OriginTypeEnum.NONE){
+            int originCount = goaliasFallback.originCount() > 0 ? goaliasFallback.originCount() : goaliasFallback.count();
+            putOriginRule(buildOriginRule(resourceName, goaliasFallback.grade().getGrade(), originCount, parseOriginQuotas(goaliasFallback.originQuotas())));
+        }
+    }
+
+    public static void registerHotRule(GoaliasHot goaliasHot, String resourceName){
+        putHotRule(buildHotRule(resourceName, goaliasHot.grade(), goaliasHot.count(), goaliasHot.duration()));
+    }
+
+    public static void registerCircuitRule(GoaliasCircuit goaliasCircuit, String resourceName){
+        putCircuitRule(buildCircuitRule(resourceName, goaliasCircuit.grade(), goaliasCircuit.count(), goaliasCircuit.timeWindow(),
+                goaliasCircuit.slowRatioThreshold(), goaliasCircuit.minRequestAmount(), goaliasCircuit.statIntervalMs()));
+    }
+
+    /**
+     * 将注册表中的全部规则一次性加载到Sentinel
+     */
+    public static synchronized void loadRules(){
+        List<FlowRule> fallBackRules = new ArrayList<>(fallBackRuleMap.values());
+        List<ParamFlowRule> hotRules = new ArrayList<>(hotRuleMap.values());
+        //来源额度以来源为参数的热点规则实现，两者都取第0个入口参数，登记时已保证同一资源不会同时存在
+        hotRules.addAll(originRuleMap.values());
+        List<DegradeRule> circuitRules = new ArrayList<>(circuitRuleMap.values());
+        FlowRuleManager.loadRules(fallBackRules);
+        ParamFlowRuleManager.loadRules(hotRules);
+        DegradeRuleManager.loadRules(circuitRules);
+        loaded = true;
+        logger.info("[Goalias] Load rules, fallback: [{}], hot: [{}], origin: [{}], circuit: [{}]",
+                fallBackRules.size(), hotRuleMap.size(), originRuleMap.size(), circuitRules.size());
+    }
+
+    /**
+     * 热更新降级规则
+     */
+    public static void updateFallBackRule(String resourceName, FlowGradeEnum grade, double count){
+        putFallBackRule(buildFallBackRule(resourceName, grade, count));
+    }
+
+    /**
+     * 热更新热点规则
+     *
+     * @throws IllegalStateException 资源已有来源额度
+     */
+    public static void updateHotRule(String resourceName, FlowGradeEnum grade, double count, int durationInSec){
+        putHotRule(buildHotRule(resourceName, grade, count, durationInSec));
+    }
+
+    /**
+     * 热更新来源额度，限流模式(QPS/并发)与资源的降级规则一致
+     *
+     * @param originCount  每个来源的默认额度
+     * @param originQuotas 指定来源的额度
+     * @throws IllegalStateException 资源已有热点规则
+     */
+    public static void updateOriginRule(String resourceName, int originCount, Map<String, Integer> originQuotas){
+        FlowRule base = fallBackRuleMap.get(resourceName);
+        int grade = base == null ? RuleConstant.FLOW_GRADE_QPS : base.getGrade();
+        putOriginRule(buildOriginRule(resourceName, grade, originCount, originQuotas));
+    }
+
+    /**
+     * 热更新熔断规则
+     */
+    public static void updateCircuitRule(String resourceName, CircuitGradeEnum grade, double count, int timeWindow,
+                                         double slowRatioThreshold, int minRequestAmount, int statIntervalMs){
+        putCircuitRule(buildCircuitRule(resourceName, grade, count, timeWindow, slowRatioThreshold, minRequestAmount, statIntervalMs));
+    }
+
+    public static synchronized void removeRule(String resourceName){
+        boolean removed = fallBackRuleMap.containsKey(resourceName) || hotRuleMap.containsKey(resourceName)
+                || originRuleMap.containsKey(resourceName) || circuitRuleMap.containsKey(resourceName);
+        fallBackRuleMap = without(fallBackRuleMap, resourceName);
+        hotRuleMap = without(hotRuleMap, resourceName);
+        originRuleMap = without(originRuleMap, resourceName);
+        circuitRuleMap = without(circuitRuleMap, resourceName);
+        if (removed && loaded){
+            loadRules();
+        }
+    }
+
+    public static FlowRule getFallBackRule(String resourceName){
+        return fallBackRuleMap.get(resourceName);
+    }
+
+    public static ParamFlowRule getHotRule(String resourceName){
+        return hotRuleMap.get(resourceName);
+    }
+
+    public static ParamFlowRule getOriginRule(String resourceName){
+        return originRuleMap.get(resourceName);
+    }
+
+    public static DegradeRule getCircuitRule(String resourceName){
+        return circuitRuleMap.get(resourceName);
+    }
+
+    private static synchronized void putFallBackRule(FlowRule rule){
+        FlowRule old = fallBackRuleMap.get(rule.getResource());
+        fallBackRuleMap = with(fallBackRuleMap, rule.getResource(), rule);
+        logger.info("[Goalias] Add Fallback Rule [{}]", rule.getResource());
+        //来源额度跟随降级规则的限流模式
+        ParamFlowRule origin = originRuleMap.get(rule.getResource());
+        if (origin != null && origin.getGrade() != rule.getGrade()){
+            ParamFlowRule copy = buildOriginRule(rule.getResource(), rule.getGrade(), (int) origin.getCount(), Collections.emptyMap());
+            copy.setParamFlowItemList(origin.getParamFlowItemList());
+            originRuleMap = with(originRuleMap, rule.getResource(), copy);
+        }
+        //启动完成后才登记的规则(懒加载bean或热更新)需要立即生效
+        if (loaded && !rule.equals(old)){
+            loadRules();
+        }
+    }
+
+    private static synchronized void putHotRule(ParamFlowRule rule){
+        checkConflict(rule.getResource(), originRuleMap, "origin");
+        ParamFlowRule old = hotRuleMap.get(rule.getResource());
+        hotRuleMap = with(hotRuleMap, rule.getResource(), rule);
+        logger.info("[Goalias] Add Hot Rule [{}]", rule.getResource());
+        if (loaded && !rule.equals(old)){
+            loadRules();
+        }
+    }
+
+    private static synchronized void putOriginRule(ParamFlowRule rule){
+        checkConflict(rule.getResource(), hotRuleMap, "hot");
+        ParamFlowRule old = originRuleMap.get(rule.getResource());
+        originRuleMap = with(originRuleMap, rule.getResource(), rule);
+        logger.info("[Goalias] Add Origin Rule [{}]", rule.getResource());
+        if (loaded && !rule.equals(old)){
+            loadRules();
+        }
+    }
+
+    private static synchronized void putCircuitRule(DegradeRule rule){
+        DegradeRule old = circuitRuleMap.get(rule.getResource());
+        circuitRuleMap = with(circuitRuleMap, rule.getResource(), rule);
+        logger.info("[Goalias] Add Circuit Rule [{}]", rule.getResource());
+        if (loaded && !rule.equals(old)){
+            loadRules();
+        }
+    }
+
+    /**
+     * 热点规则与来源额度都以第0个入口参数计数，同一资源同时存在时会互相按对方的参数限流，
+     * 因此putHotRule/putOriginRule遇到对方已登记时抛出IllegalStateException，注解登记时会中断启动
+     */
+    private static void checkConflict(String resourceName, Map<String, ParamFlowRule> other, String otherType){
+        if (other.containsKey(resourceName)){
+            throw new IllegalStateException(StrUtil.format("[Goalias] Resource [{}] already has a {} rule, hot rule and origin quota can not coexist", resourceName, otherType));
+        }
+    }
+
+    private static <R> Map<String, R> with(Map<String, R> map, String resourceName, R rule){
+        Map<String, R> copy = new HashMap<>(map);
+        copy.put(resourceName, rule);
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static <R> Map<String, R> without(Map<String, R> map, String resourceName){
+        if (!map.containsKey(resourceName)){
+            return map;
+        }
+        Map<String, R> copy = new HashMap<>(map);
+        copy.remove(resourceName);
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static FlowRule buildFallBackRule(String resourceName, FlowGradeEnum grade, double count){
         FlowRule rule = new FlowRule();
         rule.setResource(resourceName);
-        rule.setGrade(goaliasFallback.grade().getGrade());//QPS or Thread
-        rule.setCount(goaliasFallback.count());
+        rule.setGrade(grade.getGrade());//QPS or Thread
+        rule.setCount(count);
         rule.setLimitApp("default");
-
-        FlowRuleManager.loadRules(ListUtil.toList(rule));
-        logger.info("[Goalias] Add Fallback Rule [{}]", resourceName);
+        return rule;
     }
 
-    public static void registerHotRule(GoaliasHot goaliasHot, String resourceKey){
-
-        if (!ParamFlowRuleManager.hasRules(resourceKey)){
-            ParamFlowRule rule = new ParamFlowRule();
+    private static ParamFlowRule buildHotRule(String resourceName, FlowGradeEnum grade, double count, int durationInSec){
+        ParamFlowRule rule = new ParamFlowRule();
+        rule.setResource(resourceName);
+        rule.setGrade(grade.getGrade());
+        rule.setCount(count);
+        rule.setDurationInSec(durationInSec);
+        rule.setParamIdx(0);
+        return rule;
+    }
 
-            rule.setResource(resourceKey);
-            rule.setGrade(goaliasHot.grade().getGrade());
-            rule.setCount(goaliasHot.count());
-            rule.setDurationInSec(goaliasHot.duration());
-            rule.setParamIdx(0);
+    private static ParamFlowRule buildOriginRule(String resourceName, int grade, int originCount, Map<String, Integer> originQuotas){
+        ParamFlowRule rule = new ParamFlowRule();
+        rule.setResource(resourceName);
+        rule.setGrade(grade);
+        rule.setCount(originCount);
+        rule.setDurationInSec(1);
+        rule.setParamIdx(0);
+        List<ParamFlowItem> items = new ArrayList<>(originQuotas.size());
+        originQuotas.forEach((origin, count) -> items.add(new ParamFlowItem(origin, count, String.class.getName())));
+        rule.setParamFlowItemList(items);
+        return rule;
+    }
 
-            ParamFlowRuleManager.loadRules(ListUtil.toList(rule));
-            logger.info("[Goalias] Add Hot Rule [{}]", rule.getResource());
+    private static Map<String, Integer> parseOriginQuotas(String[] originQuotas){
+        Map<String, Integer> quotas = new HashMap<>(originQuotas.length);
+        for (String quota : originQuotas){
+            int idx = quota.lastIndexOf('=');
+            if (idx <= 0){
+                throw new IllegalArgumentException(StrUtil.format("[Goalias] Illegal origin quota [{}], expect origin=count", quota));
+            }
+            quotas.put(quota.substring(0, idx).trim(), Integer.parseInt(quota.substring(idx + 1).trim()));
         }
+        return quotas;
+    }
+
+    private static DegradeRule buildCircuitRule(String resourceName, CircuitGradeEnum grade, double count, int timeWindow,
+                                                double slowRatioThreshold, int minRequestAmount, int statIntervalMs){
+        DegradeRule rule = new DegradeRule(resourceName);
+        rule.setGrade(grade.getGrade());
+        rule.setCount(count);
+        rule.setTimeWindow(timeWindow);
+        rule.setSlowRatioThreshold(slowRatioThreshold);
+        rule.setMinRequestAmount(minRequestAmount);
+        rule.setStatIntervalMs(statIntervalMs);
+        return rule;
     }
 }
@@ -5,20 +5,20 @@ package com.goalias.common.rateLimiter.manager;
 import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
 import com.goalias.common.rateLimiter.strategy.GoaliasStrategy;
 
-import java.util.HashMap;
-import java.util.Map;
-
 //将GoaliasStrategyEnum和具体策略联系起来
+//按枚举序号存放，写时复制后整体发布，读取只是一次数组下标访问
 public class GoaliasStrategyManager {
 
-    private static final Map<GoaliasStrategyEnum, GoaliasStrategy> strategyMap = new HashMap<>();
+    private static volatile GoaliasStrategy[] strategies = new GoaliasStrategy[GoaliasStrategyEnum.values().length];
 
-    public static void addStrategy(GoaliasStrategy strategy){
-        strategyMap.put(strategy.getStrategy(), strategy);
+    public static synchronized void addStrategy(GoaliasStrategy strategy){
+        GoaliasStrategy[] copy = strategies.clone();
+        copy[strategy.getStrategy().ordinal()] = strategy;
+        strategies = copy;
     }
 
     public static GoaliasStrategy getStrategy(GoaliasStrategyEnum strategyEnum){
-        return strategyMap.get(strategyEnum);
+        return strategies[strategyEnum.ordinal()];
     }
 
 }
@@ -0,0 +1,37 @@
+package com.goalias.common.rateLimiter.metrics;
+
+import com.goalias.common.rateLimiter.manager.GoaliasMetricsManager;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * /actuator/goalias 实时查看各资源的限流统计
+ * 资源名包含括号、逗号等字符，不适合作为路径段，按查询参数过滤：
+ * /actuator/goalias?resource=OrderService 返回资源名包含该字符串的资源，完全匹配时只返回该资源
+ */
+@Endpoint(id = "goalias")
+public class GoaliasEndpoint {
+
+    @ReadOperation
+    public Map<String, Object> resources(@Nullable String resource) {
+        if (resource == null || resource.isEmpty()) {
+            return GoaliasMetricsManager.snapshot();
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        Map<String, Object> exact = GoaliasMetricsManager.snapshot(resource);
+        if (exact != null) {
+            result.put(resource, exact);
+            return result;
+        }
+        for (String resourceName : GoaliasMetricsManager.getAllStats().keySet()) {
+            if (resourceName.contains(resource)) {
+                result.put(resourceName, GoaliasMetricsManager.snapshot(resourceName));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+package com.goalias.common.rateLimiter.metrics;
+
+import com.alibaba.csp.sentinel.node.ClusterNode;
+import com.goalias.common.rateLimiter.adaptive.GradientLimiter;
+import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.manager.GoaliasAdaptiveManager;
+import com.goalias.common.rateLimiter.manager.GoaliasMetricsManager;
+import com.goalias.common.rateLimiter.strategy.MethodHotStrategy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 将Goalias资源统计发布到Micrometer
+ */
+public class GoaliasMeterBinder implements MeterBinder {
+
+    private final MethodHotStrategy methodHotStrategy;
+
+    public GoaliasMeterBinder(MethodHotStrategy methodHotStrategy) {
+        this.methodHotStrategy = methodHotStrategy;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        GoaliasMetricsManager.addListener(stats -> bind(registry, stats));
+        bindHotCache(registry);
+    }
+
+    //热点结果缓存，所有@GoaliasHot方法共用一个
+    private void bindHotCache(MeterRegistry registry) {
+        if (methodHotStrategy == null) {
+            return;
+        }
+        FunctionCounter.builder("goalias.hot.cache.hit", methodHotStrategy, MethodHotStrategy::getHitCount)
+                .register(registry);
+        FunctionCounter.builder("goalias.hot.cache.miss", methodHotStrategy, MethodHotStrategy::getMissCount)
+                .register(registry);
+        FunctionCounter.builder("goalias.hot.cache.load", methodHotStrategy, MethodHotStrategy::getLoadCount)
+                .register(registry);
+        FunctionCounter.builder("goalias.hot.cache.eviction", methodHotStrategy, MethodHotStrategy::getEvictionCount)
+                .register(registry);
+        Gauge.builder("goalias.hot.cache.size", methodHotStrategy, MethodHotStrategy::getSize)
+                .register(registry);
+    }
+
+    private void bind(MeterRegistry registry, GoaliasResourceStats stats) {
+        Tags tags = Tags.of("resource", stats.getResourceName(), "strategy", stats.getStrategy());
+        gauge(registry, "goalias.pass.qps", tags, stats, ClusterNode::passQps);
+        gauge(registry, "goalias.block.qps", tags, stats, ClusterNode::blockQps);
+        gauge(registry, "goalias.exception.qps", tags, stats, ClusterNode::exceptionQps);
+        gauge(registry, "goalias.concurrency", tags, stats, ClusterNode::curThreadNum);
+        FunctionCounter.builder("goalias.fallback", stats, GoaliasResourceStats::getFallbackCount)
+                .tags(tags)
+                .register(registry);
+
+        Timer timer = Timer.builder("goalias.rt")
+                .tags(tags)
+                .publishPercentiles(0.5, 0.9, 0.99)
+                .register(registry);
+        stats.addRtRecorder(nanos -> timer.record(nanos, TimeUnit.NANOSECONDS));
+
+        if (GoaliasStrategyEnum.ADAPTIVE.name().equals(stats.getStrategy())) {
+            adaptiveGauge(registry, "goalias.adaptive.limit", tags, stats, GradientLimiter::getLimit);
+            adaptiveGauge(registry, "goalias.adaptive.queue", tags, stats, GradientLimiter::getQueueSize);
+        }
+    }
+
+    private void gauge(MeterRegistry registry, String name, Tags tags, GoaliasResourceStats stats, ToDoubleFunction<ClusterNode> function) {
+        Gauge.builder(name, stats, s -> {
+                    ClusterNode node = s.getClusterNode();
+                    return node == null ? 0d : function.applyAsDouble(node);
+                })
+                .tags(tags)
+                .register(registry);
+    }
+
+    //限流器在描述信息之后登记，取值时再查找
+    private void adaptiveGauge(MeterRegistry registry, String name, Tags tags, GoaliasResourceStats stats, ToDoubleFunction<GradientLimiter> function) {
+        Gauge.builder(name, stats, s -> {
+                    GradientLimiter limiter = GoaliasAdaptiveManager.getLimiter(s.getResourceName());
+                    return limiter == null ? Double.NaN : function.applyAsDouble(limiter);
+                })
+                .tags(tags)
+                .register(registry);
+    }
+}
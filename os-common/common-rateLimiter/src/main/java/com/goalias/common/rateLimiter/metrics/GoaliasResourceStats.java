@@ -0,0 +1,108 @@
+package com.goalias.common.rateLimiter.metrics;
+
+import com.alibaba.csp.sentinel.node.ClusterNode;
+import com.alibaba.csp.sentinel.slots.clusterbuilder.ClusterBuilderSlot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个资源的统计
+ * QPS、RT、并发数取自Sentinel的ClusterNode，降级次数与日志限流在这里维护
+ */
+public class GoaliasResourceStats {
+
+    private final String resourceName;
+
+    private final String strategy;
+
+    private final LongAdder fallbackCount = new LongAdder();
+
+    private final LongAdder suppressedLogCount = new LongAdder();
+
+    private final AtomicLong nextLogAt = new AtomicLong();
+
+    /**
+     * 每个MeterRegistry绑定一个记录器，调用路径读取合并后的记录器
+     */
+    private final List<RtRecorder> rtRecorders = new ArrayList<>();
+
+    private volatile RtRecorder rtRecorder;
+
+    public GoaliasResourceStats(String resourceName, String strategy) {
+        this.resourceName = resourceName;
+        this.strategy = strategy;
+    }
+
+    public void onFallback() {
+        fallbackCount.increment();
+    }
+
+    /**
+     * 每个资源每个间隔最多放行一条日志，返回值为-1表示本次不打印，否则为期间被抑制的条数
+     */
+    public long tryLog(long intervalMillis) {
+        long now = System.currentTimeMillis();
+        long next = nextLogAt.get();
+        if (now >= next && nextLogAt.compareAndSet(next, now + intervalMillis)) {
+            return suppressedLogCount.sumThenReset();
+        }
+        suppressedLogCount.increment();
+        return -1L;
+    }
+
+    public ClusterNode getClusterNode() {
+        return ClusterBuilderSlot.getClusterNode(resourceName);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("strategy", strategy);
+        ClusterNode node = getClusterNode();
+        if (node != null) {
+            map.put("passQps", node.passQps());
+            map.put("successQps", node.successQps());
+            map.put("blockQps", node.blockQps());
+            map.put("exceptionQps", node.exceptionQps());
+            map.put("avgRt", node.avgRt());
+            map.put("minRt", node.minRt());
+            map.put("concurrency", node.curThreadNum());
+        }
+        map.put("fallbackCount", getFallbackCount());
+        return map;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public String getStrategy() {
+        return strategy;
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    public RtRecorder getRtRecorder() {
+        return rtRecorder;
+    }
+
+    public synchronized void addRtRecorder(RtRecorder recorder) {
+        rtRecorders.add(recorder);
+        if (rtRecorders.size() == 1) {
+            rtRecorder = recorder;
+            return;
+        }
+        RtRecorder[] recorders = rtRecorders.toArray(new RtRecorder[0]);
+        rtRecorder = nanos -> {
+            for (RtRecorder r : recorders) {
+                r.record(nanos);
+            }
+        };
+    }
+}
@@ -0,0 +1,10 @@
+package com.goalias.common.rateLimiter.metrics;
+
+/**
+ * 调用耗时记录，由监控实现(如Micrometer Timer)绑定，未绑定时不计时
+ */
+@FunctionalInterface
+public interface RtRecorder {
+
+    void record(long nanos);
+}
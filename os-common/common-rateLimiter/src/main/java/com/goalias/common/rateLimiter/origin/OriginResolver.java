@@ -0,0 +1,16 @@
+package com.goalias.common.rateLimiter.origin;
+
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
+
+/**
+ * 解析当前调用来源，在调用线程上执行，只能读取请求上下文或token内的信息，不能访问Redis等远程存储
+ */
+public interface OriginResolver {
+
+    OriginTypeEnum getType();
+
+    /**
+     * @return 来源标识，无法识别(未登录、非Web请求)时返回null，此时只受总额度限制
+     */
+    String resolve();
+}
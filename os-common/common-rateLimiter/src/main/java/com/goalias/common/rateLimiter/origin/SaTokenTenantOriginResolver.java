@@ -0,0 +1,17 @@
+package com.goalias.common.rateLimiter.origin;
+
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
+import com.goalias.common.satoken.utils.LoginHelper;
+
+public class SaTokenTenantOriginResolver implements OriginResolver {
+
+    @Override
+    public OriginTypeEnum getType() {
+        return OriginTypeEnum.TENANT;
+    }
+
+    @Override
+    public String resolve() {
+        return LoginHelper.getTenantId();
+    }
+}
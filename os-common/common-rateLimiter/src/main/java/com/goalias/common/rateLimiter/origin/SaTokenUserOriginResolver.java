@@ -0,0 +1,21 @@
+package com.goalias.common.rateLimiter.origin;
+
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
+import com.goalias.common.satoken.utils.LoginHelper;
+
+/**
+ * 用户ID取自请求内缓存或token扩展字段，不读取登录会话
+ */
+public class SaTokenUserOriginResolver implements OriginResolver {
+
+    @Override
+    public OriginTypeEnum getType() {
+        return OriginTypeEnum.USER;
+    }
+
+    @Override
+    public String resolve() {
+        Long userId = LoginHelper.getUserId();
+        return userId == null ? null : userId.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package com.goalias.common.rateLimiter.origin;
+
+import com.goalias.common.core.utils.ServletUtils;
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
+import org.springframework.web.context.request.RequestContextHolder;
+
+public class ServletIpOriginResolver implements OriginResolver {
+
+    @Override
+    public OriginTypeEnum getType() {
+        return OriginTypeEnum.IP;
+    }
+
+    @Override
+    public String resolve() {
+        //非Web线程(定时任务、MQ消费)没有请求上下文
+        if (RequestContextHolder.getRequestAttributes() == null) {
+            return null;
+        }
+        return ServletUtils.getClientIP();
+    }
+}
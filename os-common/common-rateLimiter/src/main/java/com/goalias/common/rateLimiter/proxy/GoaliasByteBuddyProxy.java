@@ -1,28 +1,24 @@
 package com.goalias.common.rateLimiter.proxy;
 
-import cn.hutool.core.util.ReflectUtil;
 import cn.hutool.core.util.StrUtil;
-import com.alibaba.csp.sentinel.util.MethodUtil;
-import com.goalias.common.rateLimiter.annotation.GoaliasFallback;
-import com.goalias.common.rateLimiter.annotation.GoaliasHot;
-import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
-import com.goalias.common.rateLimiter.manager.GoaliasMethodManager;
-import com.goalias.common.rateLimiter.manager.GoaliasRuleManager;
-import com.goalias.common.rateLimiter.sph.SphEngine;
-import com.goalias.common.rateLimiter.util.SerialsUtil;
+import com.goalias.common.core.utils.IdGenerator;
 import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.method.MethodDescription;
+import net.bytebuddy.description.type.PackageDescription;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.dynamic.DynamicType;
 import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
-import net.bytebuddy.implementation.InvocationHandlerAdapter;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.MethodDelegation;
 import net.bytebuddy.implementation.attribute.MethodAttributeAppender;
+import net.bytebuddy.implementation.bytecode.assign.Assigner;
+import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatchers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 public class GoaliasByteBuddyProxy {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -31,57 +27,63 @@ public class GoaliasByteBuddyProxy {
 
     private final Class<?> originalClazz;
 
-    private Map<String, Method> methodCache = new HashMap<>();
+    private final List<GoaliasMethodDescriptor> descriptors;
 
-    public GoaliasByteBuddyProxy(Object bean, Class<?> originalClazz) {
+    public GoaliasByteBuddyProxy(Object bean, Class<?> originalClazz, List<GoaliasMethodDescriptor> descriptors) {
         this.bean = bean;
         this.originalClazz = originalClazz;
+        this.descriptors = descriptors;
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public Object proxy() throws Exception{
-        return new ByteBuddy().subclass(originalClazz)
-                .name(StrUtil.format("{}$ByteBuddy${}", originalClazz.getName(), SerialsUtil.generateShortUUID()))
-                .method(ElementMatchers.any())
-                .intercept(InvocationHandlerAdapter.of(new AopInvocationHandler()))
-                .attribute(MethodAttributeAppender.ForInstrumentedMethod.INCLUDING_RECEIVER)
+        //未标注的方法直接转发给原bean，不经过任何拦截逻辑；代理类与原类同包同类加载器，protected与包内可见方法也能转发
+        DynamicType.Builder<?> builder = new ByteBuddy().subclass(originalClazz)
+                .name(StrUtil.format("{}$ByteBuddy${}", originalClazz.getName(), IdGenerator.nextShortId()))
+                .method(delegatable(originalClazz))
+                .intercept(MethodCall.invokeSelf().on(bean, (Class) originalClazz).withAllArguments()
+                        .withAssigner(Assigner.DEFAULT, Assigner.Typing.DYNAMIC))
+                .attribute(MethodAttributeAppender.ForInstrumentedMethod.INCLUDING_RECEIVER);
+
+        //被保护的方法各自绑定一个拦截器，后注册的匹配规则优先
+        for (GoaliasMethodDescriptor descriptor : descriptors) {
+            Method method = descriptor.getMethod();
+            builder = builder.method(ElementMatchers.named(method.getName()).and(ElementMatchers.takesArguments(method.getParameterTypes())))
+                    .intercept(MethodDelegation.withDefaultConfiguration()
+                            .filter(ElementMatchers.named("intercept"))
+                            .to(new GoaliasMethodInterceptor(descriptor)))
+                    .attribute(MethodAttributeAppender.ForInstrumentedMethod.INCLUDING_RECEIVER);
+            logger.debug("[Goalias] Intercept method [{}]", descriptor.getResourceName());
+        }
+
+        return builder
                 .annotateType(bean.getClass().getAnnotations())
                 .make()
-                .load(GoaliasByteBuddyProxy.class.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+                .load(classLoader(), ClassLoadingStrategy.Default.INJECTION)
                 .getLoaded()
                 .newInstance();
     }
 
-    public class AopInvocationHandler implements InvocationHandler {
-
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            String methodStr = MethodUtil.resolveMethodName(method);
-
-            Method realMethod;
-            if (methodCache.containsKey(methodStr)){
-                realMethod = methodCache.get(methodStr);
-            }else{
-                realMethod = ReflectUtil.getMethod(bean.getClass(), method.getName(), method.getParameterTypes());
-                methodCache.put(methodStr, realMethod);
-            }
-
-            if (GoaliasMethodManager.isContain(methodStr)){
-                GoaliasStrategyEnum goaliasStrategyEnum = GoaliasMethodManager.getGoaliasMethod(methodStr).r1;
-                Annotation anno = GoaliasMethodManager.getGoaliasMethod(methodStr).r2;
-
-                if (anno instanceof GoaliasFallback){
-                    GoaliasRuleManager.registerFallBackRule((GoaliasFallback) anno, methodStr);
-                }else if (anno instanceof GoaliasHot){
-                    GoaliasRuleManager.registerHotRule((GoaliasHot) anno, methodStr);
-                }else{
-                    throw new RuntimeException("annotation type error");
-                }
+    /**
+     * 可转发给原bean的方法：public方法，以及与原类同包声明的protected/包内可见方法
+     * 其他包中父类声明的protected方法无法在另一个实例上调用(含Object.clone)，保持父类实现；finalize不转发
+     */
+    private static ElementMatcher.Junction<MethodDescription> delegatable(Class<?> clazz) {
+        String packageName = clazz.getPackage() == null ? "" : clazz.getPackage().getName();
+        ElementMatcher<TypeDescription> samePackage = type -> {
+            PackageDescription typePackage = type.getPackage();
+            return packageName.equals(typePackage == null ? "" : typePackage.getName());
+        };
+        return ElementMatchers.<MethodDescription>not(ElementMatchers.isFinalizer())
+                .and(ElementMatchers.<MethodDescription>isPublic().or(ElementMatchers.isDeclaredBy(samePackage)));
+    }
 
-                return SphEngine.process(bean, realMethod, args, methodStr, goaliasStrategyEnum);
-            }else {//正常不会出现 排错处理
-                return ReflectUtil.invoke(bean, realMethod, args);
-            }
-        }
+    /**
+     * 注入到原类的类加载器，保证代理类与原类在同一运行时包内
+     */
+    private ClassLoader classLoader() {
+        ClassLoader classLoader = originalClazz.getClassLoader();
+        return classLoader != null ? classLoader : GoaliasByteBuddyProxy.class.getClassLoader();
     }
 
 }
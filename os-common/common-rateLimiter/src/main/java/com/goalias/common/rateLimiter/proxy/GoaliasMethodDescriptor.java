@@ -0,0 +1,179 @@
+package com.goalias.common.rateLimiter.proxy;
+
+import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.csp.sentinel.slots.block.BlockException;
+import com.alibaba.csp.sentinel.util.MethodUtil;
+import com.goalias.common.rateLimiter.annotation.GoaliasFallback;
+import com.goalias.common.rateLimiter.annotation.GoaliasHot;
+import com.goalias.common.rateLimiter.enums.AsyncTypeEnum;
+import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
+import com.goalias.common.rateLimiter.hotkey.HotKeyExtractor;
+import com.goalias.common.rateLimiter.manager.GoaliasMetricsManager;
+import com.goalias.common.rateLimiter.metrics.GoaliasResourceStats;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * 被保护方法的描述信息，扫描时一次性计算好，调用时不再做任何查找
+ */
+public class GoaliasMethodDescriptor {
+
+    private final Object bean;
+
+    private final Method method;
+
+    private final String resourceName;
+
+    private final GoaliasStrategyEnum strategy;
+
+    private final Annotation annotation;
+
+    /**
+     * 绑定到bean上的方法句柄，签名统一为 (Object[])Object
+     */
+    private final MethodHandle invoker;
+
+    /**
+     * 热点参数提取器，仅HOT_METHOD策略有值
+     */
+    private final HotKeyExtractor hotKeyExtractor;
+
+    private final boolean clusterMode;
+
+    private final AsyncTypeEnum asyncType;
+
+    /**
+     * 调用来源，仅FALLBACK策略可配置
+     */
+    private final OriginTypeEnum originType;
+
+    private final GoaliasResourceStats stats;
+
+    /**
+     * {method}Fallback 的方法句柄，签名统一为 (Object[])Object，未找到时为null
+     */
+    private final MethodHandle fallbackInvoker;
+
+    /**
+     * 降级方法是否在原参数之后额外接收BlockException
+     */
+    private final boolean fallbackWithException;
+
+    public GoaliasMethodDescriptor(Object bean, Method method, GoaliasStrategyEnum strategy, Annotation annotation) {
+        this.bean = bean;
+        this.method = method;
+        this.resourceName = MethodUtil.resolveMethodName(method);
+        this.strategy = strategy;
+        this.annotation = annotation;
+        this.invoker = bindInvoker(bean, method);
+        this.hotKeyExtractor = annotation instanceof GoaliasHot ? createHotKeyExtractor(method, (GoaliasHot) annotation) : null;
+        this.clusterMode = annotation instanceof GoaliasFallback ? ((GoaliasFallback) annotation).clusterMode()
+                : annotation instanceof GoaliasHot && ((GoaliasHot) annotation).clusterMode();
+        this.asyncType = AsyncTypeEnum.of(method.getReturnType());
+        this.originType = annotation instanceof GoaliasFallback ? ((GoaliasFallback) annotation).origin() : OriginTypeEnum.NONE;
+        this.stats = GoaliasMetricsManager.register(resourceName, strategy.name());
+        Method fallbackMethod = strategy == GoaliasStrategyEnum.HOT_METHOD ? null : resolveFallback(bean, method);
+        this.fallbackInvoker = fallbackMethod == null ? null : bindInvoker(bean, fallbackMethod);
+        this.fallbackWithException = fallbackMethod != null && fallbackMethod.getParameterCount() > method.getParameterCount();
+    }
+
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) invoker.invokeExact(args);
+    }
+
+    public Object invokeFallback(Object[] args, BlockException blockException) throws Throwable {
+        if (fallbackInvoker == null){
+            throw new RuntimeException(StrUtil.format("[Goalias] Can't find fallback method [{}Fallback] in bean [{}]", method.getName(), bean.getClass().getName()));
+        }
+        if (fallbackWithException){
+            Object[] fallbackArgs = Arrays.copyOf(args, args.length + 1);
+            fallbackArgs[args.length] = blockException;
+            return (Object) fallbackInvoker.invokeExact(fallbackArgs);
+        }
+        return (Object) fallbackInvoker.invokeExact(args);
+    }
+
+    public Object getBean() {
+        return bean;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public HotKeyExtractor getHotKeyExtractor() {
+        return hotKeyExtractor;
+    }
+
+    public boolean isClusterMode() {
+        return clusterMode;
+    }
+
+    public AsyncTypeEnum getAsyncType() {
+        return asyncType;
+    }
+
+    public OriginTypeEnum getOriginType() {
+        return originType;
+    }
+
+    public GoaliasResourceStats getStats() {
+        return stats;
+    }
+
+    public String getResourceName() {
+        return resourceName;
+    }
+
+    public GoaliasStrategyEnum getStrategy() {
+        return strategy;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <A extends Annotation> A getAnnotation() {
+        return (A) annotation;
+    }
+
+    private static HotKeyExtractor createHotKeyExtractor(Method method, GoaliasHot goaliasHot) {
+        HotKeyExtractor extractor = ReflectUtil.newInstance(goaliasHot.keyExtractor());
+        extractor.init(method, goaliasHot);
+        return extractor;
+    }
+
+    /**
+     * 按bean的实际类与方法签名查找 {method}Fallback，优先匹配末尾带BlockException参数的重载(同Sentinel blockHandler)
+     */
+    private static Method resolveFallback(Object bean, Method method) {
+        String fallbackName = method.getName() + "Fallback";
+        Class<?>[] paramTypes = method.getParameterTypes();
+        for (Method candidate : ReflectUtil.getMethods(bean.getClass(), m -> fallbackName.equals(m.getName()))) {
+            Class<?>[] candidateTypes = candidate.getParameterTypes();
+            if (candidateTypes.length == paramTypes.length + 1
+                    && Throwable.class.isAssignableFrom(candidateTypes[paramTypes.length])
+                    && candidateTypes[paramTypes.length].isAssignableFrom(BlockException.class)
+                    && Arrays.equals(Arrays.copyOf(candidateTypes, paramTypes.length), paramTypes)) {
+                return candidate;
+            }
+        }
+        return ReflectUtil.getMethod(bean.getClass(), fallbackName, paramTypes);
+    }
+
+    private static MethodHandle bindInvoker(Object bean, Method method) {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method)
+                    .bindTo(bean)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(StrUtil.format("[Goalias] Can't bind method [{}] in bean [{}]", method.getName(), bean.getClass().getName()), e);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.goalias.common.rateLimiter.proxy;
+
+import com.goalias.common.rateLimiter.metrics.RtRecorder;
+import com.goalias.common.rateLimiter.sph.SphEngine;
+import net.bytebuddy.implementation.bind.annotation.AllArguments;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+
+/**
+ * 每个被保护方法生成一个拦截器实例，通过MethodDelegation直接绑定到代理方法上
+ */
+public class GoaliasMethodInterceptor {
+
+    private final GoaliasMethodDescriptor descriptor;
+
+    public GoaliasMethodInterceptor(GoaliasMethodDescriptor descriptor) {
+        this.descriptor = descriptor;
+    }
+
+    @RuntimeType
+    public Object intercept(@AllArguments Object[] args) throws Throwable {
+        RtRecorder rtRecorder = descriptor.getStats().getRtRecorder();
+        if (rtRecorder == null){
+            return SphEngine.process(descriptor, args);
+        }
+        long start = System.nanoTime();
+        try {
+            return SphEngine.process(descriptor, args);
+        } finally {
+            rtRecorder.record(System.nanoTime() - start);
+        }
+    }
+}
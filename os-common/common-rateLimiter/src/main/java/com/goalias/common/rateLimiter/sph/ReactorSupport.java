@@ -0,0 +1,52 @@
+package com.goalias.common.rateLimiter.sph;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Reactor适配，仅在方法返回Mono/Flux时加载
+ * 原方法返回null时按空发布者处理，避免defer抛出NPE
+ */
+class ReactorSupport {
+
+    @SuppressWarnings("unchecked")
+    static Object deferMono(Callable<Object> process) {
+        return Mono.defer(() -> {
+            try {
+                Mono<Object> mono = (Mono<Object>) process.call();
+                return mono == null ? Mono.empty() : mono;
+            } catch (Exception e) {
+                return Mono.error(e);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    static Object deferFlux(Callable<Object> process) {
+        return Flux.defer(() -> {
+            try {
+                Flux<Object> flux = (Flux<Object>) process.call();
+                return flux == null ? Flux.empty() : flux;
+            } catch (Exception e) {
+                return Flux.error(e);
+            }
+        });
+    }
+
+    static Object releaseOnComplete(Object result, SphGuard guard, boolean mono) {
+        if (result == null) {
+            guard.release(null);
+            return null;
+        }
+        if (mono) {
+            return ((Mono<?>) result)
+                    .doOnError(guard::release)
+                    .doFinally(signal -> guard.release(null));
+        }
+        return ((Flux<?>) result)
+                .doOnError(guard::release)
+                .doFinally(signal -> guard.release(null));
+    }
+}
@@ -0,0 +1,38 @@
+package com.goalias.common.rateLimiter.sph;
+
+import io.reactivex.Single;
+
+import java.util.concurrent.Callable;
+
+/**
+ * RxJava2适配，仅在方法返回Single时加载
+ */
+class RxJava2Support {
+
+    /**
+     * 每次订阅时才申请名额并执行原方法
+     * Single不允许为空，原方法返回null时以错误信号结束
+     */
+    @SuppressWarnings("unchecked")
+    static Object defer(Callable<Object> process) {
+        return Single.defer(() -> {
+            Single<Object> single;
+            try {
+                single = (Single<Object>) process.call();
+            } catch (Exception e) {
+                return Single.error(e);
+            }
+            return single == null ? Single.error(new NullPointerException("[Goalias] Method returned a null Single")) : single;
+        });
+    }
+
+    static Object releaseOnComplete(Object result, SphGuard guard) {
+        if (result == null) {
+            guard.release(null);
+            return null;
+        }
+        return ((Single<?>) result)
+                .doOnError(guard::release)
+                .doFinally(() -> guard.release(null));
+    }
+}
@@ -1,59 +1,114 @@
 package com.goalias.common.rateLimiter.sph;
 
-import cn.hutool.core.util.ReflectUtil;
-import cn.hutool.crypto.digest.DigestUtil;
-import com.alibaba.csp.sentinel.Entry;
-import com.alibaba.csp.sentinel.EntryType;
-import com.alibaba.csp.sentinel.SphO;
-import com.alibaba.csp.sentinel.SphU;
 import com.alibaba.csp.sentinel.slots.block.BlockException;
-import com.alibaba.fastjson.JSON;
+import com.goalias.common.rateLimiter.config.GoaliasProperty;
+import com.goalias.common.rateLimiter.enums.AsyncTypeEnum;
 import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
 import com.goalias.common.rateLimiter.manager.GoaliasStrategyManager;
+import com.goalias.common.rateLimiter.metrics.GoaliasResourceStats;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
 import com.goalias.common.rateLimiter.spring.GoaliasConfigHolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 public class SphEngine {
 
     private static final Logger logger = LoggerFactory.getLogger(SphEngine.class);
 
-    public static Object process(Object bean, Method method, Object[] args, String methodStr, GoaliasStrategyEnum goaliasStrategyEnum) throws Throwable{
-        switch (goaliasStrategyEnum){
-            case FALLBACK:
-                if (SphO.entry(methodStr)){//if-else注册资源
-                    try{
-                        return ReflectUtil.invoke(bean, method, args);
-                    }finally {
-                        SphO.exit();
-                    }
-                }else{//要进行降级
-                    if (GoaliasConfigHolder.getGoaliasProperty().isEnableLog()){
-                        logger.info("[Goalias]Trigger fallback strategy for [{}], args: [{}]", methodStr, JSON.toJSONString(args));
-                    }
-                    return GoaliasStrategyManager.getStrategy(goaliasStrategyEnum).process(bean, method, args);
-                }
-            case HOT_METHOD:
-                String convertParam = DigestUtil.md5Hex(JSON.toJSONString(args));
-                Entry entry = null;
-                try{//try-cache注册资源
-                    entry = SphU.entry(methodStr, EntryType.IN, 1, convertParam);
-                    return ReflectUtil.invoke(bean, method, args);
-                }catch (BlockException e){
-                    if (GoaliasConfigHolder.getGoaliasProperty().isEnableLog()){
-                        logger.info("[Goalias]Trigger hotspot strategy for [{}], args: [{}]",  methodStr, JSON.toJSONString(args));
-                    }
-
-                    return GoaliasStrategyManager.getStrategy(goaliasStrategyEnum).process(bean, method, args);
-                }finally {
-                    if (entry != null){
-                        entry.exit(1, convertParam);
-                    }
+    public static Object process(GoaliasMethodDescriptor descriptor, Object[] args) throws Throwable{
+        switch (descriptor.getAsyncType()){
+            //惰性类型在订阅时才申请名额
+            case RX_SINGLE:
+                return RxJava2Support.defer(deferred(descriptor, args));
+            case REACTOR_MONO:
+                return ReactorSupport.deferMono(deferred(descriptor, args));
+            case REACTOR_FLUX:
+                return ReactorSupport.deferFlux(deferred(descriptor, args));
+            default:
+                return doProcess(descriptor, args);
+        }
+    }
+
+    private static Object doProcess(GoaliasMethodDescriptor descriptor, Object[] args) throws Throwable{
+        GoaliasStrategyEnum goaliasStrategyEnum = descriptor.getStrategy();
+        AsyncTypeEnum asyncType = descriptor.getAsyncType();
+        Object hotParam = goaliasStrategyEnum == GoaliasStrategyEnum.HOT_METHOD ? descriptor.getHotKeyExtractor().extract(args) : null;
+
+        SphGuard guard;
+        try{
+            guard = SphGuard.acquire(descriptor, hotParam, asyncType != AsyncTypeEnum.NONE);
+        }catch (BlockException e){
+            //被限流，交由对应策略处理，BlockException传给降级方法
+            onBlocked(descriptor);
+            return GoaliasStrategyManager.getStrategy(goaliasStrategyEnum).process(descriptor, args, hotParam, e);
+        }
+
+        Object result;
+        try{
+            result = descriptor.invoke(args);
+        }catch (Throwable t){
+            //业务异常计入异常统计后原样抛出
+            guard.release(t);
+            throw t;
+        }
+        return releaseOnComplete(result, asyncType, guard);
+    }
+
+    /**
+     * 同步结果立即释放，异步结果在完成时释放，保证线程数/并发数限流覆盖整个异步过程
+     */
+    private static Object releaseOnComplete(Object result, AsyncTypeEnum asyncType, SphGuard guard){
+        switch (asyncType){
+            case COMPLETION_STAGE:
+                if (result == null){
+                    guard.release(null);
+                }else{
+                    ((CompletionStage<?>) result).whenComplete((r, t) ->
+                            guard.release(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t));
                 }
+                return result;
+            case RX_SINGLE:
+                return RxJava2Support.releaseOnComplete(result, guard);
+            case REACTOR_MONO:
+                return ReactorSupport.releaseOnComplete(result, guard, true);
+            case REACTOR_FLUX:
+                return ReactorSupport.releaseOnComplete(result, guard, false);
             default:
-                throw new Exception("[Goalias] Strategy error!");
+                guard.release(null);
+                return result;
+        }
+    }
+
+    /**
+     * 记录降级次数，日志按资源限频且不序列化参数，避免过载时产生日志风暴
+     */
+    private static void onBlocked(GoaliasMethodDescriptor descriptor){
+        GoaliasResourceStats stats = descriptor.getStats();
+        stats.onFallback();
+        GoaliasProperty goaliasProperty = GoaliasConfigHolder.getGoaliasProperty();
+        if (goaliasProperty.isEnableLog()){
+            long suppressed = stats.tryLog(goaliasProperty.getBlockLogIntervalMillis());
+            if (suppressed >= 0){
+                logger.info("[Goalias]Trigger {} strategy for [{}], suppressed: [{}], total: [{}]",
+                        descriptor.getStrategy(), descriptor.getResourceName(), suppressed, stats.getFallbackCount());
+            }
         }
     }
+
+    private static Callable<Object> deferred(GoaliasMethodDescriptor descriptor, Object[] args){
+        return () -> {
+            try{
+                return doProcess(descriptor, args);
+            }catch (Exception | Error e){
+                throw e;
+            }catch (Throwable t){
+                throw new UndeclaredThrowableException(t);
+            }
+        };
+    }
 }
@@ -0,0 +1,154 @@
+package com.goalias.common.rateLimiter.sph;
+
+import com.alibaba.csp.sentinel.Entry;
+import com.alibaba.csp.sentinel.EntryType;
+import com.alibaba.csp.sentinel.SphU;
+import com.alibaba.csp.sentinel.Tracer;
+import com.alibaba.csp.sentinel.node.ClusterNode;
+import com.alibaba.csp.sentinel.slots.block.BlockException;
+import com.alibaba.csp.sentinel.slots.block.RuleConstant;
+import com.alibaba.csp.sentinel.slots.block.flow.FlowException;
+import com.alibaba.csp.sentinel.slots.block.flow.param.ParamFlowException;
+import com.alibaba.csp.sentinel.slots.clusterbuilder.ClusterBuilderSlot;
+import com.goalias.common.rateLimiter.adaptive.GradientLimiter;
+import com.goalias.common.rateLimiter.enums.ClusterResultEnum;
+import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.enums.OriginTypeEnum;
+import com.goalias.common.rateLimiter.manager.GoaliasAdaptiveManager;
+import com.goalias.common.rateLimiter.manager.GoaliasClusterManager;
+import com.goalias.common.rateLimiter.manager.GoaliasOriginManager;
+import com.goalias.common.rateLimiter.manager.GoaliasRuleManager;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 一次放行调用持有的全部名额(Sentinel入口、集群额度、自适应并发名额)
+ * 同步调用在返回时释放，异步调用在结果完成、出错或取消时释放，只释放一次
+ */
+class SphGuard {
+
+    private static final AtomicIntegerFieldUpdater<SphGuard> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(SphGuard.class, "released");
+
+    /**
+     * 自适应限流拒绝时的异常，BlockException不填充栈，可共享
+     */
+    private static final BlockException ADAPTIVE_EXCEPTION = new FlowException(RuleConstant.LIMIT_APP_DEFAULT, "[Goalias] Adaptive limit exceeded");
+
+    private final GoaliasMethodDescriptor descriptor;
+
+    private final Object hotParam;
+
+    private final boolean hot;
+
+    /**
+     * Sentinel入口携带的参数：热点参数或调用来源
+     */
+    private Object entryParam;
+
+    private Entry entry;
+
+    private ClusterResultEnum clusterResult = ClusterResultEnum.PASS;
+
+    private GradientLimiter limiter;
+
+    private long startNanos;
+
+    private volatile int released;
+
+    private SphGuard(GoaliasMethodDescriptor descriptor, Object hotParam) {
+        this.descriptor = descriptor;
+        this.hotParam = hotParam;
+        this.hot = descriptor.getStrategy() == GoaliasStrategyEnum.HOT_METHOD;
+    }
+
+    /**
+     * 申请名额，被限流时抛出BlockException
+     *
+     * @param async 异步调用使用AsyncEntry，不占用当前线程的调用链上下文
+     */
+    static SphGuard acquire(GoaliasMethodDescriptor descriptor, Object hotParam, boolean async) throws BlockException {
+        SphGuard guard = new SphGuard(descriptor, hotParam);
+        String resourceName = descriptor.getResourceName();
+        switch (descriptor.getStrategy()) {
+            case FALLBACK:
+            case HOT_METHOD:
+                guard.clusterResult = GoaliasClusterManager.tryAcquire(descriptor, hotParam);
+                if (guard.clusterResult == ClusterResultEnum.BLOCK) {
+                    throw guard.hot ? new ParamFlowException(resourceName, String.valueOf(hotParam), GoaliasRuleManager.getHotRule(resourceName))
+                            : new FlowException(RuleConstant.LIMIT_APP_DEFAULT, GoaliasRuleManager.getFallBackRule(resourceName));
+                }
+                break;
+            case ADAPTIVE:
+                guard.limiter = GoaliasAdaptiveManager.getLimiter(resourceName);
+                guard.startNanos = guard.limiter.tryAcquire();
+                if (guard.startNanos < 0) {
+                    //自适应拒绝不经过Sentinel的规则检查，手动计入资源的block统计
+                    ClusterNode node = ClusterBuilderSlot.getClusterNode(resourceName);
+                    if (node != null) {
+                        node.increaseBlockQps(1);
+                    }
+                    throw ADAPTIVE_EXCEPTION;
+                }
+                //自适应资源没有Sentinel规则，仍然进入Sentinel以获得QPS、RT、并发等统计
+                break;
+            default:
+                break;
+        }
+        try {
+            if (guard.hot) {
+                guard.entryParam = hotParam;
+                guard.entry = async ? SphU.asyncEntry(resourceName, EntryType.IN, 1, hotParam)
+                        : SphU.entry(resourceName, EntryType.IN, 1, hotParam);
+            } else if (descriptor.getOriginType() != OriginTypeEnum.NONE) {
+                //来源作为参数，由来源额度规则按来源分别计数；无法识别来源时只受总额度限制
+                guard.entryParam = GoaliasOriginManager.resolve(descriptor.getOriginType());
+                guard.entry = async ? SphU.asyncEntry(resourceName, EntryType.OUT, 1, guard.entryParam)
+                        : SphU.entry(resourceName, EntryType.OUT, 1, guard.entryParam);
+            } else {
+                guard.entry = async ? SphU.asyncEntry(resourceName) : SphU.entry(resourceName);
+            }
+            return guard;
+        } catch (BlockException e) {
+            guard.releaseCluster();
+            if (guard.limiter != null) {
+                guard.limiter.onIgnore();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param error 业务异常，计入Sentinel异常统计(熔断依赖此统计)，正常完成为null
+     */
+    void release(Throwable error) {
+        if (!RELEASED.compareAndSet(this, 0, 1)) {
+            return;
+        }
+        if (entry != null) {
+            if (error != null) {
+                Tracer.traceEntry(error, entry);
+            }
+            if (entryParam != null) {
+                entry.exit(1, entryParam);
+            } else {
+                entry.exit();
+            }
+        }
+        if (limiter != null) {
+            if (error == null) {
+                limiter.onSuccess(startNanos);
+            } else {
+                limiter.onIgnore();
+            }
+        }
+        releaseCluster();
+    }
+
+    private void releaseCluster() {
+        if (clusterResult == ClusterResultEnum.HOLD) {
+            GoaliasClusterManager.release(descriptor, hotParam);
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package com.goalias.common.rateLimiter.spring;
 
 
+import com.goalias.common.rateLimiter.cluster.RedisClusterLimiter;
 import com.goalias.common.rateLimiter.config.GoaliasProperty;
+import com.goalias.common.rateLimiter.manager.GoaliasClusterManager;
+import com.goalias.common.rateLimiter.metrics.GoaliasEndpoint;
+import com.goalias.common.rateLimiter.metrics.GoaliasMeterBinder;
+import com.goalias.common.rateLimiter.origin.SaTokenTenantOriginResolver;
+import com.goalias.common.rateLimiter.origin.SaTokenUserOriginResolver;
+import com.goalias.common.rateLimiter.origin.ServletIpOriginResolver;
+import com.goalias.common.rateLimiter.strategy.AdaptiveStrategy;
+import com.goalias.common.rateLimiter.strategy.CircuitStrategy;
 import com.goalias.common.rateLimiter.strategy.FallBackStrategy;
 import com.goalias.common.rateLimiter.strategy.MethodHotStrategy;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 @Configuration
 @EnableConfigurationProperties(GoaliasProperty.class)
@@ -29,4 +43,78 @@ public class GoaliasAutoConfiguration {
     public MethodHotStrategy methodHotStrategy(){
         return new MethodHotStrategy();
     }
+    @Bean
+    public CircuitStrategy circuitStrategy(){
+        return new CircuitStrategy();
+    }
+    @Bean
+    public AdaptiveStrategy adaptiveStrategy(){
+        return new AdaptiveStrategy();
+    }
+
+    //按登录用户/租户限流，来源直接取自当前会话，不额外访问Redis
+    @Configuration
+    @ConditionalOnClass(name = "com.goalias.common.satoken.utils.LoginHelper")
+    static class GoaliasSaTokenOriginConfiguration {
+
+        @Bean
+        public SaTokenUserOriginResolver saTokenUserOriginResolver(){
+            return new SaTokenUserOriginResolver();
+        }
+
+        @Bean
+        public SaTokenTenantOriginResolver saTokenTenantOriginResolver(){
+            return new SaTokenTenantOriginResolver();
+        }
+    }
+
+    //按客户端IP限流
+    @Configuration
+    @ConditionalOnClass(name = {"com.goalias.common.core.utils.ServletUtils", "jakarta.servlet.http.HttpServletRequest"})
+    static class GoaliasServletOriginConfiguration {
+
+        @Bean
+        public ServletIpOriginResolver servletIpOriginResolver(){
+            return new ServletIpOriginResolver();
+        }
+    }
+
+    //集群限流，依赖common-cache提供的StringRedisTemplate
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.data.redis.core.StringRedisTemplate")
+    @ConditionalOnProperty(prefix = "goalias.cluster", name = "enabled", havingValue = "true")
+    static class GoaliasClusterConfiguration {
+
+        @Bean
+        public RedisClusterLimiter redisClusterLimiter(StringRedisTemplate stringRedisTemplate, GoaliasProperty goaliasProperty){
+            GoaliasProperty.Cluster cluster = goaliasProperty.getCluster();
+            RedisClusterLimiter clusterLimiter = new RedisClusterLimiter(stringRedisTemplate, cluster);
+            GoaliasClusterManager.setClusterLimiter(clusterLimiter, cluster.getPrefetch(), cluster.getDegradeSeconds(),
+                    cluster.getConcurrencyExpireSeconds());
+            return clusterLimiter;
+        }
+    }
+
+    //资源指标发布到Micrometer
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class GoaliasMetricsConfiguration {
+
+        @Bean
+        public GoaliasMeterBinder goaliasMeterBinder(ObjectProvider<MethodHotStrategy> methodHotStrategy){
+            return new GoaliasMeterBinder(methodHotStrategy.getIfAvailable());
+        }
+    }
+
+    // /actuator/goalias
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint")
+    static class GoaliasEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnAvailableEndpoint
+        public GoaliasEndpoint goaliasEndpoint(){
+            return new GoaliasEndpoint();
+        }
+    }
 }
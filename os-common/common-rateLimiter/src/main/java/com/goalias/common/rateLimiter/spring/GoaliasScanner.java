@@ -3,27 +3,71 @@ package com.goalias.common.rateLimiter.spring;
 import cn.hutool.core.annotation.AnnotationUtil;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.ReflectUtil;
-import com.alibaba.csp.sentinel.util.MethodUtil;
-import com.alibaba.csp.sentinel.util.function.Tuple2;
+import com.goalias.common.rateLimiter.annotation.GoaliasAdaptive;
+import com.goalias.common.rateLimiter.annotation.GoaliasCircuit;
 import com.goalias.common.rateLimiter.annotation.GoaliasFallback;
 import com.goalias.common.rateLimiter.annotation.GoaliasHot;
+import com.goalias.common.rateLimiter.config.GoaliasProperty;
 import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.manager.GoaliasAdaptiveManager;
 import com.goalias.common.rateLimiter.manager.GoaliasMethodManager;
+import com.goalias.common.rateLimiter.manager.GoaliasRuleManager;
+import com.goalias.common.rateLimiter.manager.GoaliasOriginManager;
 import com.goalias.common.rateLimiter.manager.GoaliasStrategyManager;
 import com.goalias.common.rateLimiter.proxy.GoaliasByteBuddyProxy;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
+import com.goalias.common.rateLimiter.origin.OriginResolver;
 import com.goalias.common.rateLimiter.strategy.GoaliasStrategy;
 import com.goalias.common.rateLimiter.util.ProxyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+public class GoaliasScanner implements BeanPostProcessor, SmartInitializingSingleton {
+    private static final Logger logger = LoggerFactory.getLogger(GoaliasScanner.class);
+
+    private static final Set<Class<? extends Annotation>> GOALIAS_ANNOTATIONS =
+            Set.of(GoaliasFallback.class, GoaliasHot.class, GoaliasCircuit.class, GoaliasAdaptive.class);
+
+    /**
+     * 类(含父类、接口)是否带有Goalias注解，父类与接口在多个bean间共享结果
+     */
+    private final Map<Class<?>, Boolean> classCache = new ConcurrentHashMap<>();
+
+    private final Map<Class<? extends Annotation>, Boolean> annotationCache = new ConcurrentHashMap<>();
+
+    /**
+     * 扫描耗时统计，bean可能由后台线程并行初始化(Spring 6.2 background bootstrap)
+     */
+    private final LongAdder scanNanos = new LongAdder();
+
+    private final LongAdder scanCount = new LongAdder();
+
+    private final LongAdder proxyCount = new LongAdder();
 
-public class GoaliasScanner implements BeanPostProcessor {
     @Override
     public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {//对所有bean进行后置处理
+        long start = System.nanoTime();
+        try {
+            return process(bean);
+        } finally {
+            scanNanos.add(System.nanoTime() - start);
+            scanCount.increment();
+        }
+    }
+
+    private Object process(Object bean) {
         Class<?> clazz = ProxyUtil.getUserClass(bean.getClass());
 
         if (GoaliasStrategy.class.isAssignableFrom(clazz)){
@@ -31,22 +75,51 @@ public class GoaliasScanner implements BeanPostProcessor {
             return bean;
         }
 
-        AtomicBoolean needProxy=new AtomicBoolean(false);
-        Arrays.stream(clazz.getMethods()).forEach(method -> {
+        if (OriginResolver.class.isAssignableFrom(clazz)){
+            GoaliasOriginManager.addResolver((OriginResolver) bean);
+            return bean;
+        }
+
+        //不在扫描范围或整个类层级都没有Goalias注解的bean直接跳过
+        if (!inBasePackages(clazz) || !hasGoaliasAnnotation(clazz)){
+            return bean;
+        }
+
+        List<GoaliasMethodDescriptor> descriptors = new ArrayList<>();
+        for (Method method : clazz.getMethods()) {
+            GoaliasMethodDescriptor descriptor = null;
             GoaliasFallback goaliasFallback = searchAnnotation(method, GoaliasFallback.class);
             if (ObjectUtil.isNotNull(goaliasFallback)){
-                GoaliasMethodManager.addGoaliasMethod(MethodUtil.resolveMethodName(method),new Tuple2<>(GoaliasStrategyEnum.FALLBACK,goaliasFallback));
-                needProxy.set(true);
+                descriptor = new GoaliasMethodDescriptor(bean, method, GoaliasStrategyEnum.FALLBACK, goaliasFallback);
+                GoaliasRuleManager.registerFallBackRule(goaliasFallback, descriptor.getResourceName());
             }
 
             GoaliasHot goaliasHot = searchAnnotation(method, GoaliasHot.class);
             if (ObjectUtil.isNotNull(goaliasHot)){
-                GoaliasMethodManager.addGoaliasMethod(MethodUtil.resolveMethodName(method),new Tuple2<>(GoaliasStrategyEnum.HOT_METHOD,goaliasHot));
-                needProxy.set(true);
+                descriptor = new GoaliasMethodDescriptor(bean, method, GoaliasStrategyEnum.HOT_METHOD, goaliasHot);
+                GoaliasRuleManager.registerHotRule(goaliasHot, descriptor.getResourceName());
+            }
+
+            GoaliasCircuit goaliasCircuit = searchAnnotation(method, GoaliasCircuit.class);
+            if (ObjectUtil.isNotNull(goaliasCircuit)){
+                descriptor = new GoaliasMethodDescriptor(bean, method, GoaliasStrategyEnum.CIRCUIT, goaliasCircuit);
+                GoaliasRuleManager.registerCircuitRule(goaliasCircuit, descriptor.getResourceName());
+            }
+
+            GoaliasAdaptive goaliasAdaptive = searchAnnotation(method, GoaliasAdaptive.class);
+            if (ObjectUtil.isNotNull(goaliasAdaptive)){
+                descriptor = new GoaliasMethodDescriptor(bean, method, GoaliasStrategyEnum.ADAPTIVE, goaliasAdaptive);
+                GoaliasAdaptiveManager.registerLimiter(goaliasAdaptive, descriptor.getResourceName());
             }
-        });
-        if (needProxy.get()){
-            GoaliasByteBuddyProxy goaliasByteBuddyProxy = new GoaliasByteBuddyProxy(bean, clazz);
+
+            if (descriptor != null){
+                GoaliasMethodManager.addGoaliasMethod(descriptor);
+                descriptors.add(descriptor);
+            }
+        }
+        if (!descriptors.isEmpty()){
+            GoaliasByteBuddyProxy goaliasByteBuddyProxy = new GoaliasByteBuddyProxy(bean, clazz, descriptors);
+            proxyCount.increment();
             try {
                 return goaliasByteBuddyProxy.proxy();
             } catch (Exception e) {
@@ -55,6 +128,84 @@ public class GoaliasScanner implements BeanPostProcessor {
         }else return bean;
     }
 
+    @Override
+    public void afterSingletonsInstantiated() {//所有单例扫描完成后发布描述表并统一加载规则
+        logger.info("[Goalias] Scan [{}] beans, proxy [{}], cost [{}]ms", scanCount.sum(), proxyCount.sum(), scanNanos.sum() / 1_000_000);
+        classCache.clear();
+        GoaliasMethodManager.freeze();
+        GoaliasRuleManager.loadRules();
+    }
+
+    private boolean inBasePackages(Class<?> clazz){
+        GoaliasProperty goaliasProperty = GoaliasConfigHolder.getGoaliasProperty();
+        if (goaliasProperty == null || goaliasProperty.getBasePackages().isEmpty()){
+            return true;
+        }
+        String className = clazz.getName();
+        for (String basePackage : goaliasProperty.getBasePackages()){
+            if (className.startsWith(basePackage)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasGoaliasAnnotation(Class<?> clazz){
+        if (clazz == null || clazz == Object.class){
+            return false;
+        }
+        Boolean cached = classCache.get(clazz);
+        if (cached != null){
+            return cached;
+        }
+        boolean found = false;
+        for (Method method : clazz.getDeclaredMethods()){
+            for (Annotation annotation : method.getDeclaredAnnotations()){
+                if (isGoaliasAnnotation(annotation.annotationType())){
+                    found = true;
+                    break;
+                }
+            }
+            if (found){
+                break;
+            }
+        }
+        if (!found){
+            found = hasGoaliasAnnotation(clazz.getSuperclass());
+        }
+        if (!found){
+            for (Class<?> iface : clazz.getInterfaces()){
+                if (hasGoaliasAnnotation(iface)){
+                    found = true;
+                    break;
+                }
+            }
+        }
+        classCache.put(clazz, found);
+        return found;
+    }
+
+    //支持以Goalias注解为元注解的组合注解
+    private boolean isGoaliasAnnotation(Class<? extends Annotation> annotationType){
+        if (GOALIAS_ANNOTATIONS.contains(annotationType)){
+            return true;
+        }
+        Boolean cached = annotationCache.get(annotationType);
+        if (cached != null){
+            return cached;
+        }
+        annotationCache.put(annotationType, false);//防止元注解循环引用
+        boolean found = false;
+        for (Annotation meta : annotationType.getDeclaredAnnotations()){
+            if (!meta.annotationType().getName().startsWith("java.lang.annotation") && isGoaliasAnnotation(meta.annotationType())){
+                found = true;
+                break;
+            }
+        }
+        annotationCache.put(annotationType, found);
+        return found;
+    }
+
     private <A extends Annotation> A searchAnnotation(Method method, Class<A> annotationType){
         A anno = AnnotationUtil.getAnnotation(method, annotationType);
         //从接口层面向上搜索
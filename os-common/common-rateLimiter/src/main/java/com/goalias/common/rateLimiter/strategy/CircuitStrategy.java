@@ -0,0 +1,14 @@
+package com.goalias.common.rateLimiter.strategy;
+
+import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+
+/**
+ * 熔断后的处理与降级一致，调用 {method}Fallback
+ */
+public class CircuitStrategy extends FallBackStrategy{
+
+    @Override
+    public GoaliasStrategyEnum getStrategy() {
+        return GoaliasStrategyEnum.CIRCUIT;
+    }
+}
@@ -1,39 +1,21 @@
 package com.goalias.common.rateLimiter.strategy;
 
-import cn.hutool.core.util.ObjectUtil;
-import cn.hutool.core.util.ReflectUtil;
-import cn.hutool.core.util.StrUtil;
+import com.alibaba.csp.sentinel.slots.block.BlockException;
 import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
 
-import java.lang.reflect.Method;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
-
+/**
+ * 调用 {method}Fallback，降级方法在扫描时已解析并绑定为方法句柄
+ */
 public class FallBackStrategy implements GoaliasStrategy{
 
-    private final Map<String, Method> fallBackMethodMap = new ConcurrentHashMap<>();
-
     @Override
     public GoaliasStrategyEnum getStrategy() {
         return GoaliasStrategyEnum.FALLBACK;
     }
 
     @Override
-    public Object process(Object bean, Method method, Object[] args) throws Exception {
-
-        String fallbackMethodName = StrUtil.format("{}Fallback", method.getName());
-        Method fallbackMethod;
-        if (fallBackMethodMap.containsKey(fallbackMethodName)){
-            fallbackMethod = fallBackMethodMap.get(fallbackMethodName);
-        }else{
-            fallbackMethod = ReflectUtil.getMethod(bean.getClass(), fallbackMethodName, method.getParameterTypes());
-            fallBackMethodMap.put(fallbackMethodName, fallbackMethod);
-        }
-
-        if (ObjectUtil.isNull(fallbackMethod)){
-            throw new RuntimeException(StrUtil.format("[Goalias] Can't find fallback method [{}] in bean [{}]", fallbackMethodName, bean.getClass().getName()));
-        }
-        return ReflectUtil.invoke(bean, fallbackMethod, args);
+    public Object process(GoaliasMethodDescriptor descriptor, Object[] args, Object hotParam, BlockException blockException) throws Throwable {
+        return descriptor.invokeFallback(args, blockException);
     }
 }
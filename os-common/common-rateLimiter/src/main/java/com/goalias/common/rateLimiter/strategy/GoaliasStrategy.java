@@ -1,13 +1,21 @@
 package com.goalias.common.rateLimiter.strategy;
 
 
+import com.alibaba.csp.sentinel.slots.block.BlockException;
 import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
-
-import java.lang.reflect.Method;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
 
 public interface GoaliasStrategy {
 
     GoaliasStrategyEnum getStrategy();
 
-    Object process(Object bean, Method method, Object[] args) throws Exception;
+    /**
+     * 被限流后的处理逻辑
+     *
+     * @param descriptor 被保护方法
+     * @param args       方法参数
+     * @param hotParam   热点参数，非热点策略为null
+     * @param blockException 触发限流的异常，集群或自适应限流时为对应的FlowException
+     */
+    Object process(GoaliasMethodDescriptor descriptor, Object[] args, Object hotParam, BlockException blockException) throws Throwable;
 }
@@ -1,22 +1,53 @@
 package com.goalias.common.rateLimiter.strategy;
 
-import cn.hutool.cache.CacheUtil;
-import cn.hutool.cache.impl.TimedCache;
-import cn.hutool.core.util.ReflectUtil;
-import com.alibaba.csp.sentinel.util.MethodUtil;
+import com.alibaba.csp.sentinel.slots.block.BlockException;
+import com.goalias.common.rateLimiter.annotation.GoaliasHot;
+import com.goalias.common.rateLimiter.config.GoaliasProperty;
 import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
 import com.goalias.common.rateLimiter.spring.GoaliasConfigHolder;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
-import java.lang.reflect.Method;
-
+/**
+ * 热点方法被限流后返回缓存结果
+ * 缓存以(方法, 热点参数)为key，由Caffeine按W-TinyLFU淘汰，每条按注解的cacheSeconds单独过期
+ * 同一个key并发未命中时只有一个线程真正调用方法，其余线程最多等待hotLoadWaitMillis，超时按限流处理
+ * Single/Mono/Flux等惰性返回值缓存的只是发布者，重放时会重新执行原方法，因此不缓存，被限流时直接抛出BlockException
+ */
 public class MethodHotStrategy implements GoaliasStrategy{
 
-    private final TimedCache<String, Object> timedCache;
+    private static final Object NULL_VALUE = new Object();
+
+    private final Cache<HotCacheKey, CacheEntry> hotCache;
+
+    private final long defaultTimeout;
+
+    private final long loadWaitMillis;
+
+    private final Map<HotCacheKey, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+
+    private final LongAdder loadCount = new LongAdder();
 
     public MethodHotStrategy() {
-        timedCache= CacheUtil.newTimedCache(1000L * GoaliasConfigHolder.getGoaliasProperty().getHotCacheSeconds());
-        timedCache.schedulePrune(1000L);//定时清理过期的缓存项
+        GoaliasProperty goaliasProperty = GoaliasConfigHolder.getGoaliasProperty();
+        defaultTimeout = TimeUnit.SECONDS.toNanos(goaliasProperty.getHotCacheSeconds());
+        loadWaitMillis = goaliasProperty.getHotLoadWaitMillis();
+        hotCache = Caffeine.newBuilder()
+                .maximumSize(goaliasProperty.getHotCacheSize())
+                .expireAfter(new EntryExpiry())
+                .recordStats()
+                .build();
     }
 
     @Override
@@ -25,14 +56,129 @@ public class MethodHotStrategy implements GoaliasStrategy{
     }
 
     @Override
-    public Object process(Object bean, Method method, Object[] args) {
-        String hotKey = MethodUtil.resolveMethodName(method);
-        if (timedCache.containsKey(hotKey)) {
-            return timedCache.get(hotKey, false);
-        } else {
-            Object result = ReflectUtil.invoke(bean, method, args);
-            timedCache.put(hotKey, result);
+    public Object process(GoaliasMethodDescriptor descriptor, Object[] args, Object hotParam, BlockException blockException) throws Throwable {
+        if (descriptor.getAsyncType().isLazy()) {
+            throw blockException;
+        }
+        HotCacheKey hotKey = new HotCacheKey(descriptor.getResourceName(), hotParam);
+        CacheEntry cached = hotCache.getIfPresent(hotKey);
+        if (cached != null) {
+            return cached.value == NULL_VALUE ? null : cached.value;
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> loading = loadingMap.putIfAbsent(hotKey, future);
+        if (loading != null) {//已有线程在加载，等待其结果
+            try {
+                return loading.get(loadWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            } catch (TimeoutException e) {
+                throw blockException;
+            }
+        }
+
+        try {
+            loadCount.increment();
+            Object result = descriptor.invoke(args);
+            hotCache.put(hotKey, new CacheEntry(result == null ? NULL_VALUE : result, timeoutOf(descriptor)));
+            future.complete(result);
             return result;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(hotKey, future);
+        }
+    }
+
+    public long getHitCount() {
+        return hotCache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return hotCache.stats().missCount();
+    }
+
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return hotCache.stats().evictionCount();
+    }
+
+    public long getSize() {
+        return hotCache.estimatedSize();
+    }
+
+    private long timeoutOf(GoaliasMethodDescriptor descriptor) {
+        GoaliasHot goaliasHot = descriptor.getAnnotation();
+        return goaliasHot.cacheSeconds() < 0 ? defaultTimeout : TimeUnit.SECONDS.toNanos(goaliasHot.cacheSeconds());
+    }
+
+    private static final class CacheEntry {
+
+        private final Object value;
+
+        /**
+         * 存活时长(纳秒)，写入时确定，读取不续期
+         */
+        private final long ttlNanos;
+
+        private CacheEntry(Object value, long ttlNanos) {
+            this.value = value;
+            this.ttlNanos = ttlNanos;
+        }
+    }
+
+    private static final class EntryExpiry implements Expiry<HotCacheKey, CacheEntry> {
+
+        @Override
+        public long expireAfterCreate(HotCacheKey key, CacheEntry value, long currentTime) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(HotCacheKey key, CacheEntry value, long currentTime, long currentDuration) {
+            return value.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(HotCacheKey key, CacheEntry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static final class HotCacheKey {
+
+        private final String resourceName;
+
+        private final Object hotParam;
+
+        private final int hash;
+
+        private HotCacheKey(String resourceName, Object hotParam) {
+            this.resourceName = resourceName;
+            this.hotParam = hotParam;
+            this.hash = 31 * resourceName.hashCode() + Objects.hashCode(hotParam);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof HotCacheKey)) {
+                return false;
+            }
+            HotCacheKey that = (HotCacheKey) o;
+            return hash == that.hash && resourceName.equals(that.resourceName) && Objects.equals(hotParam, that.hotParam);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
         }
     }
 }
@@ -0,0 +1,118 @@
+package com.goalias.common.rateLimiter.util;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * 非加密64位哈希(FNV-1a + murmur3 fmix64)，用于组合热点参数
+ * 字符串和基本类型带类型标记后直接逐字符/按位混入，不产生中间对象
+ */
+public class KeyHashUtil {
+
+    public static final long SEED = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x100000001b3L;
+
+    private static final int TAG_NULL = 1;
+
+    private static final int TAG_STRING = 2;
+
+    private static final int TAG_LONG = 3;
+
+    private static final int TAG_INT = 4;
+
+    private static final int TAG_SHORT = 5;
+
+    private static final int TAG_BYTE = 6;
+
+    private static final int TAG_DOUBLE = 7;
+
+    private static final int TAG_FLOAT = 8;
+
+    private static final int TAG_BOOLEAN = 9;
+
+    private static final int TAG_CHAR = 10;
+
+    private static final int TAG_ENUM = 11;
+
+    private static final int TAG_OBJECT = 12;
+
+    /**
+     * 是否可直接作为热点参数：只接受不可变且按值比较的类型
+     * StringBuilder、AtomicLong等可变对象按引用比较且哈希会随内容变化，需按当前内容计算哈希
+     */
+    public static boolean isSimple(Object value) {
+        return value instanceof String || value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte || value instanceof Double || value instanceof Float
+                || value instanceof Boolean || value instanceof Character || value instanceof Enum;
+    }
+
+    /**
+     * 每个值先混入类型标记，null、0L、""、false、'a'与97等不同类型的值不会得到相同的结果
+     * 类型区分比原JSON键更严格(如'a'与"a"、1与1L不再相同)，只会少命中缓存，不会返回其他参数组合的结果
+     */
+    public static long hash(long hash, Object value) {
+        if (value == null) {
+            return tag(hash, TAG_NULL);
+        }
+        if (value instanceof CharSequence) {
+            CharSequence str = (CharSequence) value;
+            int length = str.length();
+            hash = mix(tag(hash, TAG_STRING), length);
+            for (int i = 0; i < length; i++) {
+                hash = (hash ^ str.charAt(i)) * PRIME;
+            }
+            return hash;
+        }
+        if (value instanceof Long) {
+            return mix(tag(hash, TAG_LONG), (Long) value);
+        }
+        if (value instanceof Integer) {
+            return mix(tag(hash, TAG_INT), (Integer) value);
+        }
+        if (value instanceof Short) {
+            return mix(tag(hash, TAG_SHORT), (Short) value);
+        }
+        if (value instanceof Byte) {
+            return mix(tag(hash, TAG_BYTE), (Byte) value);
+        }
+        if (value instanceof Double) {
+            return mix(tag(hash, TAG_DOUBLE), Double.doubleToLongBits((Double) value));
+        }
+        if (value instanceof Float) {
+            return mix(tag(hash, TAG_FLOAT), Float.floatToIntBits((Float) value));
+        }
+        if (value instanceof Boolean) {
+            return mix(tag(hash, TAG_BOOLEAN), (Boolean) value ? 1L : 0L);
+        }
+        if (value instanceof Character) {
+            return mix(tag(hash, TAG_CHAR), (Character) value);
+        }
+        if (value instanceof Enum) {
+            Enum<?> constant = (Enum<?>) value;
+            return hash(hash(tag(hash, TAG_ENUM), constant.getDeclaringClass().getName()), constant.name());
+        }
+        //复杂对象沿用原来的JSON语义
+        return hash(tag(hash, TAG_OBJECT), JSON.toJSONString(value));
+    }
+
+    public static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long tag(long hash, int tag) {
+        return (hash ^ tag) * PRIME;
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (value & 0xff)) * PRIME;
+            value >>>= 8;
+        }
+        return hash;
+    }
+}
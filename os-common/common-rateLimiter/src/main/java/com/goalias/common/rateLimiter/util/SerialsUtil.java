@@ -1,18 +1,24 @@
 package com.goalias.common.rateLimiter.util;
 
+import com.goalias.common.core.utils.IdGenerator;
+
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SerialsUtil {
 
-	public static int serialInt = 1;
+	private static final AtomicInteger serialCounter = new AtomicInteger();
+
+	private static final DateTimeFormatter SERIAL_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
 
-	private static final DecimalFormat format8 = new DecimalFormat("00000000");
+	private static final char[] CHARS_32 = "BR6UMEHCGQA83SJY75W9FTD2PZNKVXL4".toCharArray();
 
-	private static final DecimalFormat format12 = new DecimalFormat("000000000000");
+	private static final char[] CHARS_24 = "BRUMEHCGQASJYWFTDPZNKVXL".toCharArray();
 
 	private static final BigInteger divisor;
 
@@ -24,35 +30,14 @@ public class SerialsUtil {
 	}
 
 	public static String genSerialNo() {
-		SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
-		String strNow = sdf.format(new Date());
-
+		String strNow = LocalDateTime.now().format(SERIAL_TIME_FORMAT);
 		// 生成3位随机数
-		Random random = new Random();
-		int intRandom = random.nextInt(999);
-
-		String strRandom = String.valueOf(intRandom);
-		int len = strRandom.length();
-		for (int i = 0; i < (3 - len); i++) {
-			strRandom = "0" + strRandom;
-		}
-		String serialStr = SerialsUtil.nextSerial();
-		return (strNow + strRandom + serialStr);
+		int intRandom = ThreadLocalRandom.current().nextInt(999);
+		return strNow + pad(intRandom, 3) + nextSerial();
 	}
 
-	public static synchronized String nextSerial() {
-		int serial = serialInt++;
-		if (serial > 999) {
-			serialInt = 1;
-			serial = 1;
-		}
-		String serialStr = serial + "";
-		int len = serialStr.length();
-		for (int i = 0; i < (3 - len); i++) {
-			serialStr = "0" + serialStr;
-		}
-
-		return serialStr;
+	public static String nextSerial() {
+		return pad(Math.floorMod(serialCounter.getAndIncrement(), 999) + 1, 3);
 	}
 
 	/**
@@ -63,7 +48,7 @@ public class SerialsUtil {
 	public static String randomNum12(long seed) {
 		// 被除数
 		BigInteger dividend = BigDecimal.valueOf(seed).pow(5).toBigInteger();
-		return format12.format(dividend.remainder(divisor12));
+		return pad(dividend.remainder(divisor12).longValue(), 12);
 	}
 
 	/**
@@ -74,107 +59,48 @@ public class SerialsUtil {
 	public static String randomNum8(long seed) {
 		// 被除数
 		BigInteger dividend = BigDecimal.valueOf(seed).pow(5).toBigInteger();
-		return format8.format(dividend.remainder(divisor));
+		return pad(dividend.remainder(divisor).longValue(), 8);
 	}
 
 	/*
 	 * 10进制转32进制(去除0,O,1,I)
 	 */
 	public static String from10To32(String numStr, int size) {
-		long to = 32;
-		long num = Long.parseLong(numStr);
-		String jg = "";
-		while (num != 0) {
-            jg = switch ((int) (num % to)) {
-                case 0 -> "B" + jg;
-                case 1 -> "R" + jg;
-                case 2 -> "6" + jg;
-                case 3 -> "U" + jg;
-                case 4 -> "M" + jg;
-                case 5 -> "E" + jg;
-                case 6 -> "H" + jg;
-                case 7 -> "C" + jg;
-                case 8 -> "G" + jg;
-                case 9 -> "Q" + jg;
-                case 10 -> "A" + jg;
-                case 11 -> "8" + jg;
-                case 12 -> "3" + jg;
-                case 13 -> "S" + jg;
-                case 14 -> "J" + jg;
-                case 15 -> "Y" + jg;
-                case 16 -> "7" + jg;
-                case 17 -> "5" + jg;
-                case 18 -> "W" + jg;
-                case 19 -> "9" + jg;
-                case 20 -> "F" + jg;
-                case 21 -> "T" + jg;
-                case 22 -> "D" + jg;
-                case 23 -> "2" + jg;
-                case 24 -> "P" + jg;
-                case 25 -> "Z" + jg;
-                case 26 -> "N" + jg;
-                case 27 -> "K" + jg;
-                case 28 -> "V" + jg;
-                case 29 -> "X" + jg;
-                case 30 -> "L" + jg;
-                case 31 -> "4" + jg;
-                default -> String.valueOf(num % to) + jg;
-            };
-			num = num / to;
-		}
-		if (jg.length() < size) {
-			int loop = size - jg.length();
-			for (int i = 0; i < loop; i++) {
-				jg = "2" + jg;
-			}
-		}
-		return jg;
+		return convert(Long.parseLong(numStr), CHARS_32, '2', size);
 	}
 
 	/*
-	 * 10进制转32进制(去除0,O,1,I)
+	 * 10进制转24进制
 	 */
 	public static String from10To24(String numStr, int size) {
-		long to = 24;
-		long num = Long.parseLong(numStr);
-		String jg = "";
+		return convert(Long.parseLong(numStr), CHARS_24, 'B', size);
+	}
+
+	private static String convert(long num, char[] chars, char padChar, int size) {
+		int to = chars.length;
+		char[] buf = new char[Math.max(size, 64)];
+		int pos = buf.length;
 		while (num != 0) {
-            jg = switch ((int) (num % to)) {
-                case 0 -> "B" + jg;
-                case 1 -> "R" + jg;
-                case 2 -> "U" + jg;
-                case 3 -> "M" + jg;
-                case 4 -> "E" + jg;
-                case 5 -> "H" + jg;
-                case 6 -> "C" + jg;
-                case 7 -> "G" + jg;
-                case 8 -> "Q" + jg;
-                case 9 -> "A" + jg;
-                case 10 -> "S" + jg;
-                case 11 -> "J" + jg;
-                case 12 -> "Y" + jg;
-                case 13 -> "W" + jg;
-                case 14 -> "F" + jg;
-                case 15 -> "T" + jg;
-                case 16 -> "D" + jg;
-                case 17 -> "P" + jg;
-                case 18 -> "Z" + jg;
-                case 19 -> "N" + jg;
-                case 20 -> "K" + jg;
-                case 21 -> "V" + jg;
-                case 22 -> "X" + jg;
-                case 23 -> "L" + jg;
-                default -> num % to + jg;
-            };
+			buf[--pos] = chars[(int) (num % to)];
 			num = num / to;
 		}
-		if (jg.length() < size) {
-			int loop = size - jg.length();
-			for (int i = 0; i < loop; i++) {
-				jg = "B" + jg;
-			}
+		while (buf.length - pos < size) {
+			buf[--pos] = padChar;
+		}
+		return new String(buf, pos, buf.length - pos);
+	}
+
+	private static String pad(long num, int size) {
+		char[] buf = new char[Math.max(size, 20)];
+		int pos = buf.length;
+		do {
+			buf[--pos] = (char) ('0' + num % 10);
+			num = num / 10;
+		} while (num != 0);
+		while (buf.length - pos < size) {
+			buf[--pos] = '0';
 		}
-		return jg;
+		return new String(buf, pos, buf.length - pos);
 	}
 
 	public static String getUUID() {
@@ -186,29 +112,19 @@ public class SerialsUtil {
 		return temp;
 	}
 
+	/**
+	 * 生成短ID，委托给无锁的IdGenerator，保证进程内不重复
+	 */
 	public static String generateShortUUID() {
-		String str = randomNum8(System.nanoTime());
-		return from10To24(str, 6);
+		return IdGenerator.nextShortId();
 	}
 
 	public static String generateFileUUID() {
-		String str = randomNum12(System.nanoTime());
-		return from10To32(str, 8);
+		return IdGenerator.nextShortId();
 	}
 
 	public static String genToken() {
 		return from10To32(randomNum12(System.currentTimeMillis()), 8) + from10To32(randomNum12(System.nanoTime()), 8);
 	}
 
-	public static void main(String[] args) {
-		Set set = new HashSet();
-		String str;
-		for (int i = 0; i < 300; i++) {
-			str = generateShortUUID();
-			System.out.println(str);
-			set.add(str);
-		}
-		System.out.println(set.size());
-	}
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,141 @@
+package com.goalias.common.rateLimiter.benchmark;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.alibaba.fastjson.JSON;
+import com.goalias.common.rateLimiter.annotation.GoaliasHot;
+import com.goalias.common.rateLimiter.enums.FlowGradeEnum;
+import com.goalias.common.rateLimiter.hotkey.DefaultHotKeyExtractor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热点参数计算开销：原 md5Hex(JSON.toJSONString(args)) 与 DefaultHotKeyExtractor
+ * 运行：mvn -pl os-common/common-rateLimiter test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.goalias.common.rateLimiter.benchmark.HotKeyBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotKeyBenchmark {
+
+    private final DefaultHotKeyExtractor single = new DefaultHotKeyExtractor();
+
+    private final DefaultHotKeyExtractor composite = new DefaultHotKeyExtractor();
+
+    private final DefaultHotKeyExtractor bean = new DefaultHotKeyExtractor();
+
+    private Object[] singleArgs;
+
+    private Object[] compositeArgs;
+
+    private Object[] beanArgs;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        Method singleMethod = Target.class.getMethod("single", String.class);
+        Method compositeMethod = Target.class.getMethod("composite", String.class, long.class, int.class);
+        Method beanMethod = Target.class.getMethod("bean", Query.class);
+        single.init(singleMethod, singleMethod.getAnnotation(GoaliasHot.class));
+        composite.init(compositeMethod, compositeMethod.getAnnotation(GoaliasHot.class));
+        bean.init(beanMethod, beanMethod.getAnnotation(GoaliasHot.class));
+        singleArgs = new Object[]{"user-10086"};
+        compositeArgs = new Object[]{"tenant-7", 10086L, 3};
+        beanArgs = new Object[]{new Query("tenant-7", 10086L, "keyword")};
+    }
+
+    @Benchmark
+    public Object md5JsonSingle() {
+        return DigestUtil.md5Hex(JSON.toJSONString(singleArgs));
+    }
+
+    @Benchmark
+    public Object extractorSingle() {
+        return single.extract(singleArgs);
+    }
+
+    @Benchmark
+    public Object md5JsonComposite() {
+        return DigestUtil.md5Hex(JSON.toJSONString(compositeArgs));
+    }
+
+    @Benchmark
+    public Object extractorComposite() {
+        return composite.extract(compositeArgs);
+    }
+
+    @Benchmark
+    public Object md5JsonBean() {
+        return DigestUtil.md5Hex(JSON.toJSONString(beanArgs));
+    }
+
+    @Benchmark
+    public Object extractorBean() {
+        return bean.extract(beanArgs);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HotKeyBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public static class Target {
+
+        @GoaliasHot(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10, duration = 1)
+        public String single(String userId) {
+            return userId;
+        }
+
+        @GoaliasHot(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10, duration = 1)
+        public String composite(String tenant, long userId, int page) {
+            return tenant;
+        }
+
+        @GoaliasHot(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10, duration = 1, keyPath = "0.userId")
+        public String bean(Query query) {
+            return query.getTenant();
+        }
+    }
+
+    public static class Query {
+
+        private final String tenant;
+
+        private final long userId;
+
+        private final String keyword;
+
+        public Query(String tenant, long userId, String keyword) {
+            this.tenant = tenant;
+            this.userId = userId;
+            this.keyword = keyword;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public String getKeyword() {
+            return keyword;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.goalias.common.rateLimiter.benchmark;
+
+import com.alibaba.csp.sentinel.util.MethodUtil;
+import com.goalias.common.rateLimiter.annotation.GoaliasFallback;
+import com.goalias.common.rateLimiter.config.GoaliasProperty;
+import com.goalias.common.rateLimiter.enums.FlowGradeEnum;
+import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.manager.GoaliasMethodManager;
+import com.goalias.common.rateLimiter.manager.GoaliasRuleManager;
+import com.goalias.common.rateLimiter.proxy.GoaliasByteBuddyProxy;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
+import com.goalias.common.rateLimiter.sph.SphEngine;
+import com.goalias.common.rateLimiter.spring.GoaliasConfigHolder;
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.InvocationHandlerAdapter;
+import net.bytebuddy.matcher.ElementMatchers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 代理单次调用开销：直接调用 / 原InvocationHandler+反射 / MethodDelegation
+ * 运行：mvn -pl os-common/common-rateLimiter test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.goalias.common.rateLimiter.benchmark.ProxyDispatchBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyDispatchBenchmark {
+
+    private Target direct;
+
+    private Target legacy;
+
+    private Target delegated;
+
+    private int arg;
+
+    @Setup
+    public void setup() throws Exception {
+        GoaliasConfigHolder.setGoaliasProperty(new GoaliasProperty());
+        direct = new Target();
+        Method guarded = Target.class.getMethod("guarded", int.class);
+        GoaliasFallback annotation = guarded.getAnnotation(GoaliasFallback.class);
+        GoaliasMethodDescriptor descriptor = new GoaliasMethodDescriptor(direct, guarded, GoaliasStrategyEnum.FALLBACK, annotation);
+        GoaliasRuleManager.registerFallBackRule(annotation, descriptor.getResourceName());
+        GoaliasMethodManager.addGoaliasMethod(descriptor);
+        GoaliasMethodManager.freeze();
+        GoaliasRuleManager.loadRules();
+        delegated = (Target) new GoaliasByteBuddyProxy(direct, Target.class, Collections.singletonList(descriptor)).proxy();
+        legacy = legacyProxy(direct);
+    }
+
+    @Benchmark
+    public int directPlain() {
+        return direct.plain(arg++);
+    }
+
+    @Benchmark
+    public int legacyHandlerPlain() {
+        return legacy.plain(arg++);
+    }
+
+    @Benchmark
+    public int delegationPlain() {
+        return delegated.plain(arg++);
+    }
+
+    @Benchmark
+    public int legacyHandlerGuarded() {
+        return legacy.guarded(arg++);
+    }
+
+    @Benchmark
+    public int delegationGuarded() {
+        return delegated.guarded(arg++);
+    }
+
+    /**
+     * 按改造前的方式生成代理：拦截全部方法，每次调用拼接方法名、查HashMap缓存、查注册表后反射调用
+     */
+    private static Target legacyProxy(Target bean) throws Exception {
+        Map<String, Method> methodCache = new HashMap<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            String methodStr = MethodUtil.resolveMethodName(method);
+            Method realMethod = methodCache.get(methodStr);
+            if (realMethod == null) {
+                realMethod = bean.getClass().getMethod(method.getName(), method.getParameterTypes());
+                methodCache.put(methodStr, realMethod);
+            }
+            GoaliasMethodDescriptor descriptor = GoaliasMethodManager.getGoaliasMethod(methodStr);
+            if (descriptor != null) {
+                return SphEngine.process(descriptor, args);
+            }
+            return realMethod.invoke(bean, args);
+        };
+        return new ByteBuddy().subclass(Target.class)
+                .method(ElementMatchers.isPublic().and(ElementMatchers.isDeclaredBy(Target.class)))
+                .intercept(InvocationHandlerAdapter.of(handler))
+                .make()
+                .load(Target.class.getClassLoader(), ClassLoadingStrategy.Default.INJECTION)
+                .getLoaded()
+                .getDeclaredConstructor()
+                .newInstance();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProxyDispatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    public static class Target {
+
+        public int plain(int value) {
+            return value + 1;
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = Integer.MAX_VALUE)
+        public int guarded(int value) {
+            return value + 1;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.goalias.common.rateLimiter.cluster;
+
+import com.goalias.common.rateLimiter.config.GoaliasProperty;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 需要本地Docker，没有时跳过
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class RedisClusterLimiterTest {
+
+    @Container
+    private static final GenericContainer<?> REDIS = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+    private static LettuceConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    @BeforeAll
+    static void connect() {
+        connectionFactory = new LettuceConnectionFactory(REDIS.getHost(), REDIS.getMappedPort(6379));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void disconnect() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void concurrencyIsLimitedGloballyAndReleasedByHolder() {
+        RedisClusterLimiter limiter = limiter(60);
+        String key = UUID.randomUUID().toString();
+        assertTrue(limiter.acquireConcurrency(key, 2, "a"));
+        assertTrue(limiter.acquireConcurrency(key, 2, "b"));
+        assertFalse(limiter.acquireConcurrency(key, 2, "c"));
+
+        limiter.releaseConcurrency(key, "a");
+        assertTrue(limiter.acquireConcurrency(key, 2, "c"));
+        //重复归还不会多放出槽位
+        limiter.releaseConcurrency(key, "a");
+        assertFalse(limiter.acquireConcurrency(key, 2, "d"));
+    }
+
+    @Test
+    void expiredHoldersAreEvicted() throws InterruptedException {
+        RedisClusterLimiter limiter = limiter(1);
+        String key = UUID.randomUUID().toString();
+        assertTrue(limiter.acquireConcurrency(key, 2, "a"));
+        assertTrue(limiter.acquireConcurrency(key, 2, "b"));
+        Thread.sleep(1200);
+        assertTrue(limiter.acquireConcurrency(key, 2, "c"));
+        assertTrue(limiter.acquireConcurrency(key, 2, "d"));
+    }
+
+    @Test
+    void renewedHoldersSurviveTheirLease() throws InterruptedException {
+        RedisClusterLimiter limiter = limiter(1);
+        String key = UUID.randomUUID().toString();
+        assertTrue(limiter.acquireConcurrency(key, 1, "a"));
+        Thread.sleep(600);
+        limiter.renewConcurrency(key, Collections.singletonList("a"));
+        Thread.sleep(600);
+        assertFalse(limiter.acquireConcurrency(key, 1, "b"));
+
+        limiter.releaseConcurrency(key, "a");
+        assertTrue(limiter.acquireConcurrency(key, 1, "b"));
+    }
+
+    @Test
+    void qpsTokensAreGrantedInBatchesUpToTheLimit() {
+        RedisClusterLimiter limiter = limiter(60);
+        String key = UUID.randomUUID().toString();
+        //窗口起点附近，上一窗口为空
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        assertEquals(3, limiter.acquireQps(key, now, 5, 3, 1));
+        assertEquals(2, limiter.acquireQps(key, now, 5, 3, 1));
+        assertEquals(0, limiter.acquireQps(key, now, 5, 3, 1));
+    }
+
+    private static RedisClusterLimiter limiter(int leaseSeconds) {
+        GoaliasProperty.Cluster cluster = new GoaliasProperty.Cluster();
+        cluster.setKeyPrefix("goalias:test:");
+        cluster.setConcurrencyExpireSeconds(leaseSeconds);
+        return new RedisClusterLimiter(redisTemplate, cluster);
+    }
+}
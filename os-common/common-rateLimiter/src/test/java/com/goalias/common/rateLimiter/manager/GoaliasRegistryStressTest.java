@@ -0,0 +1,239 @@
+package com.goalias.common.rateLimiter.manager;
+
+import com.alibaba.csp.sentinel.slots.block.BlockException;
+import com.alibaba.csp.sentinel.slots.block.flow.FlowRule;
+import com.alibaba.csp.sentinel.util.MethodUtil;
+import com.goalias.common.rateLimiter.annotation.GoaliasFallback;
+import com.goalias.common.rateLimiter.enums.FlowGradeEnum;
+import com.goalias.common.rateLimiter.enums.GoaliasStrategyEnum;
+import com.goalias.common.rateLimiter.proxy.GoaliasMethodDescriptor;
+import com.goalias.common.rateLimiter.strategy.GoaliasStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多线程并发写入注册表的同时读取，写入不丢失，已读到的项之后不会消失
+ */
+class GoaliasRegistryStressTest {
+
+    private static final int THREADS = 8;
+
+    private static final int RULES_PER_THREAD = 500;
+
+    @Test
+    void concurrentRuleUpdatesAreNeverLost() throws Exception {
+        String prefix = "stress.rule." + System.nanoTime() + ".";
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                for (int i = 0; i < RULES_PER_THREAD; i++) {
+                    GoaliasRuleManager.updateFallBackRule(prefix + thread + "." + i, FlowGradeEnum.FLOW_GRADE_QPS, i + 1);
+                }
+                return null;
+            });
+        }
+        //读线程：同一写线程的规则按顺序写入，读到第i条后前面的规则都必须可见
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            tasks.add(() -> {
+                int seen = 0;
+                while (seen < RULES_PER_THREAD) {
+                    String resourceName = prefix + thread + "." + seen;
+                    FlowRule rule = GoaliasRuleManager.getFallBackRule(resourceName);
+                    if (rule == null) {
+                        //写线程全部结束后再读一次，仍为空说明写入丢失
+                        if (!writing.get() && GoaliasRuleManager.getFallBackRule(resourceName) == null) {
+                            throw new AssertionError("lost rule " + resourceName);
+                        }
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    assertEquals(seen + 1, (int) rule.getCount());
+                    for (int earlier = Math.max(0, seen - 8); earlier < seen; earlier++) {
+                        assertNotNull(GoaliasRuleManager.getFallBackRule(prefix + thread + "." + earlier));
+                    }
+                    seen++;
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks, THREADS, writing);
+
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < RULES_PER_THREAD; i++) {
+                FlowRule rule = GoaliasRuleManager.getFallBackRule(prefix + t + "." + i);
+                assertNotNull(rule, "lost rule " + t + "." + i);
+                assertEquals(i + 1, (int) rule.getCount());
+            }
+        }
+    }
+
+    @Test
+    void methodsRegisteredAfterFreezeAreAllPublished() throws Exception {
+        GoaliasMethodManager.freeze();
+        Target bean = new Target();
+        List<Method> methods = new ArrayList<>();
+        for (Method method : Target.class.getDeclaredMethods()) {
+            if (method.isAnnotationPresent(GoaliasFallback.class)) {
+                methods.add(method);
+            }
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Method method : methods) {
+            tasks.add(() -> {
+                //同一方法重复登记，覆盖写同样不能冲掉其他方法
+                for (int i = 0; i < 200; i++) {
+                    GoaliasMethodManager.addGoaliasMethod(new GoaliasMethodDescriptor(bean, method,
+                            GoaliasStrategyEnum.FALLBACK, method.getAnnotation(GoaliasFallback.class)));
+                }
+                return null;
+            });
+        }
+        for (int t = 0; t < THREADS; t++) {
+            tasks.add(() -> {
+                while (writing.get()) {
+                    for (GoaliasMethodDescriptor descriptor : GoaliasMethodManager.getGoaliasMethods().values()) {
+                        assertNotNull(descriptor.getResourceName());
+                    }
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks, methods.size(), writing);
+
+        for (Method method : methods) {
+            GoaliasMethodDescriptor descriptor = GoaliasMethodManager.getGoaliasMethod(MethodUtil.resolveMethodName(method));
+            assertNotNull(descriptor, "lost method " + method.getName());
+            assertSame(method, descriptor.getMethod());
+        }
+    }
+
+    @Test
+    void concurrentStrategyRegistrationKeepsEveryStrategy() throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (GoaliasStrategyEnum strategyEnum : GoaliasStrategyEnum.values()) {
+            GoaliasStrategy strategy = new StubStrategy(strategyEnum);
+            tasks.add(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    GoaliasStrategyManager.addStrategy(strategy);
+                }
+                return null;
+            });
+        }
+        runConcurrently(tasks, tasks.size(), new AtomicBoolean());
+
+        for (GoaliasStrategyEnum strategyEnum : GoaliasStrategyEnum.values()) {
+            GoaliasStrategy strategy = GoaliasStrategyManager.getStrategy(strategyEnum);
+            assertNotNull(strategy);
+            assertSame(strategyEnum, strategy.getStrategy());
+        }
+    }
+
+    /**
+     * 所有任务同时开始，前writers个任务结束后清除writing标记，再等待其余任务结束
+     */
+    private static void runConcurrently(List<Callable<Void>> tasks, int writers, AtomicBoolean writing) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Callable<Void> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                if (i == writers) {
+                    writing.set(false);
+                }
+                futures.get(i).get(60, TimeUnit.SECONDS);
+            }
+            writing.set(false);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    public static class Target {
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m0() {
+            return "0";
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m1() {
+            return "1";
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m2() {
+            return "2";
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m3() {
+            return "3";
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m4() {
+            return "4";
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m5() {
+            return "5";
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m6() {
+            return "6";
+        }
+
+        @GoaliasFallback(grade = FlowGradeEnum.FLOW_GRADE_QPS, count = 10)
+        public String m7() {
+            return "7";
+        }
+    }
+
+    private static final class StubStrategy implements GoaliasStrategy {
+
+        private final GoaliasStrategyEnum strategy;
+
+        private StubStrategy(GoaliasStrategyEnum strategy) {
+            this.strategy = strategy;
+        }
+
+        @Override
+        public GoaliasStrategyEnum getStrategy() {
+            return strategy;
+        }
+
+        @Override
+        public Object process(GoaliasMethodDescriptor descriptor, Object[] args, Object hotParam, BlockException blockException) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.goalias.common.rateLimiter.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GoaliasByteBuddyProxyTest {
+
+    @Test
+    void delegatesNonPublicMethodsToBean() throws Exception {
+        Service bean = new Service("bean");
+        Service proxy = (Service) new GoaliasByteBuddyProxy(bean, Service.class, Collections.emptyList()).proxy();
+
+        //代理实例的字段未初始化，结果来自原bean说明已转发
+        assertEquals("bean-public", proxy.publicName());
+        assertEquals("bean-protected", proxy.protectedName());
+        assertEquals("bean-package", proxy.packageName());
+        assertEquals("Service@bean", proxy.toString());
+    }
+
+    public static class Service {
+
+        private final String name;
+
+        public Service() {
+            this(null);
+        }
+
+        Service(String name) {
+            this.name = name;
+        }
+
+        public String publicName() {
+            return name + "-public";
+        }
+
+        protected String protectedName() {
+            return name + "-protected";
+        }
+
+        String packageName() {
+            return name + "-package";
+        }
+
+        @Override
+        public String toString() {
+            return "Service@" + name;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.goalias.common.rateLimiter.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class KeyHashUtilTest {
+
+    @Test
+    void differentTypesNeverShareAHash() {
+        List<Object> values = Arrays.asList(null, 0L, 0, (short) 0, (byte) 0, 0d, 0f, "", false,
+                2L, true, 1L, 'a', 97, 97L, "a", "97", TimeUnit.SECONDS, "SECONDS");
+        Set<Long> hashes = new HashSet<>();
+        for (Object value : values) {
+            hashes.add(KeyHashUtil.finish(KeyHashUtil.hash(KeyHashUtil.SEED, value)));
+        }
+        assertEquals(values.size(), hashes.size());
+    }
+
+    @Test
+    void compositeKeysKeepArgumentBoundaries() {
+        assertNotEquals(composite("ab", "c"), composite("a", "bc"));
+        assertNotEquals(composite(null, ""), composite("", null));
+        assertNotEquals(composite(1, 2L), composite(1L, 2));
+    }
+
+    @Test
+    void equalArgumentsHashEqually() {
+        assertEquals(composite("user", 42L, TimeUnit.DAYS), composite(new StringBuilder("user"), 42L, TimeUnit.DAYS));
+    }
+
+    private static long composite(Object... args) {
+        long hash = KeyHashUtil.SEED;
+        for (Object arg : args) {
+            hash = KeyHashUtil.hash(hash, arg);
+        }
+        return KeyHashUtil.finish(hash);
+    }
+}